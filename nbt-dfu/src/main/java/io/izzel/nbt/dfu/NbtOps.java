@@ -346,8 +346,7 @@ public enum NbtOps implements DynamicOps<Tag> {
         } else if (input instanceof LongArrayTag) {
             return DataResult.success(((LongArrayTag) input).getLongs().stream().mapToObj(LongTag::of));
         } else if (input instanceof ByteArrayTag) {
-            ImmutableBytes bytes = ((ByteArrayTag) input).getBytes();
-            return DataResult.success(IntStream.range(0, bytes.size()).mapToObj(i -> ByteTag.of(bytes.get(i))));
+            return DataResult.success(((ByteArrayTag) input).getBytes().stream().mapToObj(b -> ByteTag.of((byte) b)));
         }
         return DataResult.error("Tag is not a list");
     }
@@ -473,14 +472,23 @@ public enum NbtOps implements DynamicOps<Tag> {
                 if (type == TagType.END) {
                     return DataResult.success(prefix);
                 } else if (type == TagType.INT) {
+                    if (prefix instanceof IntArrayTag) {
+                        return DataResult.success(IntArrayTag.of(((IntArrayTag) prefix).getInts().concat(intBuilder.build())));
+                    }
                     return getIntStream(prefix).map(stream ->
                             IntArrayTag.of(ImmutableInts.concat(ImmutableInts.builder().add(stream.toArray()).build(), intBuilder.build()))
                     );
                 } else if (type == TagType.LONG) {
+                    if (prefix instanceof LongArrayTag) {
+                        return DataResult.success(LongArrayTag.of(((LongArrayTag) prefix).getLongs().concat(longBuilder.build())));
+                    }
                     return getLongStream(prefix).map(stream ->
                             LongArrayTag.of(ImmutableLongs.concat(ImmutableLongs.builder().add(stream.toArray()).build(), longBuilder.build()))
                     );
                 } else if (type == TagType.BYTE) {
+                    if (prefix instanceof ByteArrayTag) {
+                        return DataResult.success(ByteArrayTag.of(((ByteArrayTag) prefix).getBytes().concat(byteBuilder.build())));
+                    }
                     return getByteBuffer(prefix).map(buffer ->
                             ByteArrayTag.of(ImmutableBytes.concat(ImmutableBytes.builder().add(buffer).build(), byteBuilder.build()))
                     );
@@ -0,0 +1,170 @@
+package io.izzel.nbt;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+final class CompoundShape {
+
+    static final int MAX_SHARED_SIZE = 64;
+
+    private static final int MAX_TRANSITIONS = 64;
+    private static final int SIGHTINGS = 16; // a power of two
+    private static final ReferenceQueue<CompoundShape> STALE = new ReferenceQueue<>();
+
+    static final CompoundShape EMPTY = new CompoundShape(null, new String[0], true);
+
+    private static final int LINEAR_SEARCH_LIMIT = 8;
+
+    private final CompoundShape parent; // keeps the transition chain alive as long as a shared shape is in use
+    private final String[] names;
+    private final int[] index;
+    private final boolean shared; // private shapes belong to key sets which have not been seen twice
+
+    private volatile Map<String, Transition> transitions;
+    private String[] sightings; // names added to this shape once so far, guarded by this shape
+    private int sighted;
+    private volatile SortedSet<String> sortedNames;
+
+    private CompoundShape(CompoundShape parent, String[] names, boolean shared) {
+        this.parent = parent;
+        this.names = names;
+        this.index = buildIndex(names);
+        this.shared = shared;
+    }
+
+    static CompoundShape of(String[] names, int size) {
+        return new CompoundShape(null, names.length == size ? names : Arrays.copyOf(names, size), false);
+    }
+
+    int size() {
+        return this.names.length;
+    }
+
+    String name(int i) {
+        return this.names[i];
+    }
+
+    String[] copyNames(int capacity) {
+        return Arrays.copyOf(this.names, capacity);
+    }
+
+    int indexOf(String name) {
+        String[] names = this.names;
+        int[] index = this.index;
+        if (index == null) {
+            for (int i = 0; i < names.length; ++i) {
+                if (names[i].equals(name)) return i;
+            }
+            return -1;
+        }
+        int mask = index.length - 1;
+        for (int slot = spread(name.hashCode()) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+            int i = index[slot] - 1;
+            if (names[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    SortedSet<String> sortedNames() {
+        SortedSet<String> sortedNames = this.sortedNames;
+        if (sortedNames == null) {
+            sortedNames = Collections.unmodifiableSortedSet(new TreeSet<>(Arrays.asList(this.names)));
+            this.sortedNames = sortedNames;
+        }
+        return sortedNames;
+    }
+
+    // the shared shape with one more name, or null if the names are not worth sharing (yet)
+    CompoundShape with(String name) {
+        if (!this.shared || this.names.length >= MAX_SHARED_SIZE) {
+            return null;
+        }
+        CompoundShape shape = find(this.transitions, name);
+        if (shape != null) {
+            return shape;
+        }
+        expungeStale();
+        synchronized (this) {
+            Map<String, Transition> transitions = this.transitions;
+            shape = find(transitions, name);
+            if (shape != null || !this.sightedBefore(name)) {
+                return shape;
+            }
+            if (transitions == null) {
+                this.transitions = transitions = new ConcurrentHashMap<>(4);
+            } else if (transitions.size() >= MAX_TRANSITIONS) {
+                return null;
+            }
+            String[] names = Arrays.copyOf(this.names, this.names.length + 1);
+            names[this.names.length] = name;
+            shape = new CompoundShape(this, names, true);
+            transitions.put(name, new Transition(this, name, shape));
+            return shape;
+        }
+    }
+
+    // a name is only shared once it is added a second time, the first time it is just remembered
+    private boolean sightedBefore(String name) {
+        String[] sightings = this.sightings;
+        if (sightings == null) {
+            this.sightings = sightings = new String[SIGHTINGS];
+        }
+        for (int i = 0; i < sightings.length; ++i) {
+            if (name.equals(sightings[i])) {
+                sightings[i] = null;
+                return true;
+            }
+        }
+        sightings[this.sighted++ & SIGHTINGS - 1] = name; // the oldest sighting is forgotten
+        return false;
+    }
+
+    private static CompoundShape find(Map<String, Transition> transitions, String name) {
+        Transition transition = transitions != null ? transitions.get(name) : null;
+        return transition != null ? transition.get() : null;
+    }
+
+    private static void expungeStale() {
+        for (Transition stale; (stale = (Transition) STALE.poll()) != null; ) {
+            stale.parent.transitions.remove(stale.name, stale);
+        }
+    }
+
+    private static int[] buildIndex(String[] names) {
+        if (names.length <= LINEAR_SEARCH_LIMIT) {
+            return null;
+        }
+        int[] index = new int[Integer.highestOneBit(names.length - 1) << 2];
+        int mask = index.length - 1;
+        for (int i = 0; i < names.length; ++i) {
+            int slot = spread(names[i].hashCode()) & mask;
+            while (index[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            index[slot] = i + 1;
+        }
+        return index;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Transition extends WeakReference<CompoundShape> {
+
+        private final CompoundShape parent;
+        private final String name;
+
+        private Transition(CompoundShape parent, String name, CompoundShape shape) {
+            super(shape, STALE);
+            this.parent = parent;
+            this.name = name;
+        }
+    }
+}
@@ -7,42 +7,58 @@ import io.izzel.nbt.util.ImmutableLongs;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
+import java.util.AbstractList;
 import java.util.ArrayDeque;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableMap;
 import java.util.Queue;
+import java.util.RandomAccess;
 import java.util.SortedSet;
-import java.util.TreeMap;
 import java.util.regex.Pattern;
 
 public final class CompoundTag extends Tag {
 
-    private static final CompoundTag EMPTY = new CompoundTag(Collections.emptyNavigableMap(), Collections.emptyList());
+    private static final CompoundTag EMPTY = new CompoundTag(CompoundShape.EMPTY, new Tag[0], null, 0);
 
     private static final Pattern SIMPLE_KEY = Pattern.compile("[A-Za-z0-9._+-]+");
 
-    private final NavigableMap<String, Entry<?>> valueMap;
-    private final List<Entry<?>> values;
+    // small compounds keep their values in an array laid out by a shared shape, larger ones in a trie
+    private final CompoundShape shape;
+    private final Tag[] values;
+    private final CompoundTrie trie;
+    private final int hash; // maintained by the builder, one entry at a time
 
-    private CompoundTag(NavigableMap<String, Entry<?>> entryMap, List<Entry<?>> entries) {
+    TagDigest digest; // computed on demand, and immutable, so racing threads can only compute the same one
+
+    private CompoundTag(CompoundShape shape, Tag[] values, CompoundTrie trie, int hash) {
         super(TagType.COMPOUND);
-        this.values = Collections.unmodifiableList(entries);
-        this.valueMap = Collections.unmodifiableNavigableMap(entryMap);
+        this.shape = shape;
+        this.values = values;
+        this.trie = trie;
+        this.hash = hash;
+    }
+
+    public int size() {
+        return this.trie != null ? this.trie.size() : this.values.length;
     }
 
     public SortedSet<String> names() {
-        return this.valueMap.navigableKeySet();
+        return this.trie != null ? this.trie.sortedNames() : this.shape.sortedNames();
     }
 
     public Tag get(String name, Tag fallback) {
-        return this.valueMap.containsKey(name) ? this.valueMap.get(name).getValue() : fallback;
+        if (this.trie != null) {
+            CompoundTrie.Leaf leaf = this.trie.find(name);
+            return leaf != null ? leaf.value : fallback;
+        }
+        int i = this.shape.indexOf(name);
+        return i >= 0 ? this.values[i] : fallback;
     }
 
     public Tag getOrDefault(String name) {
-        return this.valueMap.containsKey(name) ? this.valueMap.get(name).getValue() : EndTag.of();
+        return this.get(name, EndTag.of());
     }
 
     public Tag get(String name, TagType type, Tag fallback) {
@@ -100,63 +116,136 @@ public final class CompoundTag extends Tag {
     }
 
     public boolean getBoolean(String name, boolean fallback) {
-        return this.getNumber(name, fallback ? (byte) 1 : (byte) 0).byteValue() != 0;
+        return this.getByte(name, fallback ? (byte) 1 : (byte) 0) != 0;
     }
 
     public boolean getBooleanOrDefault(String name) {
-        return this.getNumberOrDefault(name).byteValue() != 0;
+        return this.getByteOrDefault(name) != 0;
     }
 
     public byte getByte(String name, byte fallback) {
-        return this.getNumber(name, fallback).byteValue();
+        Tag tag = this.get(name, EndTag.of());
+        switch (tag.getType()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                return (byte) integralValue(tag);
+            case FLOAT:
+            case DOUBLE:
+                return (byte) floatingValue(tag);
+            default:
+                return fallback;
+        }
     }
 
     public byte getByteOrDefault(String name) {
-        return this.getNumberOrDefault(name).byteValue();
+        return this.getByte(name, (byte) 0);
     }
 
     public short getShort(String name, short fallback) {
-        return this.getNumber(name, fallback).shortValue();
+        Tag tag = this.get(name, EndTag.of());
+        switch (tag.getType()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                return (short) integralValue(tag);
+            case FLOAT:
+            case DOUBLE:
+                return (short) floatingValue(tag);
+            default:
+                return fallback;
+        }
     }
 
     public short getShortOrDefault(String name) {
-        return this.getNumberOrDefault(name).shortValue();
+        return this.getShort(name, (short) 0);
     }
 
     public int getInt(String name, int fallback) {
-        return this.getNumber(name, fallback).intValue();
+        Tag tag = this.get(name, EndTag.of());
+        switch (tag.getType()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                return (int) integralValue(tag);
+            case FLOAT:
+            case DOUBLE:
+                return (int) floatingValue(tag);
+            default:
+                return fallback;
+        }
     }
 
     public int getIntOrDefault(String name) {
-        return this.getNumberOrDefault(name).intValue();
+        return this.getInt(name, 0);
     }
 
     public long getLong(String name, long fallback) {
-        return this.getNumber(name, fallback).longValue();
+        Tag tag = this.get(name, EndTag.of());
+        switch (tag.getType()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                return integralValue(tag);
+            case FLOAT:
+            case DOUBLE:
+                return (long) floatingValue(tag);
+            default:
+                return fallback;
+        }
     }
 
     public long getLongOrDefault(String name) {
-        return this.getNumberOrDefault(name).longValue();
+        return this.getLong(name, 0L);
     }
 
     public float getFloat(String name, float fallback) {
-        return this.getNumber(name, fallback).floatValue();
+        Tag tag = this.get(name, EndTag.of());
+        switch (tag.getType()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                return (float) integralValue(tag);
+            case FLOAT:
+            case DOUBLE:
+                return (float) floatingValue(tag);
+            default:
+                return fallback;
+        }
     }
 
     public float getFloatOrDefault(String name) {
-        return this.getNumberOrDefault(name).floatValue();
+        return this.getFloat(name, 0F);
     }
 
     public double getDouble(String name, double fallback) {
-        return this.getNumber(name, fallback).doubleValue();
+        Tag tag = this.get(name, EndTag.of());
+        switch (tag.getType()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                return (double) integralValue(tag);
+            case FLOAT:
+            case DOUBLE:
+                return floatingValue(tag);
+            default:
+                return fallback;
+        }
     }
 
     public double getDoubleOrDefault(String name) {
-        return this.getNumberOrDefault(name).doubleValue();
+        return this.getDouble(name, 0D);
     }
 
     public ImmutableBytes getBytes(String name, ImmutableBytes fallback) {
-        return ((ByteArrayTag) this.get(name, TagType.BYTE_ARRAY, ByteArrayTag.of(fallback))).getBytes();
+        Tag tag = this.get(name, EndTag.of());
+        return tag.getType() == TagType.BYTE_ARRAY ? ((ByteArrayTag) tag).getBytes() : fallback;
     }
 
     public ImmutableBytes getBytesOrDefault(String name) {
@@ -164,7 +253,8 @@ public final class CompoundTag extends Tag {
     }
 
     public ImmutableInts getInts(String name, ImmutableInts fallback) {
-        return ((IntArrayTag) this.get(name, TagType.INT_ARRAY, IntArrayTag.of(fallback))).getInts();
+        Tag tag = this.get(name, EndTag.of());
+        return tag.getType() == TagType.INT_ARRAY ? ((IntArrayTag) tag).getInts() : fallback;
     }
 
     public ImmutableInts getIntsOrDefault(String name) {
@@ -172,7 +262,8 @@ public final class CompoundTag extends Tag {
     }
 
     public ImmutableLongs getLongs(String name, ImmutableLongs fallback) {
-        return ((LongArrayTag) this.get(name, TagType.LONG_ARRAY, LongArrayTag.of(fallback))).getLongs();
+        Tag tag = this.get(name, EndTag.of());
+        return tag.getType() == TagType.LONG_ARRAY ? ((LongArrayTag) tag).getLongs() : fallback;
     }
 
     public ImmutableLongs getLongsOrDefault(String name) {
@@ -180,7 +271,8 @@ public final class CompoundTag extends Tag {
     }
 
     public String getString(String name, String fallback) {
-        return ((StringTag) this.get(name, TagType.STRING, StringTag.of(fallback))).getString();
+        Tag tag = this.get(name, EndTag.of());
+        return tag.getType() == TagType.STRING ? ((StringTag) tag).getString() : fallback;
     }
 
     public String getStringOrDefault(String name) {
@@ -206,7 +298,7 @@ public final class CompoundTag extends Tag {
 
     public ListTag getListOrDefault(String name, TagType elemType) {
         ListTag tag = (ListTag) this.getOrDefault(name, TagType.LIST);
-        return tag.getElemType() != elemType ? ListTag.builder(elemType).build() : tag;
+        return tag.getElemType() != elemType ? ListTag.empty(elemType) : tag;
     }
 
     public CompoundTag getCompound(String name, CompoundTag fallback) {
@@ -218,41 +310,58 @@ public final class CompoundTag extends Tag {
     }
 
     public Entry<?> getEntry(String name, Entry<?> fallback) {
-        return this.valueMap.getOrDefault(name, fallback);
+        if (this.trie != null) {
+            CompoundTrie.Leaf leaf = this.trie.find(name);
+            return leaf != null ? new Entry<>(leaf.name, leaf.value) : fallback;
+        }
+        int i = this.shape.indexOf(name);
+        return i >= 0 ? new Entry<>(this.shape.name(i), this.values[i]) : fallback;
     }
 
     public Entry<?> getEntryOrDefault(String name) {
-        return this.valueMap.getOrDefault(name, new Entry<>("", EndTag.of()));
+        return this.getEntry(name, new Entry<>("", EndTag.of()));
     }
 
     public List<? extends Entry<?>> dump() {
-        return this.values;
+        return new EntryList(this);
+    }
+
+    String nameAt(int i) {
+        return this.trie != null ? this.trie.leafAt(i).name : this.shape.name(i);
+    }
+
+    Tag valueAt(int i) {
+        return this.trie != null ? this.trie.leafAt(i).value : this.values[i];
+    }
+
+    private Entry<?> entryAt(int i) {
+        if (this.trie != null) {
+            CompoundTrie.Leaf leaf = this.trie.leafAt(i);
+            return new Entry<>(leaf.name, leaf.value);
+        }
+        return new Entry<>(this.shape.name(i), this.values[i]);
     }
 
     @Override
     public boolean equals(Object o) {
         if (o == this) return true;
         if (o instanceof CompoundTag) {
+            CompoundTag that = (CompoundTag) o;
+            if (that.hash != this.hash || that.size() != this.size()) return false;
             Queue<Tag> thisTags = new ArrayDeque<>(Collections.singleton(this));
-            Queue<Tag> thatTags = new ArrayDeque<>(Collections.singleton((CompoundTag) o));
+            Queue<Tag> thatTags = new ArrayDeque<>(Collections.singleton(that));
             while (!thisTags.isEmpty()) {
                 Tag thisTag = thisTags.remove(), thatTag = thatTags.remove();
                 if (thisTag != thatTag) {
                     TagType type = thisTag.getType();
                     if (type != thatTag.getType()) return false;
+                    if (thisTag.hashCode() != thatTag.hashCode()) return false; // cheap for lists and compounds
                     if (type == TagType.COMPOUND) {
-                        SortedSet<String> thisCompoundNames = ((CompoundTag) thisTag).names();
-                        if (((CompoundTag) thatTag).names().size() != thisCompoundNames.size()) return false;
-                        for (String name : thisCompoundNames) {
-                            thisTags.add(((CompoundTag) thisTag).getOrDefault(name));
-                            thatTags.add(((CompoundTag) thatTag).getOrDefault(name));
-                        }
+                        if (!addChildren((CompoundTag) thisTag, (CompoundTag) thatTag, thisTags, thatTags)) return false;
                         continue;
                     }
                     if (type == TagType.LIST) {
-                        if (((ListTag) thatTag).size() != ((ListTag) thisTag).size()) return false;
-                        thisTags.addAll(((ListTag) thisTag).dump());
-                        thatTags.addAll(((ListTag) thatTag).dump());
+                        if (!ListTag.addChildren((ListTag) thisTag, (ListTag) thatTag, thisTags, thatTags)) return false;
                         continue;
                     }
                     if (!thatTag.equals(thisTag)) return false;
@@ -263,6 +372,31 @@ public final class CompoundTag extends Tag {
         return false;
     }
 
+    // compares everything but the child tags, which are queued for the caller to compare
+    static boolean addChildren(CompoundTag thisCompound, CompoundTag thatCompound, Queue<Tag> thisTags, Queue<Tag> thatTags) {
+        if (thatCompound.size() != thisCompound.size()) return false;
+        if (thisCompound.trie == null && thatCompound.shape == thisCompound.shape) {
+            Collections.addAll(thisTags, thisCompound.values);
+            Collections.addAll(thatTags, thatCompound.values);
+            return true;
+        }
+        if (thisCompound.trie != null && thatCompound.trie != null && thisCompound.trie.sharesRoot(thatCompound.trie)) {
+            return true;
+        }
+        for (int i = 0, size = thisCompound.size(); i < size; ++i) {
+            Entry<?> entry = thisCompound.entryAt(i);
+            Tag thatValue = thatCompound.get(entry.getKey(), EndTag.of());
+            if (thatValue.getType() == TagType.END) return false;
+            thisTags.add(entry.getValue());
+            thatTags.add(thatValue);
+        }
+        return true;
+    }
+
+    public MutableCompoundTag toMutable() {
+        return new MutableCompoundTag(this);
+    }
+
     public CompoundTag.Builder toBuilder() {
         return toBuilder(false);
     }
@@ -273,11 +407,24 @@ public final class CompoundTag extends Tag {
 
     @Override
     public int hashCode() {
-        int hash = 0;
-        for (String name : this.names()) {
-            hash = hash * 31 + this.getEntryOrDefault(name).hashCode();
+        return this.hash;
+    }
+
+    private static long integralValue(Tag tag) {
+        switch (tag.getType()) {
+            case BYTE:
+                return ((ByteTag) tag).getByte();
+            case SHORT:
+                return ((ShortTag) tag).getShort();
+            case INT:
+                return ((IntTag) tag).getInt();
+            default:
+                return ((LongTag) tag).getLong();
         }
-        return hash;
+    }
+
+    private static double floatingValue(Tag tag) {
+        return tag.getType() == TagType.FLOAT ? ((FloatTag) tag).getFloat() : ((DoubleTag) tag).getDouble();
     }
 
     public static <T extends Tag> Entry<T> entry(String name, T tag) {
@@ -332,24 +479,61 @@ public final class CompoundTag extends Tag {
         }
     }
 
+    private static final class EntryList extends AbstractList<Entry<?>> implements RandomAccess {
+
+        private final CompoundTag tag;
+
+        private EntryList(CompoundTag tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        public Entry<?> get(int index) {
+            if (index >= 0 && index < this.tag.size()) {
+                return this.tag.entryAt(index);
+            }
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.tag.size());
+        }
+
+        @Override
+        public int size() {
+            return this.tag.size();
+        }
+    }
+
     public static final class Builder {
-        private final NavigableMap<String, Entry<?>> entryMap;
-        private List<Entry<?>> entries;
+        private CompoundShape shape; // small compounds follow shared shapes until they no longer fit in one
+        private String[] names; // used instead of a shape once the names are not shared
+        private Tag[] values;
+        private int size;
+        private CompoundTrie.Editor trie;
+        private int hash;
 
         private final boolean allowDuplicate;
 
         private Builder(boolean allowDuplicate) {
-            this.entryMap = new TreeMap<>();
-            this.entries = new ArrayList<>();
+            this.shape = CompoundShape.EMPTY;
+            this.values = new Tag[4];
             this.allowDuplicate = allowDuplicate;
         }
 
         private Builder(CompoundTag compoundTag, boolean allowDuplicate) {
-            this.entryMap = new TreeMap<>(compoundTag.valueMap);
-            this.entries = new ArrayList<>(compoundTag.values);
+            if (compoundTag.trie != null) {
+                this.trie = compoundTag.trie.toEditor();
+            } else {
+                int size = compoundTag.values.length;
+                this.shape = compoundTag.shape;
+                this.values = Arrays.copyOf(compoundTag.values, Math.max(size, 4));
+                this.size = size;
+            }
+            this.hash = compoundTag.hash;
             this.allowDuplicate = allowDuplicate;
         }
 
+        private boolean isFrozen() {
+            return this.values == null && this.trie == null;
+        }
+
         public Builder add(String name, Tag tag) {
             return this.add(new Entry<>(name, tag));
         }
@@ -428,24 +612,61 @@ public final class CompoundTag extends Tag {
                 String escapedName = SIMPLE_KEY.matcher(entryName).matches() ? entryName : StringTag.escape(entryName);
                 throw new IllegalArgumentException("Compound tags do not allow end tag values, name: " + escapedName);
             }
-            if (this.entries == null) {
+            if (this.isFrozen()) {
                 throw new IllegalStateException("this builder has been frozen since build method was called");
             }
-            if (!this.entryMap.containsKey(entryName) || this.allowDuplicate) {
-                this.entryMap.put(entryName, entry);
-                this.entries.add(entry);
-                return this;
+            if (!this.put(entryName, entry.getValue(), this.allowDuplicate)) {
+                String escapedName = SIMPLE_KEY.matcher(entryName).matches() ? entryName : StringTag.escape(entryName);
+                throw new IllegalArgumentException("Duplicate tag names: " + escapedName);
             }
-            String escapedName = SIMPLE_KEY.matcher(entryName).matches() ? entryName : StringTag.escape(entryName);
-            throw new IllegalArgumentException("Duplicate tag names: " + escapedName);
+            return this;
         }
 
         public Builder remove(String key) {
-            Entry<?> entry = this.entryMap.remove(key);
-            this.entries.remove(entry);
+            if (this.isFrozen()) {
+                throw new IllegalStateException("this builder has been frozen since build method was called");
+            }
+            if (this.trie != null) {
+                CompoundTrie.Leaf old = this.trie.remove(key);
+                if (old != null) {
+                    this.hash -= key.hashCode() ^ old.value.hashCode();
+                }
+                return this;
+            }
+            int i = this.indexOf(key);
+            if (i >= 0) {
+                this.hash -= key.hashCode() ^ this.values[i].hashCode();
+                this.unshare();
+                System.arraycopy(this.names, i + 1, this.names, i, this.size - 1 - i);
+                System.arraycopy(this.values, i + 1, this.values, i, --this.size - i);
+                this.names[this.size] = null;
+                this.values[this.size] = null;
+            }
             return this;
         }
 
+        private int indexOf(String name) {
+            if (this.shape != null) {
+                return this.shape.indexOf(name);
+            }
+            for (int i = 0, hash = name.hashCode(); i < this.size; ++i) {
+                if (this.names[i].hashCode() == hash && this.names[i].equals(name)) return i;
+            }
+            return -1;
+        }
+
+        private String nameAt(int i) {
+            return this.shape != null ? this.shape.name(i) : this.names[i];
+        }
+
+        // continues with names of its own, which become a private shape when built
+        private void unshare() {
+            if (this.shape != null) {
+                this.names = this.shape.copyNames(this.values.length);
+                this.shape = null;
+            }
+        }
+
         public Builder set(String name, Tag tag) {
             return this.set(new Entry<>(name, tag));
         }
@@ -524,25 +745,94 @@ public final class CompoundTag extends Tag {
                 String escapedName = SIMPLE_KEY.matcher(entryName).matches() ? entryName : StringTag.escape(entryName);
                 throw new IllegalArgumentException("Compound tags do not allow end tag values, name: " + escapedName);
             }
-            if (this.entries == null) {
+            if (this.isFrozen()) {
                 throw new IllegalStateException("this builder has been frozen since build method was called");
             }
-            Entry<?> old = this.entryMap.put(entryName, entry);
-            if (old != null) {
-                this.entries.replaceAll(it -> it == old ? entry : it);
+            this.put(entryName, entry.getValue(), true);
+            return this;
+        }
+
+        private boolean put(String name, Tag value, boolean replace) {
+            if (this.trie != null) {
+                if (!replace && this.trie.find(name) != null) {
+                    return false;
+                }
+                CompoundTrie.Leaf old = this.trie.put(name, value);
+                if (old != null) {
+                    this.hash -= name.hashCode() ^ old.value.hashCode();
+                }
+                this.hash += name.hashCode() ^ value.hashCode();
+                return true;
+            }
+            int i = this.indexOf(name);
+            if (i >= 0) {
+                if (!replace) {
+                    return false;
+                }
+                this.hash -= name.hashCode() ^ this.values[i].hashCode();
+                this.hash += name.hashCode() ^ value.hashCode();
+                this.values[i] = value; // the latter one wins, as it does when the tag is read back
+                return true;
+            }
+            this.hash += name.hashCode() ^ value.hashCode();
+            if (this.size < CompoundShape.MAX_SHARED_SIZE) {
+                if (this.size == this.values.length) {
+                    this.values = Arrays.copyOf(this.values, this.size * 2);
+                    if (this.names != null) {
+                        this.names = Arrays.copyOf(this.names, this.size * 2);
+                    }
+                }
+                CompoundShape shape = this.shape != null ? this.shape.with(name) : null;
+                if (shape != null) {
+                    this.shape = shape;
+                } else {
+                    this.unshare();
+                    this.names[this.size] = name;
+                }
+                this.values[this.size++] = value;
             } else {
-                this.entries.add(entry);
+                CompoundTrie.Editor trie = CompoundTrie.editor();
+                for (int j = 0; j < this.size; ++j) {
+                    trie.put(this.nameAt(j), this.values[j]);
+                }
+                trie.put(name, value);
+                this.trie = trie;
+                this.shape = null;
+                this.names = null;
+                this.values = null;
+                this.size = 0;
             }
-            return this;
+            return true;
         }
 
         public CompoundTag build() {
-            if (this.entryMap.isEmpty()) {
+            if (this.isFrozen()) {
+                throw new IllegalStateException("this builder has been frozen since build method was called");
+            }
+            CompoundTrie.Editor trie = this.trie;
+            if (trie != null) {
+                this.trie = null; // make the builder frozen
+                if (trie.size() > CompoundShape.MAX_SHARED_SIZE) {
+                    return new CompoundTag(null, null, trie.build(), this.hash);
+                }
+                CompoundTrie small = trie.build();
+                String[] names = new String[small.size()];
+                Tag[] values = new Tag[small.size()];
+                for (int i = 0; i < values.length; ++i) {
+                    CompoundTrie.Leaf leaf = small.leafAt(i);
+                    names[i] = leaf.name;
+                    values[i] = leaf.value;
+                }
+                return values.length == 0 ? CompoundTag.EMPTY : new CompoundTag(CompoundShape.of(names, names.length), values, null, this.hash);
+            }
+            if (this.size == 0) {
                 return CompoundTag.EMPTY;
             }
-            final List<Entry<?>> entries = this.entries;
-            this.entries = null; // make the builder frozen
-            return new CompoundTag(this.entryMap, entries);
+            Tag[] values = Arrays.copyOf(this.values, this.size);
+            CompoundShape shape = this.shape != null ? this.shape : CompoundShape.of(this.names, this.size);
+            this.values = null; // make the builder frozen
+            this.names = null;
+            return new CompoundTag(shape, values, null, this.hash);
         }
     }
 }
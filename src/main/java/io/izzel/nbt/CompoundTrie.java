@@ -0,0 +1,288 @@
+package io.izzel.nbt;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+final class CompoundTrie {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int MAX_SHIFT = 30; // nodes below this level hold colliding names in a plain array
+
+    private final PersistentVector names; // insertion order, removed names are left as null until compacted
+    private final Node root;
+    private final int size;
+
+    private volatile int[] positions;
+    private volatile SortedSet<String> sortedNames;
+
+    private CompoundTrie(PersistentVector names, Node root, int size, SortedSet<String> sortedNames) {
+        this.names = names;
+        this.root = root;
+        this.size = size;
+        this.sortedNames = sortedNames;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    Leaf find(String name) {
+        return find(this.root, name);
+    }
+
+    Leaf leafAt(int i) {
+        int position = i;
+        if (this.names.size() != this.size) {
+            int[] positions = this.positions;
+            if (positions == null) {
+                positions = new int[this.size];
+                for (int j = 0, k = 0, length = this.names.size(); j < length; ++j) {
+                    if (this.names.get(j) != null) positions[k++] = j;
+                }
+                this.positions = positions;
+            }
+            position = positions[i];
+        }
+        return find(this.root, (String) this.names.get(position));
+    }
+
+    boolean sharesRoot(CompoundTrie other) {
+        return this.root == other.root;
+    }
+
+    SortedSet<String> sortedNames() {
+        SortedSet<String> sortedNames = this.sortedNames;
+        if (sortedNames == null) {
+            TreeSet<String> set = new TreeSet<>();
+            for (int i = 0, length = this.names.size(); i < length; ++i) {
+                String name = (String) this.names.get(i);
+                if (name != null) set.add(name);
+            }
+            this.sortedNames = sortedNames = Collections.unmodifiableSortedSet(set);
+        }
+        return sortedNames;
+    }
+
+    Editor toEditor() {
+        return new Editor(this);
+    }
+
+    static Editor editor() {
+        return new Editor(null);
+    }
+
+    private static Leaf find(Node node, String name) {
+        int hash = name.hashCode();
+        for (int shift = 0; shift <= MAX_SHIFT; shift += BITS) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (slot instanceof Leaf) {
+                return ((Leaf) slot).name.equals(name) ? (Leaf) slot : null;
+            }
+            node = (Node) slot;
+        }
+        for (Object slot : node.slots) {
+            if (((Leaf) slot).name.equals(name)) return (Leaf) slot;
+        }
+        return null;
+    }
+
+    static final class Leaf {
+        final String name;
+        final Tag value;
+        final int position;
+
+        private Leaf(String name, Tag value, int position) {
+            this.name = name;
+            this.value = value;
+            this.position = position;
+        }
+    }
+
+    private static final class Node {
+        private final Object edit;
+        private int bitmap;
+        private Object[] slots;
+
+        private Node(Object edit, int bitmap, Object[] slots) {
+            this.edit = edit;
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    static final class Editor {
+        private final Object edit = new Object(); // nodes created by this editor can be modified in place
+        private PersistentVector.Transient names;
+        private Node root;
+        private int size;
+        private SortedSet<String> sortedNames;
+
+        private Editor(CompoundTrie trie) {
+            if (trie != null) {
+                this.names = trie.names.toTransient();
+                this.root = trie.root;
+                this.size = trie.size;
+                this.sortedNames = trie.sortedNames;
+            } else {
+                this.names = PersistentVector.EMPTY.toTransient();
+                this.root = new Node(this.edit, 0, new Object[0]);
+            }
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        Leaf find(String name) {
+            return CompoundTrie.find(this.root, name);
+        }
+
+        Leaf put(String name, Tag value) {
+            Leaf old = CompoundTrie.find(this.root, name);
+            Leaf leaf;
+            if (old != null) {
+                leaf = new Leaf(old.name, value, old.position);
+            } else {
+                leaf = new Leaf(name, value, this.names.size());
+                this.names.add(name);
+                this.size += 1;
+                this.sortedNames = null;
+            }
+            this.root = this.put(this.root, leaf, name.hashCode(), 0);
+            return old;
+        }
+
+        Leaf remove(String name) {
+            Leaf old = CompoundTrie.find(this.root, name);
+            if (old != null) {
+                this.names.set(old.position, null);
+                this.root = this.remove(this.root, name, name.hashCode(), 0);
+                this.size -= 1;
+                this.sortedNames = null;
+            }
+            return old;
+        }
+
+        CompoundTrie build() {
+            if (this.names.size() - this.size > this.size) {
+                Editor editor = new Editor(null);
+                for (int i = 0, length = this.names.size(); i < length; ++i) {
+                    String name = (String) this.names.get(i);
+                    if (name != null) editor.put(name, this.find(name).value);
+                }
+                return editor.build();
+            }
+            return new CompoundTrie(this.names.persistent(), this.root, this.size, this.sortedNames);
+        }
+
+        private Node put(Node node, Leaf leaf, int hash, int shift) {
+            if (shift > MAX_SHIFT) {
+                Node result = this.editable(node);
+                for (int i = 0; i < result.slots.length; ++i) {
+                    if (((Leaf) result.slots[i]).name.equals(leaf.name)) {
+                        result.slots[i] = leaf;
+                        return result;
+                    }
+                }
+                result.slots = insert(result.slots, result.slots.length, leaf);
+                return result;
+            }
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int i = Integer.bitCount(node.bitmap & (bit - 1));
+            if ((node.bitmap & bit) == 0) {
+                Node result = this.editable(node);
+                result.slots = insert(result.slots, i, leaf);
+                result.bitmap |= bit;
+                return result;
+            }
+            Object slot = node.slots[i];
+            Object replacement;
+            if (slot instanceof Leaf) {
+                Leaf existing = (Leaf) slot;
+                replacement = existing.name.equals(leaf.name) ? leaf
+                        : this.merge(existing, existing.name.hashCode(), leaf, hash, shift + BITS);
+            } else {
+                replacement = this.put((Node) slot, leaf, hash, shift + BITS);
+            }
+            if (replacement == slot) {
+                return node;
+            }
+            Node result = this.editable(node);
+            result.slots[i] = replacement;
+            return result;
+        }
+
+        private Node merge(Leaf first, int firstHash, Leaf second, int secondHash, int shift) {
+            if (shift > MAX_SHIFT) {
+                return new Node(this.edit, 0, new Object[]{first, second});
+            }
+            int firstIndex = (firstHash >>> shift) & MASK, secondIndex = (secondHash >>> shift) & MASK;
+            if (firstIndex == secondIndex) {
+                Object[] slots = new Object[]{this.merge(first, firstHash, second, secondHash, shift + BITS)};
+                return new Node(this.edit, 1 << firstIndex, slots);
+            }
+            Object[] slots = firstIndex < secondIndex ? new Object[]{first, second} : new Object[]{second, first};
+            return new Node(this.edit, (1 << firstIndex) | (1 << secondIndex), slots);
+        }
+
+        private Node remove(Node node, String name, int hash, int shift) {
+            if (shift > MAX_SHIFT) {
+                for (int i = 0; i < node.slots.length; ++i) {
+                    if (((Leaf) node.slots[i]).name.equals(name)) {
+                        if (node.slots.length == 1) return null;
+                        Node result = this.editable(node);
+                        result.slots = delete(result.slots, i);
+                        return result;
+                    }
+                }
+                return node;
+            }
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0) {
+                return node;
+            }
+            int i = Integer.bitCount(node.bitmap & (bit - 1));
+            Object slot = node.slots[i];
+            Object replacement = slot instanceof Leaf ? null : this.remove((Node) slot, name, hash, shift + BITS);
+            if (replacement == slot) {
+                return node;
+            }
+            if (replacement == null && node.slots.length == 1 && shift > 0) {
+                return null;
+            }
+            Node result = this.editable(node);
+            if (replacement == null) {
+                result.slots = delete(result.slots, i);
+                result.bitmap &= ~bit;
+            } else {
+                result.slots[i] = replacement;
+            }
+            return result;
+        }
+
+        private Node editable(Node node) {
+            return node.edit == this.edit ? node : new Node(this.edit, node.bitmap, node.slots.clone());
+        }
+
+        private static Object[] insert(Object[] slots, int i, Object slot) {
+            Object[] result = new Object[slots.length + 1];
+            System.arraycopy(slots, 0, result, 0, i);
+            result[i] = slot;
+            System.arraycopy(slots, i, result, i + 1, slots.length - i);
+            return result;
+        }
+
+        private static Object[] delete(Object[] slots, int i) {
+            Object[] result = Arrays.copyOf(slots, slots.length - 1);
+            System.arraycopy(slots, i + 1, result, i, slots.length - i - 1);
+            return result;
+        }
+    }
+}
@@ -3,44 +3,57 @@ package io.izzel.nbt;
 import io.izzel.nbt.util.ImmutableBytes;
 import io.izzel.nbt.util.ImmutableInts;
 import io.izzel.nbt.util.ImmutableLongs;
+import io.izzel.nbt.visitor.TagListVisitor;
 
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
+import java.util.AbstractList;
 import java.util.ArrayDeque;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Queue;
-import java.util.SortedSet;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 public final class ListTag extends Tag {
 
     private static final ListTag[] CACHE = Arrays.stream(TagType.values())
-            .map(type -> new ListTag(type, Collections.emptyList())).toArray(ListTag[]::new);
+            .map(type -> new ListTag(type, newValues(type, 0), 0, null, 1)).toArray(ListTag[]::new);
 
-    private final List<Tag> values;
     private final TagType elemType;
+    private final Object values; // primitive arrays for numeric element types, a persistent vector of tags otherwise
+    private final int size;
+    private final AtomicInteger claimed; // how much of a primitive array is in use by the tags and builders sharing it
+    private final int hash; // computed by the builder, since every element has already cached its own hash
 
-    private ListTag(TagType type, List<Tag> values) {
+    TagDigest digest; // computed on demand, and immutable, so racing threads can only compute the same one
+
+    private ListTag(TagType type, Object values, int size, AtomicInteger claimed, int hash) {
         super(TagType.LIST);
         this.elemType = type;
-        this.values = Collections.unmodifiableList(values);
+        this.values = values;
+        this.size = size;
+        this.claimed = claimed;
+        this.hash = hash;
     }
 
     public int size() {
-        return this.values.size();
+        return this.size;
     }
 
     public Tag get(int index, Tag fallback) {
-        return index >= 0 && index < this.size() ? this.values.get(index) : fallback;
+        return index >= 0 && index < this.size ? this.tagAt(index) : fallback;
     }
 
     public Tag getOrDefault(int index) {
-        return index >= 0 && index < this.size() ? this.values.get(index) : this.elemType.getDefault();
+        return index >= 0 && index < this.size ? this.tagAt(index) : this.elemType.getDefault();
     }
 
     public Tag get(int index, TagType type, Tag fallback) {
@@ -48,111 +61,170 @@ public final class ListTag extends Tag {
             String msg = "Expected " + type.getTagName() + " but got " + fallback.getType().getTagName();
             throw new IllegalArgumentException(msg);
         }
-        return index >= 0 && index < this.size() && this.elemType == type ? this.values.get(index) : fallback;
+        return index >= 0 && index < this.size && this.elemType == type ? this.tagAt(index) : fallback;
     }
 
     public Tag getOrDefault(int index, TagType type) {
-        return index >= 0 && index < this.size() && this.elemType == type ? this.values.get(index) : type.getDefault();
+        return index >= 0 && index < this.size && this.elemType == type ? this.tagAt(index) : type.getDefault();
     }
 
     public Number getNumber(int index, Number fallback) {
-        if (index >= 0 && index < this.size()) {
+        if (index >= 0 && index < this.size) {
             switch (this.elemType) {
                 case BYTE:
-                    return ((ByteTag) this.values.get(index)).getByte();
+                    return ((byte[]) this.values)[index];
                 case SHORT:
-                    return ((ShortTag) this.values.get(index)).getShort();
+                    return ((short[]) this.values)[index];
                 case INT:
-                    return ((IntTag) this.values.get(index)).getInt();
+                    return ((int[]) this.values)[index];
                 case LONG:
-                    return ((LongTag) this.values.get(index)).getLong();
+                    return ((long[]) this.values)[index];
                 case FLOAT:
-                    return ((FloatTag) this.values.get(index)).getFloat();
+                    return ((float[]) this.values)[index];
                 case DOUBLE:
-                    return ((DoubleTag) this.values.get(index)).getDouble();
+                    return ((double[]) this.values)[index];
             }
         }
         return fallback;
     }
 
     public Number getNumberOrDefault(int index) {
-        if (index >= 0 && index < this.size()) {
-            switch (this.elemType) {
-                case DOUBLE:
-                    return ((DoubleTag) this.values.get(index)).getDouble();
-                case FLOAT:
-                    return ((FloatTag) this.values.get(index)).getFloat();
-                case LONG:
-                    return ((LongTag) this.values.get(index)).getLong();
-                case INT:
-                    return ((IntTag) this.values.get(index)).getInt();
-                case SHORT:
-                    return ((ShortTag) this.values.get(index)).getShort();
-                case BYTE:
-                    return ((ByteTag) this.values.get(index)).getByte();
-            }
-        }
-        return 0;
+        return this.getNumber(index, 0);
     }
 
     public boolean getBoolean(int index, boolean fallback) {
-        return this.getNumber(index, fallback ? (byte) 1 : (byte) 0).byteValue() != 0;
+        return this.getByte(index, fallback ? (byte) 1 : (byte) 0) != 0;
     }
 
     public boolean getBooleanOrDefault(int index) {
-        return this.getNumberOrDefault(index).byteValue() != 0;
+        return this.getByteOrDefault(index) != 0;
     }
 
     public byte getByte(int index, byte fallback) {
-        return this.getNumber(index, fallback).byteValue();
+        if (index >= 0 && index < this.size) {
+            switch (this.elemType) {
+                case BYTE:
+                case SHORT:
+                case INT:
+                case LONG:
+                    return (byte) this.integralAt(index);
+                case FLOAT:
+                case DOUBLE:
+                    return (byte) this.floatingAt(index);
+            }
+        }
+        return fallback;
     }
 
     public byte getByteOrDefault(int index) {
-        return this.getNumberOrDefault(index).byteValue();
+        return this.getByte(index, (byte) 0);
     }
 
     public short getShort(int index, short fallback) {
-        return this.getNumber(index, fallback).shortValue();
+        if (index >= 0 && index < this.size) {
+            switch (this.elemType) {
+                case BYTE:
+                case SHORT:
+                case INT:
+                case LONG:
+                    return (short) this.integralAt(index);
+                case FLOAT:
+                case DOUBLE:
+                    return (short) this.floatingAt(index);
+            }
+        }
+        return fallback;
     }
 
     public short getShortOrDefault(int index) {
-        return this.getNumberOrDefault(index).shortValue();
+        return this.getShort(index, (short) 0);
     }
 
     public int getInt(int index, int fallback) {
-        return this.getNumber(index, fallback).intValue();
+        if (index >= 0 && index < this.size) {
+            switch (this.elemType) {
+                case BYTE:
+                case SHORT:
+                case INT:
+                case LONG:
+                    return (int) this.integralAt(index);
+                case FLOAT:
+                case DOUBLE:
+                    return (int) this.floatingAt(index);
+            }
+        }
+        return fallback;
     }
 
     public int getIntOrDefault(int index) {
-        return this.getNumberOrDefault(index).intValue();
+        return this.getInt(index, 0);
     }
 
     public long getLong(int index, long fallback) {
-        return this.getNumber(index, fallback).longValue();
+        if (index >= 0 && index < this.size) {
+            switch (this.elemType) {
+                case BYTE:
+                case SHORT:
+                case INT:
+                case LONG:
+                    return this.integralAt(index);
+                case FLOAT:
+                case DOUBLE:
+                    return (long) this.floatingAt(index);
+            }
+        }
+        return fallback;
     }
 
     public long getLongOrDefault(int index) {
-        return this.getNumberOrDefault(index).longValue();
+        return this.getLong(index, 0L);
     }
 
     public float getFloat(int index, float fallback) {
-        return this.getNumber(index, fallback).floatValue();
+        if (index >= 0 && index < this.size) {
+            switch (this.elemType) {
+                case BYTE:
+                case SHORT:
+                case INT:
+                case LONG:
+                    return (float) this.integralAt(index);
+                case FLOAT:
+                case DOUBLE:
+                    return (float) this.floatingAt(index);
+            }
+        }
+        return fallback;
     }
 
     public float getFloatOrDefault(int index) {
-        return this.getNumberOrDefault(index).floatValue();
+        return this.getFloat(index, 0F);
     }
 
     public double getDouble(int index, double fallback) {
-        return this.getNumber(index, fallback).doubleValue();
+        if (index >= 0 && index < this.size) {
+            switch (this.elemType) {
+                case BYTE:
+                case SHORT:
+                case INT:
+                case LONG:
+                    return (double) this.integralAt(index);
+                case FLOAT:
+                case DOUBLE:
+                    return this.floatingAt(index);
+            }
+        }
+        return fallback;
     }
 
     public double getDoubleOrDefault(int index) {
-        return this.getNumberOrDefault(index).doubleValue();
+        return this.getDouble(index, 0D);
     }
 
     public ImmutableBytes getBytes(int index, ImmutableBytes fallback) {
-        return ((ByteArrayTag) this.get(index, TagType.BYTE_ARRAY, ByteArrayTag.of(fallback))).getBytes();
+        if (index >= 0 && index < this.size && this.elemType == TagType.BYTE_ARRAY) {
+            return ((ByteArrayTag) this.tagAt(index)).getBytes();
+        }
+        return fallback;
     }
 
     public ImmutableBytes getBytesOrDefault(int index) {
@@ -160,7 +232,10 @@ public final class ListTag extends Tag {
     }
 
     public ImmutableInts getInts(int index, ImmutableInts fallback) {
-        return ((IntArrayTag) this.get(index, TagType.INT_ARRAY, IntArrayTag.of(fallback))).getInts();
+        if (index >= 0 && index < this.size && this.elemType == TagType.INT_ARRAY) {
+            return ((IntArrayTag) this.tagAt(index)).getInts();
+        }
+        return fallback;
     }
 
     public ImmutableInts getIntsOrDefault(int index) {
@@ -168,7 +243,10 @@ public final class ListTag extends Tag {
     }
 
     public ImmutableLongs getLongs(int index, ImmutableLongs fallback) {
-        return ((LongArrayTag) this.get(index, TagType.LONG_ARRAY, LongArrayTag.of(fallback))).getLongs();
+        if (index >= 0 && index < this.size && this.elemType == TagType.LONG_ARRAY) {
+            return ((LongArrayTag) this.tagAt(index)).getLongs();
+        }
+        return fallback;
     }
 
     public ImmutableLongs getLongsOrDefault(int index) {
@@ -176,7 +254,10 @@ public final class ListTag extends Tag {
     }
 
     public String getString(int index, String fallback) {
-        return ((StringTag) this.get(index, TagType.STRING, StringTag.of(fallback))).getString();
+        if (index >= 0 && index < this.size && this.elemType == TagType.STRING) {
+            return ((StringTag) this.tagAt(index)).getString();
+        }
+        return fallback;
     }
 
     public String getStringOrDefault(int index) {
@@ -202,7 +283,7 @@ public final class ListTag extends Tag {
 
     public ListTag getListOrDefault(int index, TagType elemType) {
         ListTag tag = (ListTag) this.getOrDefault(index, TagType.LIST);
-        return tag.getElemType() == elemType ? tag : builder(elemType).build();
+        return tag.getElemType() == elemType ? tag : empty(elemType);
     }
 
     public CompoundTag getCompound(int index, CompoundTag fallback) {
@@ -218,37 +299,283 @@ public final class ListTag extends Tag {
     }
 
     public List<? extends Tag> dump() {
-        return this.values;
+        return new TagList(this);
     }
 
     public Stream<Tag> stream() {
-        return this.values.stream();
+        return IntStream.range(0, this.size).mapToObj(this::tagAt);
+    }
+
+    public IntStream intStream() {
+        switch (this.elemType) {
+            case INT:
+                return Arrays.stream((int[]) this.values, 0, this.size);
+            case BYTE:
+            case SHORT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+                return IntStream.range(0, this.size).map(this::getIntOrDefault);
+            default:
+                return IntStream.empty();
+        }
+    }
+
+    public LongStream longStream() {
+        switch (this.elemType) {
+            case LONG:
+                return Arrays.stream((long[]) this.values, 0, this.size);
+            case BYTE:
+            case SHORT:
+            case INT:
+            case FLOAT:
+            case DOUBLE:
+                return IntStream.range(0, this.size).mapToLong(this::getLongOrDefault);
+            default:
+                return LongStream.empty();
+        }
+    }
+
+    public DoubleStream doubleStream() {
+        switch (this.elemType) {
+            case DOUBLE:
+                return Arrays.stream((double[]) this.values, 0, this.size);
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case FLOAT:
+                return IntStream.range(0, this.size).mapToDouble(this::getDoubleOrDefault);
+            default:
+                return DoubleStream.empty();
+        }
+    }
+
+    public byte[] toByteArray() {
+        if (this.elemType == TagType.BYTE) {
+            return Arrays.copyOf((byte[]) this.values, this.size);
+        }
+        byte[] result = new byte[this.isNumeric() ? this.size : 0];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = this.getByteOrDefault(i);
+        }
+        return result;
+    }
+
+    public short[] toShortArray() {
+        if (this.elemType == TagType.SHORT) {
+            return Arrays.copyOf((short[]) this.values, this.size);
+        }
+        short[] result = new short[this.isNumeric() ? this.size : 0];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = this.getShortOrDefault(i);
+        }
+        return result;
+    }
+
+    public int[] toIntArray() {
+        if (this.elemType == TagType.INT) {
+            return Arrays.copyOf((int[]) this.values, this.size);
+        }
+        int[] result = new int[this.isNumeric() ? this.size : 0];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = this.getIntOrDefault(i);
+        }
+        return result;
+    }
+
+    public long[] toLongArray() {
+        if (this.elemType == TagType.LONG) {
+            return Arrays.copyOf((long[]) this.values, this.size);
+        }
+        long[] result = new long[this.isNumeric() ? this.size : 0];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = this.getLongOrDefault(i);
+        }
+        return result;
+    }
+
+    public float[] toFloatArray() {
+        if (this.elemType == TagType.FLOAT) {
+            return Arrays.copyOf((float[]) this.values, this.size);
+        }
+        float[] result = new float[this.isNumeric() ? this.size : 0];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = this.getFloatOrDefault(i);
+        }
+        return result;
+    }
+
+    public double[] toDoubleArray() {
+        if (this.elemType == TagType.DOUBLE) {
+            return Arrays.copyOf((double[]) this.values, this.size);
+        }
+        double[] result = new double[this.isNumeric() ? this.size : 0];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = this.getDoubleOrDefault(i);
+        }
+        return result;
+    }
+
+    // visits the backing array in place, which the visitor must neither keep nor modify
+    public boolean acceptValues(TagListVisitor visitor) {
+        switch (this.elemType) {
+            case BYTE:
+                visitor.visitByteValues((byte[]) this.values, 0, this.size);
+                return true;
+            case SHORT:
+                visitor.visitShortValues((short[]) this.values, 0, this.size);
+                return true;
+            case INT:
+                visitor.visitIntValues((int[]) this.values, 0, this.size);
+                return true;
+            case LONG:
+                visitor.visitLongValues((long[]) this.values, 0, this.size);
+                return true;
+            case FLOAT:
+                visitor.visitFloatValues((float[]) this.values, 0, this.size);
+                return true;
+            case DOUBLE:
+                visitor.visitDoubleValues((double[]) this.values, 0, this.size);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private boolean isNumeric() {
+        return !(this.values instanceof PersistentVector);
+    }
+
+    private Tag tagAt(int index) {
+        switch (this.elemType) {
+            case BYTE:
+                return ByteTag.of(((byte[]) this.values)[index]);
+            case SHORT:
+                return ShortTag.of(((short[]) this.values)[index]);
+            case INT:
+                return IntTag.of(((int[]) this.values)[index]);
+            case LONG:
+                return LongTag.of(((long[]) this.values)[index]);
+            case FLOAT:
+                return FloatTag.of(((float[]) this.values)[index]);
+            case DOUBLE:
+                return DoubleTag.of(((double[]) this.values)[index]);
+            default:
+                return (Tag) ((PersistentVector) this.values).get(index);
+        }
+    }
+
+    private long integralAt(int index) {
+        switch (this.elemType) {
+            case BYTE:
+                return ((byte[]) this.values)[index];
+            case SHORT:
+                return ((short[]) this.values)[index];
+            case INT:
+                return ((int[]) this.values)[index];
+            default:
+                return ((long[]) this.values)[index];
+        }
+    }
+
+    private double floatingAt(int index) {
+        return this.elemType == TagType.FLOAT ? ((float[]) this.values)[index] : ((double[]) this.values)[index];
+    }
+
+    private static int hashOf(int hash, TagType type, Object values, int from, int to) {
+        switch (type) {
+            case BYTE:
+                for (int i = from; i < to; ++i) hash = 31 * hash + Byte.hashCode(((byte[]) values)[i]);
+                return hash;
+            case SHORT:
+                for (int i = from; i < to; ++i) hash = 31 * hash + Short.hashCode(((short[]) values)[i]);
+                return hash;
+            case INT:
+                for (int i = from; i < to; ++i) hash = 31 * hash + Integer.hashCode(((int[]) values)[i]);
+                return hash;
+            case LONG:
+                for (int i = from; i < to; ++i) hash = 31 * hash + Long.hashCode(((long[]) values)[i]);
+                return hash;
+            case FLOAT:
+                for (int i = from; i < to; ++i) hash = 31 * hash + Float.hashCode(((float[]) values)[i]);
+                return hash;
+            case DOUBLE:
+                for (int i = from; i < to; ++i) hash = 31 * hash + Double.hashCode(((double[]) values)[i]);
+                return hash;
+            default:
+                for (int i = from; i < to; ++i) hash = 31 * hash + ((PersistentVector) values).get(i).hashCode();
+                return hash;
+        }
+    }
+
+    // compares everything but the child tags, which are queued for the caller to compare
+    static boolean addChildren(ListTag thisList, ListTag thatList, Queue<Tag> thisTags, Queue<Tag> thatTags) {
+        if (thatList.size != thisList.size) return false;
+        if (thatList.values == thisList.values) return true;
+        if (thisList.isNumeric() || thatList.isNumeric()) {
+            return numericEquals(thisList, thatList);
+        }
+        PersistentVector thisValues = (PersistentVector) thisList.values;
+        PersistentVector thatValues = (PersistentVector) thatList.values;
+        for (int i = 0; i < thisList.size; ++i) {
+            thisTags.add((Tag) thisValues.get(i));
+            thatTags.add((Tag) thatValues.get(i));
+        }
+        return true;
+    }
+
+    private static boolean numericEquals(ListTag thisList, ListTag thatList) {
+        if (thisList.elemType != thatList.elemType) {
+            return thisList.size == 0;
+        }
+        for (int i = 0, size = thisList.size; i < size; ++i) {
+            switch (thisList.elemType) {
+                case BYTE:
+                    if (((byte[]) thisList.values)[i] != ((byte[]) thatList.values)[i]) return false;
+                    break;
+                case SHORT:
+                    if (((short[]) thisList.values)[i] != ((short[]) thatList.values)[i]) return false;
+                    break;
+                case INT:
+                    if (((int[]) thisList.values)[i] != ((int[]) thatList.values)[i]) return false;
+                    break;
+                case LONG:
+                    if (((long[]) thisList.values)[i] != ((long[]) thatList.values)[i]) return false;
+                    break;
+                case FLOAT:
+                    int thisFloat = Float.floatToIntBits(((float[]) thisList.values)[i]);
+                    if (thisFloat != Float.floatToIntBits(((float[]) thatList.values)[i])) return false;
+                    break;
+                case DOUBLE:
+                    long thisDouble = Double.doubleToLongBits(((double[]) thisList.values)[i]);
+                    if (thisDouble != Double.doubleToLongBits(((double[]) thatList.values)[i])) return false;
+                    break;
+            }
+        }
+        return true;
     }
 
     @Override
     public boolean equals(Object o) {
         if (o == this) return true;
         if (o instanceof ListTag) {
+            ListTag that = (ListTag) o;
+            if (that.hash != this.hash || that.size != this.size) return false;
             Queue<Tag> thisTags = new ArrayDeque<>(Collections.singleton(this));
-            Queue<Tag> thatTags = new ArrayDeque<>(Collections.singleton((ListTag) o));
+            Queue<Tag> thatTags = new ArrayDeque<>(Collections.singleton(that));
             while (!thisTags.isEmpty()) {
                 Tag thisTag = thisTags.remove(), thatTag = thatTags.remove();
                 if (thisTag != thatTag) {
                     TagType type = thisTag.getType();
                     if (type != thatTag.getType()) return false;
+                    if (thisTag.hashCode() != thatTag.hashCode()) return false; // cheap for lists and compounds
                     if (type == TagType.LIST) {
-                        if (((ListTag) thatTag).size() != ((ListTag) thisTag).size()) return false;
-                        thisTags.addAll(((ListTag) thisTag).dump());
-                        thatTags.addAll(((ListTag) thatTag).dump());
+                        if (!addChildren((ListTag) thisTag, (ListTag) thatTag, thisTags, thatTags)) return false;
                         continue;
                     }
                     if (type == TagType.COMPOUND) {
-                        SortedSet<String> thisCompoundNames = ((CompoundTag) thisTag).names();
-                        if (((CompoundTag) thatTag).names().size() != thisCompoundNames.size()) return false;
-                        for (String name : thisCompoundNames) {
-                            thisTags.add(((CompoundTag) thisTag).getOrDefault(name));
-                            thatTags.add(((CompoundTag) thatTag).getOrDefault(name));
-                        }
+                        if (!CompoundTag.addChildren((CompoundTag) thisTag, (CompoundTag) thatTag, thisTags, thatTags)) return false;
                         continue;
                     }
                     if (!thatTag.equals(thisTag)) return false;
@@ -259,79 +586,230 @@ public final class ListTag extends Tag {
         return false;
     }
 
+    public MutableListTag toMutable() {
+        return new MutableListTag(this);
+    }
+
     public Builder toBuilder() {
-        return new Builder(new ArrayList<>(this.values), this.elemType);
+        return new Builder(this.elemType, this.values, this.size, this.claimed, this.hash, false);
     }
 
     @Override
     public int hashCode() {
-        return this.values.hashCode();
+        return this.hash;
     }
 
     public static ListTag empty() {
         return CACHE[TagType.END.ordinal()];
     }
 
+    public static ListTag empty(TagType type) {
+        return CACHE[type.ordinal()];
+    }
+
     public static Builder builder() {
-        return new Builder(new ArrayList<>(), TagType.END);
+        return new Builder(TagType.END, newValues(TagType.END, 0), 0, null, 1, true);
     }
 
     public static Builder builder(TagType type) {
-        return new Builder(new ArrayList<>(), Objects.requireNonNull(type));
+        return new Builder(Objects.requireNonNull(type), newValues(type, 8), 0, null, 1, true);
+    }
+
+    private static Object newValues(TagType type, int length) {
+        switch (type) {
+            case BYTE:
+                return new byte[length];
+            case SHORT:
+                return new short[length];
+            case INT:
+                return new int[length];
+            case LONG:
+                return new long[length];
+            case FLOAT:
+                return new float[length];
+            case DOUBLE:
+                return new double[length];
+            default:
+                return PersistentVector.EMPTY;
+        }
+    }
+
+    private static Object copyOf(TagType type, Object array, int length) {
+        switch (type) {
+            case BYTE:
+                return Arrays.copyOf((byte[]) array, length);
+            case SHORT:
+                return Arrays.copyOf((short[]) array, length);
+            case INT:
+                return Arrays.copyOf((int[]) array, length);
+            case LONG:
+                return Arrays.copyOf((long[]) array, length);
+            case FLOAT:
+                return Arrays.copyOf((float[]) array, length);
+            case DOUBLE:
+                return Arrays.copyOf((double[]) array, length);
+            default:
+                throw new IllegalArgumentException(type.getTagName());
+        }
+    }
+
+    private static int capacityOf(TagType type, Object array) {
+        switch (type) {
+            case BYTE:
+                return ((byte[]) array).length;
+            case SHORT:
+                return ((short[]) array).length;
+            case INT:
+                return ((int[]) array).length;
+            case LONG:
+                return ((long[]) array).length;
+            case FLOAT:
+                return ((float[]) array).length;
+            case DOUBLE:
+                return ((double[]) array).length;
+            default:
+                throw new IllegalArgumentException(type.getTagName());
+        }
+    }
+
+    private static final class TagList extends AbstractList<Tag> implements RandomAccess {
+        private final ListTag tag;
+
+        private TagList(ListTag tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        public Tag get(int index) {
+            if (index >= 0 && index < this.tag.size) {
+                return this.tag.tagAt(index);
+            }
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.tag.size);
+        }
+
+        @Override
+        public int size() {
+            return this.tag.size;
+        }
     }
 
     public static final class Builder {
-        private List<Tag> values;
+        private Object values; // primitive arrays for numeric element types, a transient vector of tags otherwise
         private TagType tagType;
-
-        private Builder(List<Tag> values, TagType type) {
-            this.values = values;
+        private int size;
+        private AtomicInteger claimed; // set while the primitive array is shared with built tags
+        private int hash; // kept up to date while appending, and recomputed by the build method after removals
+        private boolean rehash;
+        private final boolean compact;
+
+        private Builder(TagType type, Object values, int size, AtomicInteger claimed, int hash, boolean compact) {
+            this.values = values instanceof PersistentVector ? ((PersistentVector) values).toTransient() : values;
             this.tagType = type;
+            this.size = size;
+            this.claimed = claimed;
+            this.hash = hash;
+            this.compact = compact;
         }
 
-        public Builder add(Tag tag) {
-            if (tagType == TagType.END) {
-                tagType = tag.getType();
+        private Object reserve(TagType type, int count) {
+            if (this.tagType == TagType.END) {
+                this.tagType = type;
+                if (type != TagType.END && this.values != null) {
+                    Object values = newValues(type, Math.max(count, 8));
+                    this.values = values instanceof PersistentVector ? ((PersistentVector) values).toTransient() : values;
+                }
             }
-            if (tagType == TagType.END) {
+            if (this.tagType == TagType.END) {
                 throw new IllegalArgumentException("List tags do not allow end tag values");
             }
-            if (tagType != tag.getType()) {
-                throw new IllegalArgumentException("Unmatched tag type (required " + tagType + ")");
+            if (this.tagType != type) {
+                throw new IllegalArgumentException("Unmatched tag type (required " + this.tagType + ")");
             }
+            Object values = this.values;
             if (values == null) {
                 throw new IllegalStateException("this builder has been frozen since build method was called");
             }
-            values.add(tag);
-            return this;
+            if (values instanceof PersistentVector.Transient) {
+                return values;
+            }
+            int capacity = capacityOf(type, values);
+            AtomicInteger claimed = this.claimed;
+            if (claimed != null) {
+                // elements past the end of a shared array can be appended in place by the first one to claim them
+                if (this.size <= capacity - count && claimed.compareAndSet(this.size, this.size + count)) {
+                    return values;
+                }
+                this.claimed = null;
+                capacity = this.size;
+            }
+            if (this.size > capacity - count) {
+                int diff = Math.max(Math.min(capacity / 2, 0x7FFFFFF7 - capacity), Math.min(count, 0x7FFFFFF7 - capacity));
+                values = copyOf(type, values, capacity + diff);
+                this.values = values;
+            }
+            return values;
+        }
+
+        public Builder add(Tag tag) {
+            switch (tag.getType()) {
+                case BYTE:
+                    return this.add(((ByteTag) tag).getByte());
+                case SHORT:
+                    return this.add(((ShortTag) tag).getShort());
+                case INT:
+                    return this.add(((IntTag) tag).getInt());
+                case LONG:
+                    return this.add(((LongTag) tag).getLong());
+                case FLOAT:
+                    return this.add(((FloatTag) tag).getFloat());
+                case DOUBLE:
+                    return this.add(((DoubleTag) tag).getDouble());
+                default:
+                    ((PersistentVector.Transient) this.reserve(tag.getType(), 1)).add(tag);
+                    this.hash = 31 * this.hash + tag.hashCode();
+                    this.size += 1;
+                    return this;
+            }
         }
 
         public Builder add(boolean b) {
-            return this.add(ByteTag.of(b));
+            return this.add(b ? (byte) 1 : (byte) 0);
         }
 
         public Builder add(byte b) {
-            return this.add(ByteTag.of(b));
+            ((byte[]) this.reserve(TagType.BYTE, 1))[this.size++] = b;
+            this.hash = 31 * this.hash + Byte.hashCode(b);
+            return this;
         }
 
         public Builder add(short s) {
-            return this.add(ShortTag.of(s));
+            ((short[]) this.reserve(TagType.SHORT, 1))[this.size++] = s;
+            this.hash = 31 * this.hash + Short.hashCode(s);
+            return this;
         }
 
         public Builder add(int i) {
-            return this.add(IntTag.of(i));
+            ((int[]) this.reserve(TagType.INT, 1))[this.size++] = i;
+            this.hash = 31 * this.hash + Integer.hashCode(i);
+            return this;
         }
 
         public Builder add(long l) {
-            return this.add(LongTag.of(l));
+            ((long[]) this.reserve(TagType.LONG, 1))[this.size++] = l;
+            this.hash = 31 * this.hash + Long.hashCode(l);
+            return this;
         }
 
         public Builder add(float f) {
-            return this.add(FloatTag.of(f));
+            ((float[]) this.reserve(TagType.FLOAT, 1))[this.size++] = f;
+            this.hash = 31 * this.hash + Float.hashCode(f);
+            return this;
         }
 
         public Builder add(double d) {
-            return this.add(DoubleTag.of(d));
+            ((double[]) this.reserve(TagType.DOUBLE, 1))[this.size++] = d;
+            this.hash = 31 * this.hash + Double.hashCode(d);
+            return this;
         }
 
         public Builder add(byte[] bytes) {
@@ -374,21 +852,149 @@ public final class ListTag extends Tag {
             return this.add(StringTag.of(s));
         }
 
+        public Builder addAll(byte[] bytes, int offset, int length) {
+            System.arraycopy(bytes, offset, this.reserve(TagType.BYTE, length), this.size, length);
+            this.hash = hashOf(this.hash, TagType.BYTE, bytes, offset, offset + length);
+            this.size += length;
+            return this;
+        }
+
+        public Builder addAll(short[] shorts, int offset, int length) {
+            System.arraycopy(shorts, offset, this.reserve(TagType.SHORT, length), this.size, length);
+            this.hash = hashOf(this.hash, TagType.SHORT, shorts, offset, offset + length);
+            this.size += length;
+            return this;
+        }
+
+        public Builder addAll(int[] ints, int offset, int length) {
+            System.arraycopy(ints, offset, this.reserve(TagType.INT, length), this.size, length);
+            this.hash = hashOf(this.hash, TagType.INT, ints, offset, offset + length);
+            this.size += length;
+            return this;
+        }
+
+        public Builder addAll(long[] longs, int offset, int length) {
+            System.arraycopy(longs, offset, this.reserve(TagType.LONG, length), this.size, length);
+            this.hash = hashOf(this.hash, TagType.LONG, longs, offset, offset + length);
+            this.size += length;
+            return this;
+        }
+
+        public Builder addAll(float[] floats, int offset, int length) {
+            System.arraycopy(floats, offset, this.reserve(TagType.FLOAT, length), this.size, length);
+            this.hash = hashOf(this.hash, TagType.FLOAT, floats, offset, offset + length);
+            this.size += length;
+            return this;
+        }
+
+        public Builder addAll(double[] doubles, int offset, int length) {
+            System.arraycopy(doubles, offset, this.reserve(TagType.DOUBLE, length), this.size, length);
+            this.hash = hashOf(this.hash, TagType.DOUBLE, doubles, offset, offset + length);
+            this.size += length;
+            return this;
+        }
+
         public Builder remove(int index) {
+            Object values = this.values;
+            if (values == null) {
+                throw new IllegalStateException("this builder has been frozen since build method was called");
+            }
             if (index < 0) {
-                index = this.values.size() - index;
+                index = this.size + index;
+            }
+            if (index < 0 || index >= this.size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
             }
-            this.values.remove(index);
+            if (values instanceof PersistentVector.Transient) {
+                PersistentVector.Transient oldValues = (PersistentVector.Transient) values;
+                PersistentVector.Transient newValues = PersistentVector.EMPTY.toTransient();
+                for (int i = 0; i < this.size; ++i) {
+                    if (i != index) newValues.add(oldValues.get(i));
+                }
+                this.values = newValues;
+            } else {
+                values = this.unshare(values);
+                System.arraycopy(values, index + 1, values, index, this.size - index - 1);
+            }
+            this.size -= 1;
+            this.rehash = true;
+            return this;
+        }
+
+        public Builder set(int index, Tag tag) {
+            Object values = this.values;
+            if (values == null) {
+                throw new IllegalStateException("this builder has been frozen since build method was called");
+            }
+            if (index < 0) {
+                index = this.size + index;
+            }
+            if (index < 0 || index >= this.size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+            }
+            if (this.tagType != tag.getType()) {
+                throw new IllegalArgumentException("Unmatched tag type (required " + this.tagType + ")");
+            }
+            switch (this.tagType) {
+                case BYTE:
+                    ((byte[]) this.unshare(values))[index] = ((ByteTag) tag).getByte();
+                    break;
+                case SHORT:
+                    ((short[]) this.unshare(values))[index] = ((ShortTag) tag).getShort();
+                    break;
+                case INT:
+                    ((int[]) this.unshare(values))[index] = ((IntTag) tag).getInt();
+                    break;
+                case LONG:
+                    ((long[]) this.unshare(values))[index] = ((LongTag) tag).getLong();
+                    break;
+                case FLOAT:
+                    ((float[]) this.unshare(values))[index] = ((FloatTag) tag).getFloat();
+                    break;
+                case DOUBLE:
+                    ((double[]) this.unshare(values))[index] = ((DoubleTag) tag).getDouble();
+                    break;
+                default:
+                    ((PersistentVector.Transient) values).set(index, tag);
+                    break;
+            }
+            this.rehash = true;
             return this;
         }
 
+        // elements in use by built tags must never be modified in place
+        private Object unshare(Object values) {
+            if (this.claimed != null) {
+                values = copyOf(this.tagType, values, capacityOf(this.tagType, values));
+                this.values = values;
+                this.claimed = null;
+            }
+            return values;
+        }
+
         public ListTag build() {
-            List<Tag> values = this.values;
-            if (values.isEmpty()) {
+            Object values = this.values;
+            if (values == null) {
+                throw new IllegalStateException("this builder has been frozen since build method was called");
+            }
+            if (this.size == 0) {
                 return ListTag.CACHE[this.tagType.ordinal()];
             }
             this.values = null; // make the builder frozen
-            return new ListTag(this.tagType, values);
+            if (values instanceof PersistentVector.Transient) {
+                PersistentVector vector = ((PersistentVector.Transient) values).persistent();
+                int hash = this.rehash ? hashOf(1, this.tagType, vector, 0, this.size) : this.hash;
+                return new ListTag(this.tagType, vector, this.size, null, hash);
+            }
+            AtomicInteger claimed = this.claimed;
+            if (claimed == null) {
+                if (this.compact && capacityOf(this.tagType, values) != this.size) {
+                    values = copyOf(this.tagType, values, this.size);
+                }
+                claimed = new AtomicInteger(this.size);
+            }
+            int hash = this.rehash ? hashOf(1, this.tagType, values, 0, this.size) : this.hash;
+            return new ListTag(this.tagType, values, this.size, claimed, hash);
         }
     }
 }
@@ -0,0 +1,204 @@
+package io.izzel.nbt;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+public final class MutableCompoundTag extends MutableTag {
+
+    private static final Object REMOVED = new Object();
+
+    private CompoundTag tag; // the state as of the last freeze
+    private final Map<String, Object> changes = new LinkedHashMap<>(); // new values, removals, and dirty children
+    private final Map<String, MutableTag> children = new HashMap<>(); // opened since the last freeze
+    private int size;
+
+    MutableCompoundTag(CompoundTag tag) {
+        this.tag = tag;
+        this.size = tag.size();
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public SortedSet<String> names() {
+        if (this.changes.isEmpty()) {
+            return this.tag.names();
+        }
+        SortedSet<String> names = new TreeSet<>(this.tag.names());
+        for (Map.Entry<String, Object> entry : this.changes.entrySet()) {
+            if (entry.getValue() == REMOVED) {
+                names.remove(entry.getKey());
+            } else {
+                names.add(entry.getKey());
+            }
+        }
+        return names;
+    }
+
+    public boolean contains(String name) {
+        Object change = this.changes.get(name);
+        return change != null ? change != REMOVED : this.tag.get(name, EndTag.of()).getType() != TagType.END;
+    }
+
+    public Tag get(String name, Tag fallback) {
+        Object change = this.changes.get(name);
+        if (change == null) {
+            return this.tag.get(name, fallback);
+        }
+        if (change == REMOVED) {
+            return fallback;
+        }
+        return change instanceof Tag ? (Tag) change : ((MutableTag) change).freeze();
+    }
+
+    public Tag getOrDefault(String name) {
+        return this.get(name, EndTag.of());
+    }
+
+    public MutableCompoundTag getCompound(String name) {
+        MutableTag child = this.open(name, TagType.COMPOUND);
+        return child != null ? (MutableCompoundTag) child : null;
+    }
+
+    public MutableListTag getList(String name) {
+        MutableTag child = this.open(name, TagType.LIST);
+        return child != null ? (MutableListTag) child : null;
+    }
+
+    private MutableTag open(String name, TagType type) {
+        MutableTag child = this.children.get(name);
+        if (child != null) {
+            return (child instanceof MutableCompoundTag ? TagType.COMPOUND : TagType.LIST) == type ? child : null;
+        }
+        Object change = this.changes.get(name);
+        Tag value = change == null ? this.tag.get(name, EndTag.of()) : change == REMOVED ? EndTag.of() : (Tag) change;
+        if (value.getType() != type) {
+            return null;
+        }
+        child = mutableOf(value);
+        child.attach(this, name);
+        this.children.put(name, child);
+        if (change != null) {
+            this.changes.put(name, child); // the new value is written back through the child from now on
+        }
+        return child;
+    }
+
+    public MutableCompoundTag set(String name, Tag tag) {
+        if (tag.getType() == TagType.END) {
+            throw new IllegalArgumentException("Compound tags do not allow end tag values, name: " + StringTag.escape(name));
+        }
+        this.close(name);
+        Object old = this.changes.put(name, tag);
+        if (old == null ? this.tag.get(name, EndTag.of()).getType() == TagType.END : old == REMOVED) {
+            this.size += 1;
+        }
+        this.markDirty();
+        return this;
+    }
+
+    public MutableCompoundTag set(String name, boolean b) {
+        return this.set(name, ByteTag.of(b));
+    }
+
+    public MutableCompoundTag set(String name, byte b) {
+        return this.set(name, ByteTag.of(b));
+    }
+
+    public MutableCompoundTag set(String name, short s) {
+        return this.set(name, ShortTag.of(s));
+    }
+
+    public MutableCompoundTag set(String name, int i) {
+        return this.set(name, IntTag.of(i));
+    }
+
+    public MutableCompoundTag set(String name, long l) {
+        return this.set(name, LongTag.of(l));
+    }
+
+    public MutableCompoundTag set(String name, float f) {
+        return this.set(name, FloatTag.of(f));
+    }
+
+    public MutableCompoundTag set(String name, double d) {
+        return this.set(name, DoubleTag.of(d));
+    }
+
+    public MutableCompoundTag set(String name, String s) {
+        return this.set(name, StringTag.of(s));
+    }
+
+    public MutableCompoundTag remove(String name) {
+        if (this.contains(name)) {
+            this.close(name);
+            this.changes.put(name, REMOVED);
+            this.size -= 1;
+            this.markDirty();
+        }
+        return this;
+    }
+
+    private void close(String name) {
+        MutableTag child = this.children.remove(name);
+        if (child != null) {
+            child.detach();
+        }
+    }
+
+    @Override
+    boolean childChanged(MutableTag child) {
+        String name = (String) child.key();
+        if (this.children.get(name) != child) {
+            // children are let go at each freeze, and only taken back while they still hold what is stored
+            if (this.children.containsKey(name) || this.changes.containsKey(name) || child.lastFrozen() != this.tag.get(name, EndTag.of())) {
+                return false;
+            }
+            this.children.put(name, child);
+        }
+        this.changes.put(name, child);
+        return true;
+    }
+
+    @Override
+    CompoundTag lastFrozen() {
+        return this.tag;
+    }
+
+    @Override
+    public CompoundTag freeze() {
+        if (!this.dirty) {
+            return this.tag;
+        }
+        // only what has changed is visited, opened children which are still clean are simply dropped
+        CompoundTag.Builder builder = this.tag.toBuilder(true);
+        for (Map.Entry<String, Object> entry : this.changes.entrySet()) {
+            Object change = entry.getValue();
+            if (change == REMOVED) {
+                builder.remove(entry.getKey());
+            } else if (change instanceof Tag) {
+                builder.set(entry.getKey(), (Tag) change);
+            } else {
+                // children may have been frozen on their own already, so they are compared with what is stored
+                Tag value = ((MutableTag) change).freeze();
+                if (value != this.tag.get(entry.getKey(), EndTag.of())) {
+                    builder.set(entry.getKey(), value);
+                }
+            }
+        }
+        this.changes.clear();
+        this.children.clear();
+        this.tag = builder.build();
+        this.dirty = false;
+        return this.tag;
+    }
+
+    @Override
+    public String toString() {
+        return this.freeze().toString();
+    }
+}
@@ -0,0 +1,215 @@
+package io.izzel.nbt;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+public final class MutableListTag extends MutableTag {
+
+    private ListTag tag; // the state as of the last freeze
+    private List<Object> elements; // tags and opened children, created on the first edit
+    private TagType elemType;
+    private final BitSet changed = new BitSet(); // indices to write back, unless the list was resized
+    private boolean resized;
+
+    MutableListTag(ListTag tag) {
+        this.tag = tag;
+        this.elemType = tag.getElemType();
+    }
+
+    public int size() {
+        return this.elements != null ? this.elements.size() : this.tag.size();
+    }
+
+    public TagType getElemType() {
+        return this.elemType;
+    }
+
+    public Tag get(int index, Tag fallback) {
+        if (this.elements == null) {
+            return this.tag.get(index, fallback);
+        }
+        if (index < 0 || index >= this.elements.size()) {
+            return fallback;
+        }
+        Object element = this.elements.get(index);
+        return element instanceof Tag ? (Tag) element : ((MutableTag) element).freeze();
+    }
+
+    public Tag getOrDefault(int index) {
+        return this.get(index, EndTag.of());
+    }
+
+    public MutableCompoundTag getCompound(int index) {
+        return this.elemType == TagType.COMPOUND ? (MutableCompoundTag) this.open(index) : null;
+    }
+
+    public MutableListTag getList(int index) {
+        return this.elemType == TagType.LIST ? (MutableListTag) this.open(index) : null;
+    }
+
+    private MutableTag open(int index) {
+        List<Object> elements = this.elements();
+        if (index < 0 || index >= elements.size()) {
+            return null;
+        }
+        Object element = elements.get(index);
+        if (element instanceof MutableTag) {
+            return (MutableTag) element;
+        }
+        MutableTag child = mutableOf((Tag) element);
+        child.attach(this, index);
+        elements.set(index, child);
+        return child;
+    }
+
+    public MutableListTag set(int index, Tag tag) {
+        List<Object> elements = this.elements();
+        if (index < 0 || index >= elements.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + elements.size());
+        }
+        this.check(tag);
+        Object old = elements.set(index, tag);
+        if (old instanceof MutableTag) {
+            ((MutableTag) old).detach();
+        }
+        this.changed.set(index);
+        this.markDirty();
+        return this;
+    }
+
+    public MutableListTag add(Tag tag) {
+        return this.add(this.size(), tag);
+    }
+
+    public MutableListTag add(int index, Tag tag) {
+        List<Object> elements = this.elements();
+        if (index < 0 || index > elements.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + elements.size());
+        }
+        this.check(tag);
+        if (elements.isEmpty()) {
+            this.elemType = tag.getType();
+        }
+        elements.add(index, tag);
+        this.resized = true;
+        this.markDirty();
+        return this;
+    }
+
+    public MutableListTag add(boolean b) {
+        return this.add(ByteTag.of(b));
+    }
+
+    public MutableListTag add(byte b) {
+        return this.add(ByteTag.of(b));
+    }
+
+    public MutableListTag add(short s) {
+        return this.add(ShortTag.of(s));
+    }
+
+    public MutableListTag add(int i) {
+        return this.add(IntTag.of(i));
+    }
+
+    public MutableListTag add(long l) {
+        return this.add(LongTag.of(l));
+    }
+
+    public MutableListTag add(float f) {
+        return this.add(FloatTag.of(f));
+    }
+
+    public MutableListTag add(double d) {
+        return this.add(DoubleTag.of(d));
+    }
+
+    public MutableListTag add(String s) {
+        return this.add(StringTag.of(s));
+    }
+
+    public MutableListTag remove(int index) {
+        List<Object> elements = this.elements();
+        if (index < 0 || index >= elements.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + elements.size());
+        }
+        Object old = elements.remove(index);
+        if (old instanceof MutableTag) {
+            ((MutableTag) old).detach();
+        }
+        this.resized = true;
+        this.markDirty();
+        return this;
+    }
+
+    private void check(Tag tag) {
+        if (tag.getType() == TagType.END) {
+            throw new IllegalArgumentException("List tags do not allow end tag values");
+        }
+        if (this.size() > 0 && tag.getType() != this.elemType) {
+            throw new IllegalArgumentException("Unmatched tag type (required " + this.elemType + ")");
+        }
+    }
+
+    private List<Object> elements() {
+        List<Object> elements = this.elements;
+        if (elements == null) {
+            elements = new ArrayList<>(Math.max(this.tag.size(), 8));
+            for (int i = 0; i < this.tag.size(); ++i) {
+                elements.add(this.tag.getOrDefault(i));
+            }
+            this.elements = elements;
+        }
+        return elements;
+    }
+
+    @Override
+    boolean childChanged(MutableTag child) {
+        this.changed.set((Integer) child.key());
+        return true;
+    }
+
+    @Override
+    ListTag lastFrozen() {
+        return this.tag;
+    }
+
+    @Override
+    public ListTag freeze() {
+        if (!this.dirty) {
+            return this.tag;
+        }
+        List<Object> elements = this.elements;
+        ListTag.Builder builder;
+        if (this.resized) {
+            // indices have moved, so everything is written again and the children learn their new places
+            builder = ListTag.builder();
+            for (int i = 0; i < elements.size(); ++i) {
+                Object element = elements.get(i);
+                if (element instanceof MutableTag) {
+                    ((MutableTag) element).attach(this, i);
+                    builder.add(((MutableTag) element).freeze());
+                } else {
+                    builder.add((Tag) element);
+                }
+            }
+        } else {
+            builder = this.tag.toBuilder();
+            for (int i = this.changed.nextSetBit(0); i >= 0; i = this.changed.nextSetBit(i + 1)) {
+                Object element = elements.get(i);
+                builder.set(i, element instanceof Tag ? (Tag) element : ((MutableTag) element).freeze());
+            }
+        }
+        this.tag = builder.build();
+        this.changed.clear();
+        this.resized = false;
+        this.dirty = false;
+        return this.tag;
+    }
+
+    @Override
+    public String toString() {
+        return this.freeze().toString();
+    }
+}
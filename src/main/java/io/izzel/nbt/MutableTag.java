@@ -0,0 +1,55 @@
+package io.izzel.nbt;
+
+abstract class MutableTag {
+
+    private MutableTag parent;
+    private Object key; // the name or the index in the parent
+    boolean dirty;
+
+    public boolean isDirty() {
+        return this.dirty;
+    }
+
+    public abstract Tag freeze();
+
+    abstract Tag lastFrozen();
+
+    final void attach(MutableTag parent, Object key) {
+        this.parent = parent;
+        this.key = key;
+    }
+
+    final void detach() {
+        this.parent = null;
+        this.key = null;
+    }
+
+    final Object key() {
+        return this.key;
+    }
+
+    // parents are marked up to the first one which is already dirty, so each edit is O(1) amortized
+    final void markDirty() {
+        MutableTag tag = this;
+        while (tag != null && !tag.dirty) {
+            tag.dirty = true;
+            if (tag.parent != null && !tag.parent.childChanged(tag)) {
+                tag.detach(); // the parent has moved on, so the edit stays with the child
+            }
+            tag = tag.parent;
+        }
+    }
+
+    abstract boolean childChanged(MutableTag child);
+
+    static MutableTag mutableOf(Tag tag) {
+        switch (tag.getType()) {
+            case COMPOUND:
+                return ((CompoundTag) tag).toMutable();
+            case LIST:
+                return ((ListTag) tag).toMutable();
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package io.izzel.nbt;
+
+import java.util.Arrays;
+
+final class PersistentVector {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    static final PersistentVector EMPTY = new PersistentVector(0, BITS, new Node(null, new Object[WIDTH]), new Object[0]);
+
+    private final int size;
+    private final int shift;
+    private final Node root;
+    private final Object[] tail;
+
+    private PersistentVector(int size, int shift, Node root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    Object get(int i) {
+        return this.arrayFor(i)[i & MASK];
+    }
+
+    // the chunk of 32 elements containing i, which is shared and must not be modified
+    Object[] arrayFor(int i) {
+        if (i >= tailOffset(this.size)) {
+            return this.tail;
+        }
+        Node node = this.root;
+        for (int level = this.shift; level > 0; level -= BITS) {
+            node = (Node) node.array[(i >>> level) & MASK];
+        }
+        return node.array;
+    }
+
+    Transient toTransient() {
+        return new Transient(this);
+    }
+
+    private static int tailOffset(int size) {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    private static final class Node {
+        private final Object edit;
+        private final Object[] array;
+
+        private Node(Object edit, Object[] array) {
+            this.edit = edit;
+            this.array = array;
+        }
+    }
+
+    static final class Transient {
+        private final Object edit = new Object(); // nodes created by this transient can be modified in place
+        private int size;
+        private int shift;
+        private Node root;
+        private Object[] tail;
+
+        private Transient(PersistentVector vector) {
+            this.size = vector.size;
+            this.shift = vector.shift;
+            this.root = vector.root;
+            this.tail = Arrays.copyOf(vector.tail, WIDTH);
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        Object get(int i) {
+            return this.arrayFor(i)[i & MASK];
+        }
+
+        Object[] arrayFor(int i) {
+            if (i >= tailOffset(this.size)) {
+                return this.tail;
+            }
+            Node node = this.root;
+            for (int level = this.shift; level > 0; level -= BITS) {
+                node = (Node) node.array[(i >>> level) & MASK];
+            }
+            return node.array;
+        }
+
+        void set(int i, Object value) {
+            if (i >= tailOffset(this.size)) {
+                this.tail[i & MASK] = value;
+                return;
+            }
+            Node node = this.root = this.editable(this.root);
+            for (int level = this.shift; level > 0; level -= BITS) {
+                int sub = (i >>> level) & MASK;
+                Node child = this.editable((Node) node.array[sub]);
+                node.array[sub] = child;
+                node = child;
+            }
+            node.array[i & MASK] = value;
+        }
+
+        void add(Object value) {
+            int size = this.size;
+            if (size - tailOffset(size) < WIDTH) {
+                this.tail[size & MASK] = value;
+                this.size = size + 1;
+                return;
+            }
+            Node tailNode = new Node(this.edit, this.tail);
+            this.tail = new Object[WIDTH];
+            this.tail[0] = value;
+            if ((size >>> BITS) > (1 << this.shift)) {
+                Node root = new Node(this.edit, new Object[WIDTH]);
+                root.array[0] = this.root;
+                root.array[1] = this.newPath(this.shift, tailNode);
+                this.root = root;
+                this.shift += BITS;
+            } else {
+                this.root = this.pushTail(this.shift, this.editable(this.root), tailNode);
+            }
+            this.size = size + 1;
+        }
+
+        PersistentVector persistent() {
+            Object[] tail = Arrays.copyOf(this.tail, this.size - tailOffset(this.size));
+            return new PersistentVector(this.size, this.shift, this.root, tail);
+        }
+
+        private Node pushTail(int level, Node parent, Node tailNode) {
+            int sub = ((this.size - 1) >>> level) & MASK;
+            Node insert;
+            if (level == BITS) {
+                insert = tailNode;
+            } else {
+                Node child = (Node) parent.array[sub];
+                insert = child != null
+                        ? this.pushTail(level - BITS, this.editable(child), tailNode)
+                        : this.newPath(level - BITS, tailNode);
+            }
+            parent.array[sub] = insert;
+            return parent;
+        }
+
+        private Node newPath(int level, Node node) {
+            for (; level > 0; level -= BITS) {
+                Node parent = new Node(this.edit, new Object[WIDTH]);
+                parent.array[0] = node;
+                node = parent;
+            }
+            return node;
+        }
+
+        private Node editable(Node node) {
+            return node.edit == this.edit ? node : new Node(this.edit, node.array.clone());
+        }
+    }
+}
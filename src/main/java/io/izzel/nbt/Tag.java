@@ -5,7 +5,6 @@ import io.izzel.nbt.util.TagReader;
 import io.izzel.nbt.visitor.TagValueVisitor;
 
 import java.io.IOException;
-import java.io.StringWriter;
 
 public abstract class Tag {
 
@@ -19,17 +18,22 @@ public abstract class Tag {
         return this.type;
     }
 
+    public final TagDigest digest() {
+        return TagDigest.of(this);
+    }
+
     public void accept(TagValueVisitor visitor) {
         new TagReader(this).accept(visitor);
     }
 
     @Override
     public String toString() {
-        try (StringWriter writer = new StringWriter()) {
-            this.accept(new StringNbtWriter(writer));
-            return writer.toString();
+        StringBuilder builder = new StringBuilder();
+        try (StringNbtWriter writer = new StringNbtWriter(builder)) {
+            this.accept(writer);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        return builder.toString();
     }
 }
@@ -0,0 +1,345 @@
+package io.izzel.nbt;
+
+import io.izzel.nbt.util.ImmutableBytes;
+import io.izzel.nbt.util.ImmutableInts;
+import io.izzel.nbt.util.ImmutableLongs;
+
+import java.util.Arrays;
+
+public final class TagDigest {
+
+    private final long high;
+    private final long low;
+
+    private TagDigest(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public long getHigh() {
+        return this.high;
+    }
+
+    public long getLow() {
+        return this.low;
+    }
+
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; ++i) {
+            bytes[i] = (byte) (this.high >>> (56 - 8 * i));
+            bytes[i + 8] = (byte) (this.low >>> (56 - 8 * i));
+        }
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || o instanceof TagDigest && this.high == ((TagDigest) o).high && this.low == ((TagDigest) o).low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this.high ^ this.low);
+    }
+
+    @Override
+    public String toString() {
+        String high = Long.toHexString(this.high), low = Long.toHexString(this.low);
+        return "0000000000000000".substring(high.length()) + high + "0000000000000000".substring(low.length()) + low;
+    }
+
+    static TagDigest of(Tag tag) {
+        switch (tag.getType()) {
+            case LIST: {
+                TagDigest result = ((ListTag) tag).digest;
+                return result != null ? result : digest(tag);
+            }
+            case COMPOUND: {
+                TagDigest result = ((CompoundTag) tag).digest;
+                return result != null ? result : digest(tag);
+            }
+            default: {
+                Hasher hasher = new Hasher();
+                putLeaf(hasher, tag);
+                return hasher.finish();
+            }
+        }
+    }
+
+    private static TagDigest cached(Tag tag) {
+        return tag.getType() == TagType.LIST ? ((ListTag) tag).digest : ((CompoundTag) tag).digest;
+    }
+
+    // only lists and compounds cache their digests, leaves are hashed right into their parents
+    private static TagDigest digest(Tag tag) {
+        // a frame waits on an unhashed child without moving past it, and picks up its cached digest once resumed
+        Tag[] stack = new Tag[16];
+        int[] next = new int[16];
+        Hasher[] hashers = new Hasher[16];
+        long[] highs = new long[16], lows = new long[16];
+        Hasher entryHasher = new Hasher();
+        int depth = 0;
+        stack[0] = tag;
+        while (depth >= 0) {
+            Tag current = stack[depth], child = null;
+            Hasher hasher = hashers[depth];
+            if (hasher == null) {
+                hasher = hashers[depth] = new Hasher();
+            }
+            switch (current.getType()) {
+                case LIST: {
+                    ListTag list = (ListTag) current;
+                    if (next[depth] == 0) {
+                        hasher.reset();
+                        hasher.put(TagType.LIST.getId());
+                        hasher.put(list.size());
+                        if (list.size() > 0) {
+                            // empty lists are equal whatever their element type is
+                            hasher.put(list.getElemType().getId());
+                        }
+                    }
+                    if (isNumeric(list.getElemType())) {
+                        putNumbers(hasher, list);
+                        break;
+                    }
+                    while (next[depth] < list.size()) {
+                        Tag element = list.getOrDefault(next[depth]);
+                        if (isContainer(element.getType())) {
+                            TagDigest digest = cached(element);
+                            if (digest == null) {
+                                child = element;
+                                break;
+                            }
+                            hasher.put(digest.high);
+                            hasher.put(digest.low);
+                        } else {
+                            putLeaf(hasher, element);
+                        }
+                        next[depth] += 1;
+                    }
+                    break;
+                }
+                case COMPOUND: {
+                    // entries are summed up so that the order of names does not matter, like it does not for equality
+                    CompoundTag compound = (CompoundTag) current;
+                    if (next[depth] == 0) {
+                        highs[depth] = lows[depth] = 0;
+                    }
+                    while (next[depth] < compound.size()) {
+                        Tag value = compound.valueAt(next[depth]);
+                        TagDigest digest = null;
+                        if (isContainer(value.getType())) {
+                            digest = cached(value);
+                            if (digest == null) {
+                                child = value;
+                                break;
+                            }
+                        }
+                        String name = compound.nameAt(next[depth]);
+                        entryHasher.reset();
+                        entryHasher.put(name.length());
+                        putChars(entryHasher, name);
+                        if (digest != null) {
+                            entryHasher.put(digest.high);
+                            entryHasher.put(digest.low);
+                        } else {
+                            putLeaf(entryHasher, value);
+                        }
+                        TagDigest entry = entryHasher.finish();
+                        long sum = lows[depth] + entry.low;
+                        highs[depth] += entry.high + (Long.compareUnsigned(sum, lows[depth]) < 0 ? 1 : 0);
+                        lows[depth] = sum;
+                        next[depth] += 1;
+                    }
+                    if (child == null) {
+                        hasher.reset();
+                        hasher.put(TagType.COMPOUND.getId());
+                        hasher.put(compound.size());
+                        hasher.put(highs[depth]);
+                        hasher.put(lows[depth]);
+                    }
+                    break;
+                }
+            }
+            if (child != null) {
+                if (++depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                    next = Arrays.copyOf(next, depth * 2);
+                    hashers = Arrays.copyOf(hashers, depth * 2);
+                    highs = Arrays.copyOf(highs, depth * 2);
+                    lows = Arrays.copyOf(lows, depth * 2);
+                }
+                stack[depth] = child;
+                next[depth] = 0;
+                continue;
+            }
+            if (current.getType() == TagType.LIST) {
+                ((ListTag) current).digest = hasher.finish();
+            } else {
+                ((CompoundTag) current).digest = hasher.finish();
+            }
+            stack[depth--] = null;
+        }
+        return cached(tag);
+    }
+
+    private static void putNumbers(Hasher hasher, ListTag list) {
+        for (int i = 0; i < list.size(); ++i) {
+            switch (list.getElemType()) {
+                case FLOAT:
+                    hasher.put(Float.floatToIntBits(list.getFloatOrDefault(i)));
+                    break;
+                case DOUBLE:
+                    hasher.put(Double.doubleToLongBits(list.getDoubleOrDefault(i)));
+                    break;
+                default:
+                    hasher.put(list.getLongOrDefault(i));
+            }
+        }
+    }
+
+    private static void putLeaf(Hasher hasher, Tag tag) {
+        hasher.put(tag.getType().getId());
+        switch (tag.getType()) {
+            case BYTE:
+                hasher.put(((ByteTag) tag).getByte());
+                break;
+            case SHORT:
+                hasher.put(((ShortTag) tag).getShort());
+                break;
+            case INT:
+                hasher.put(((IntTag) tag).getInt());
+                break;
+            case LONG:
+                hasher.put(((LongTag) tag).getLong());
+                break;
+            case FLOAT:
+                hasher.put(Float.floatToIntBits(((FloatTag) tag).getFloat()));
+                break;
+            case DOUBLE:
+                hasher.put(Double.doubleToLongBits(((DoubleTag) tag).getDouble()));
+                break;
+            case BYTE_ARRAY: {
+                ImmutableBytes bytes = ((ByteArrayTag) tag).getBytes();
+                hasher.put(bytes.size());
+                for (int i = 0; i < bytes.size(); i += 8) {
+                    long word = 0;
+                    for (int j = i, end = Math.min(i + 8, bytes.size()); j < end; ++j) {
+                        word = word << 8 | bytes.get(j) & 0xFFL;
+                    }
+                    hasher.put(word);
+                }
+                break;
+            }
+            case INT_ARRAY: {
+                ImmutableInts ints = ((IntArrayTag) tag).getInts();
+                hasher.put(ints.size());
+                for (int i = 0; i < ints.size(); i += 2) {
+                    long word = (long) ints.get(i) << 32;
+                    hasher.put(i + 1 < ints.size() ? word | ints.get(i + 1) & 0xFFFFFFFFL : word);
+                }
+                break;
+            }
+            case LONG_ARRAY: {
+                ImmutableLongs longs = ((LongArrayTag) tag).getLongs();
+                hasher.put(longs.size());
+                for (int i = 0; i < longs.size(); ++i) {
+                    hasher.put(longs.get(i));
+                }
+                break;
+            }
+            case STRING: {
+                String string = ((StringTag) tag).getString();
+                hasher.put(string.length());
+                putChars(hasher, string);
+                break;
+            }
+        }
+    }
+
+    private static void putChars(Hasher hasher, String string) {
+        for (int i = 0; i < string.length(); i += 4) {
+            long word = 0;
+            for (int j = i, end = Math.min(i + 4, string.length()); j < end; ++j) {
+                word = word << 16 | string.charAt(j);
+            }
+            hasher.put(word);
+        }
+    }
+
+    private static boolean isContainer(TagType type) {
+        return type == TagType.LIST || type == TagType.COMPOUND;
+    }
+
+    private static boolean isNumeric(TagType type) {
+        switch (type) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // the 128-bit variant of murmur hash 3, fed with whole words
+    private static final class Hasher {
+        private static final long C1 = 0x87C37B91114253D5L;
+        private static final long C2 = 0x4CF5AD432745937FL;
+
+        private long h1, h2, pending;
+        private int length;
+
+        private void reset() {
+            this.h1 = this.h2 = this.pending = 0;
+            this.length = 0;
+        }
+
+        private void put(long word) {
+            if ((this.length++ & 1) == 0) {
+                this.pending = word;
+                return;
+            }
+            this.h1 ^= mixK1(this.pending);
+            this.h1 = Long.rotateLeft(this.h1, 27) + this.h2;
+            this.h1 = this.h1 * 5 + 0x52DCE729;
+            this.h2 ^= mixK2(word);
+            this.h2 = Long.rotateLeft(this.h2, 31) + this.h1;
+            this.h2 = this.h2 * 5 + 0x38495AB5;
+        }
+
+        private TagDigest finish() {
+            long h1 = this.h1, h2 = this.h2;
+            if ((this.length & 1) != 0) {
+                h1 ^= mixK1(this.pending);
+            }
+            h1 ^= this.length * 8L;
+            h2 ^= this.length * 8L;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix(h1);
+            h2 = fmix(h2);
+            h1 += h2;
+            h2 += h1;
+            return new TagDigest(h1, h2);
+        }
+
+        private static long mixK1(long k1) {
+            return Long.rotateLeft(k1 * C1, 31) * C2;
+        }
+
+        private static long mixK2(long k2) {
+            return Long.rotateLeft(k2 * C2, 33) * C1;
+        }
+
+        private static long fmix(long k) {
+            k = (k ^ k >>> 33) * 0xFF51AFD7ED558CCDL;
+            k = (k ^ k >>> 33) * 0xC4CEB9FE1A85EC53L;
+            return k ^ k >>> 33;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package io.izzel.nbt.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// kernels which have faster versions on newer releases, see src/main/java9 for the overlay
+final class ArraySupport {
+
+    private ArraySupport() {
+    }
+
+    static boolean equals(byte[] a, int aFrom, byte[] b, int bFrom, int length) {
+        for (int i = aFrom, j = bFrom, end = aFrom + length; i < end; ++i, ++j) {
+            if (a[i] != b[j]) return false;
+        }
+        return true;
+    }
+
+    static boolean equals(int[] a, int aFrom, int[] b, int bFrom, int length) {
+        for (int i = aFrom, j = bFrom, end = aFrom + length; i < end; ++i, ++j) {
+            if (a[i] != b[j]) return false;
+        }
+        return true;
+    }
+
+    static boolean equals(long[] a, int aFrom, long[] b, int bFrom, int length) {
+        for (int i = aFrom, j = bFrom, end = aFrom + length; i < end; ++i, ++j) {
+            if (a[i] != b[j]) return false;
+        }
+        return true;
+    }
+
+    // whole arrays go through Arrays.hashCode, which recent releases vectorize
+    static int hashCode(byte[] a, int from, int length) {
+        if (from == 0 && length == a.length) {
+            return Arrays.hashCode(a);
+        }
+        int hash = 1;
+        for (int i = from, end = from + length; i < end; ++i) {
+            hash = hash * 31 + Byte.hashCode(a[i]);
+        }
+        return hash;
+    }
+
+    static int hashCode(int[] a, int from, int length) {
+        if (from == 0 && length == a.length) {
+            return Arrays.hashCode(a);
+        }
+        int hash = 1;
+        for (int i = from, end = from + length; i < end; ++i) {
+            hash = hash * 31 + Integer.hashCode(a[i]);
+        }
+        return hash;
+    }
+
+    static int hashCode(long[] a, int from, int length) {
+        if (from == 0 && length == a.length) {
+            return Arrays.hashCode(a);
+        }
+        int hash = 1;
+        for (int i = from, end = from + length; i < end; ++i) {
+            hash = hash * 31 + Long.hashCode(a[i]);
+        }
+        return hash;
+    }
+
+    // big-endian, as nbt stores numbers
+    static void getInts(byte[] src, int srcFrom, int[] dst, int dstFrom, int length) {
+        ByteBuffer.wrap(src, srcFrom, length * Integer.BYTES).asIntBuffer().get(dst, dstFrom, length);
+    }
+
+    static void getLongs(byte[] src, int srcFrom, long[] dst, int dstFrom, int length) {
+        ByteBuffer.wrap(src, srcFrom, length * Long.BYTES).asLongBuffer().get(dst, dstFrom, length);
+    }
+
+    static void putInts(int[] src, int srcFrom, byte[] dst, int dstFrom, int length) {
+        ByteBuffer.wrap(dst, dstFrom, length * Integer.BYTES).asIntBuffer().put(src, srcFrom, length);
+    }
+
+    static void putLongs(long[] src, int srcFrom, byte[] dst, int dstFrom, int length) {
+        ByteBuffer.wrap(dst, dstFrom, length * Long.BYTES).asLongBuffer().put(src, srcFrom, length);
+    }
+
+    // the upper half of the signed 128 bit product, as Math.multiplyHigh
+    static long multiplyHigh(long x, long y) {
+        long x1 = x >> 32, x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32, y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = (t & 0xFFFFFFFFL) + x2 * y1;
+        return x1 * y1 + (t >> 32) + (z1 >> 32);
+    }
+}
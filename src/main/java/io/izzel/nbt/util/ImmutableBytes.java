@@ -1,24 +1,54 @@
 package io.izzel.nbt.util;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
 import java.util.StringJoiner;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 public class ImmutableBytes implements Iterable<Byte> {
     private static final ImmutableBytes EMPTY = new ImmutableBytes(new byte[0], 0, 0);
+    private static final int COPY_LIMIT = 64; // shorter concatenations are copied right away
 
     private final byte[] value;
+    private final ByteBuffer buffer; // used instead of the array when the values live outside the heap
 
     private final int byteCount;
     private final int offset;
 
+    // set for concatenations, which are copied into one array on the first access and then let go
+    private volatile ImmutableBytes left;
+    private volatile ImmutableBytes right;
+    private volatile ImmutableBytes flat;
+
     private int hash;
 
     private ImmutableBytes(byte[] value, int offset, int length) {
+        this(value, null, offset, length);
+    }
+
+    private ImmutableBytes(ImmutableBytes left, ImmutableBytes right) {
+        this.byteCount = left.byteCount + right.byteCount;
+        this.offset = 0;
+        this.value = null;
+        this.buffer = null;
+        this.left = left;
+        this.right = right;
+    }
+
+    private ImmutableBytes(byte[] value, ByteBuffer buffer, int offset, int length) {
         this.byteCount = length;
         this.offset = offset;
         this.value = value;
+        this.buffer = buffer;
+        this.left = null;
+        this.right = null;
     }
 
     public int size() {
@@ -27,11 +57,55 @@ public class ImmutableBytes implements Iterable<Byte> {
 
     public byte get(int index) {
         if (index >= 0 && index < this.byteCount) {
-            return this.value[index + this.offset];
+            return this.at(index + this.offset);
         }
         throw new IndexOutOfBoundsException("Index: " + index);
     }
 
+    private byte at(int i) {
+        if (this.value != null) {
+            return this.value[i];
+        }
+        return this.buffer != null ? this.buffer.get(i) : this.flat().at(i);
+    }
+
+    private ImmutableBytes leaf() {
+        return this.isConcat() ? this.flat() : this;
+    }
+
+    private boolean isConcat() {
+        return this.value == null && this.buffer == null;
+    }
+
+    private ImmutableBytes flat() {
+        ImmutableBytes flat = this.flat;
+        if (flat == null) {
+            // the nodes are walked with a stack of their own, as long chains of appends are deep
+            byte[] array = new byte[this.byteCount];
+            Deque<ImmutableBytes> nodes = new ArrayDeque<>();
+            nodes.push(this);
+            for (int position = 0; !nodes.isEmpty(); ) {
+                ImmutableBytes node = nodes.pop();
+                ImmutableBytes left = node.left, right = node.right; // both are cleared once the node is flat
+                if (left != null && right != null && node.flat == null) {
+                    nodes.push(right);
+                    nodes.push(left);
+                } else {
+                    node.leaf().range().get(array, position, node.byteCount);
+                    position += node.byteCount;
+                }
+            }
+            this.flat = flat = new ImmutableBytes(array, 0, array.length);
+            this.left = null;
+            this.right = null;
+        }
+        return flat;
+    }
+
+    public boolean isDirect() {
+        return this.buffer != null && this.buffer.isDirect();
+    }
+
     @Override
     public Iterator<Byte> iterator() {
         return new Iterator<Byte>() {
@@ -49,21 +123,46 @@ public class ImmutableBytes implements Iterable<Byte> {
         };
     }
 
+    public PrimitiveIterator.OfInt intIterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.index < ImmutableBytes.this.byteCount;
+            }
+
+            @Override
+            public int nextInt() {
+                return ImmutableBytes.this.get(this.index++);
+            }
+        };
+    }
+
+    public Spliterator.OfInt intSpliterator() {
+        ImmutableBytes leaf = this.leaf();
+        return leaf.new Values(leaf.offset, leaf.offset + leaf.byteCount);
+    }
+
+    public void forEachByte(IntConsumer action) {
+        ImmutableBytes leaf = this.leaf();
+        for (int i = leaf.offset, end = leaf.offset + leaf.byteCount; i < end; ++i) {
+            action.accept(leaf.at(i));
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (o == this) return true;
         if (o instanceof ImmutableBytes) {
-            int thatLength = ((ImmutableBytes) o).byteCount;
+            ImmutableBytes that = (ImmutableBytes) o;
+            int thatLength = that.byteCount;
             if (thatLength == this.byteCount) {
-                byte[] thatValue = ((ImmutableBytes) o).value;
-                if (thatLength == this.value.length && thatLength == thatValue.length) {
-                    return Arrays.equals(thatValue, this.value);
-                }
-                int end = this.offset + this.byteCount;
-                for (int i = this.offset, j = ((ImmutableBytes) o).offset; i < end; ++i, ++j) {
-                    if (this.value[i] != thatValue[j]) return false;
+                ImmutableBytes self = this.leaf(), other = that.leaf();
+                if (self.value == null || other.value == null) {
+                    return self.range().equals(other.range());
                 }
-                return true;
+                return ArraySupport.equals(self.value, self.offset, other.value, other.offset, thatLength);
             }
         }
         return false;
@@ -72,9 +171,14 @@ public class ImmutableBytes implements Iterable<Byte> {
     @Override
     public int hashCode() {
         if (this.hash == 0) {
-            int hash = 1, end = this.offset + this.byteCount;
-            for (int i = this.offset; i < end; ++i) {
-                hash = hash * 31 + Byte.hashCode(this.value[i]);
+            ImmutableBytes leaf = this.leaf();
+            if (leaf.value != null) {
+                this.hash = ArraySupport.hashCode(leaf.value, leaf.offset, leaf.byteCount);
+                return this.hash;
+            }
+            int hash = 1, end = leaf.offset + leaf.byteCount;
+            for (int i = leaf.offset; i < end; ++i) {
+                hash = hash * 31 + Byte.hashCode(leaf.at(i));
             }
             this.hash = hash;
         }
@@ -88,18 +192,28 @@ public class ImmutableBytes implements Iterable<Byte> {
 
     public String toString(String prefix, String delimiter, String suffix) {
         StringJoiner joiner = new StringJoiner(delimiter, prefix, suffix);
-        for (int i = offset, end = offset + byteCount; i < end; ++i) {
-            joiner.add(Byte.toString(value[i]));
+        ImmutableBytes leaf = this.leaf();
+        for (int i = leaf.offset, end = leaf.offset + leaf.byteCount; i < end; ++i) {
+            joiner.add(Byte.toString(leaf.at(i)));
         }
         return joiner.toString();
     }
 
     public byte[] toByteArray() {
+        if (this.value == null) {
+            byte[] array = new byte[this.byteCount];
+            this.range().get(array);
+            return array;
+        }
         return Arrays.copyOfRange(value, offset, offset + byteCount);
     }
 
     public ByteBuffer toByteBuffer() {
-        return ByteBuffer.wrap(value, offset, byteCount).slice().asReadOnlyBuffer();
+        return this.range().asReadOnlyBuffer();
+    }
+
+    public IntStream stream() {
+        return StreamSupport.intStream(this.intSpliterator(), false);
     }
 
     public ImmutableBytes concat(ImmutableBytes other) {
@@ -107,7 +221,51 @@ public class ImmutableBytes implements Iterable<Byte> {
     }
 
     public ImmutableBytes.Builder toBuilder() {
-        return new ImmutableBytes.Builder(this.value);
+        ImmutableBytes.Builder builder = new ImmutableBytes.Builder(8);
+        builder.prefix = this;
+        return builder;
+    }
+
+    // copies the values into native memory, so that they no longer take up space in the heap
+    public ImmutableBytes toDirect() {
+        if (this.isDirect() || this.byteCount == 0) {
+            return this;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(this.byteCount);
+        buffer.put(this.range()).clear();
+        return new ImmutableBytes(null, buffer, 0, this.byteCount);
+    }
+
+    private ByteBuffer range() {
+        if (this.isConcat()) {
+            return this.flat().range();
+        }
+        if (this.value == null) {
+            ByteBuffer buffer = this.buffer.duplicate();
+            buffer.limit(this.offset + this.byteCount).position(this.offset);
+            return buffer.slice();
+        }
+        return ByteBuffer.wrap(value, offset, byteCount).slice();
+    }
+
+    // the array is shared, so it must never be modified, and it is null for values backed by a buffer
+    byte[] array() {
+        return this.leaf().value;
+    }
+
+    int arrayOffset() {
+        return this.leaf().offset;
+    }
+
+    // takes the ownership of the array
+    static ImmutableBytes wrap(byte[] value) {
+        return value.length == 0 ? EMPTY : new ImmutableBytes(value, 0, value.length);
+    }
+
+    // the remaining bytes are not copied, so they must never be modified
+    public static ImmutableBytes view(ByteBuffer buffer) {
+        ByteBuffer bytes = buffer.slice();
+        return bytes.capacity() == 0 ? EMPTY : new ImmutableBytes(null, bytes, 0, bytes.capacity());
     }
 
     public static ImmutableBytes empty() {
@@ -124,13 +282,30 @@ public class ImmutableBytes implements Iterable<Byte> {
         if (offset < 0) {
             throw new IndexOutOfBoundsException("Index: " + offset + ", Size: " + bytes.byteCount);
         }
-        return new ImmutableBytes(bytes.value, bytes.offset + offset, length);
+        ImmutableBytes leaf = bytes.leaf();
+        return new ImmutableBytes(leaf.value, leaf.buffer, leaf.offset + offset, length);
     }
 
     public static ImmutableBytes concat(ImmutableBytes first, ImmutableBytes second) {
-        return ImmutableBytes.builder()
-                .add(first.value, first.offset, first.byteCount)
-                .add(second.value, second.offset, second.byteCount).build();
+        if (first.byteCount == 0) {
+            return second;
+        }
+        if (second.byteCount == 0) {
+            return first;
+        }
+        int length = first.byteCount + second.byteCount;
+        if (length < 0) {
+            throw new IllegalArgumentException("Concatenation is too long: " + first.byteCount + " + " + second.byteCount);
+        }
+        if (length <= COPY_LIMIT) {
+            return ImmutableBytes.builder(length).add(first.range()).add(second.range()).build();
+        }
+        ImmutableBytes left = first.left, right = first.right;
+        if (left != null && right != null && first.flat == null && right.byteCount + second.byteCount <= COPY_LIMIT) {
+            // small appends are merged into the last segment, so that segments do not get too small
+            return new ImmutableBytes(left, concat(right, second));
+        }
+        return new ImmutableBytes(first, second);
     }
 
     public static Builder builder() {
@@ -141,19 +316,64 @@ public class ImmutableBytes implements Iterable<Byte> {
         return new Builder(initCapacity);
     }
 
+    // splits in halves, the same way as the spliterators of arrays do
+    private final class Values implements Spliterator.OfInt {
+        private int index;
+        private final int end;
+
+        private Values(int index, int end) {
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            int from = this.index, middle = (from + this.end) >>> 1;
+            if (from >= middle) {
+                return null;
+            }
+            this.index = middle;
+            return new Values(from, middle);
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (this.index < this.end) {
+                action.accept(ImmutableBytes.this.at(this.index++));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            int from = this.index, end = this.end;
+            this.index = end;
+            for (int i = from; i < end; ++i) {
+                action.accept(ImmutableBytes.this.at(i));
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.end - this.index;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE | Spliterator.NONNULL;
+        }
+    }
+
     public static final class Builder {
         private byte[] value;
         private int length;
+        private ImmutableBytes prefix; // what the builder was created from, as it is only appended to
 
         private Builder(int initCapacity) {
             this.value = new byte[initCapacity];
         }
 
-        private Builder(byte[] array) {
-            this.value = Arrays.copyOf(array, array.length);
-            this.length = array.length;
-        }
-
         private byte[] growIfNecessary(int size) {
             byte[] oldValue = this.value;
             if (oldValue == null) {
@@ -192,12 +412,14 @@ public class ImmutableBytes implements Iterable<Byte> {
         }
 
         public ImmutableBytes build() {
+            ImmutableBytes prefix = this.prefix;
             if (this.length == 0) {
-                return ImmutableBytes.EMPTY;
+                return prefix != null ? prefix : ImmutableBytes.EMPTY;
             }
             byte[] value = this.value;
             this.value = null; // make the builder frozen
-            return new ImmutableBytes(value, 0, this.length);
+            ImmutableBytes built = new ImmutableBytes(value, 0, this.length);
+            return prefix != null ? concat(prefix, built) : built;
         }
     }
 }
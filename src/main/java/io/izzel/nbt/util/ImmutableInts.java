@@ -1,25 +1,56 @@
 package io.izzel.nbt.util;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.IntBuffer;
+import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.Deque;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.StringJoiner;
+import java.util.function.IntConsumer;
 import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 public class ImmutableInts implements Iterable<Integer> {
     private static final ImmutableInts EMPTY = new ImmutableInts(new int[0], 0, 0);
+    private static final int COPY_LIMIT = 64; // shorter concatenations are copied right away
 
     private final int[] value;
+    private final IntBuffer buffer; // used instead of the array when the values live outside the heap
 
     private final int intCount;
     private final int offset;
 
+    // set for concatenations, which are copied into one array on the first access and then let go
+    private volatile ImmutableInts left;
+    private volatile ImmutableInts right;
+    private volatile ImmutableInts flat;
+
     private int hash;
 
     private ImmutableInts(int[] value, int offset, int length) {
+        this(value, null, offset, length);
+    }
+
+    private ImmutableInts(ImmutableInts left, ImmutableInts right) {
+        this.intCount = left.intCount + right.intCount;
+        this.offset = 0;
+        this.value = null;
+        this.buffer = null;
+        this.left = left;
+        this.right = right;
+    }
+
+    private ImmutableInts(int[] value, IntBuffer buffer, int offset, int length) {
         this.intCount = length;
         this.offset = offset;
         this.value = value;
+        this.buffer = buffer;
+        this.left = null;
+        this.right = null;
     }
 
     public int size() {
@@ -28,14 +59,58 @@ public class ImmutableInts implements Iterable<Integer> {
 
     public int get(int index) {
         if (index >= 0 && index < this.intCount) {
-            return this.value[index + this.offset];
+            return this.at(index + this.offset);
         }
         throw new IndexOutOfBoundsException("Index: " + index);
     }
 
+    private int at(int i) {
+        if (this.value != null) {
+            return this.value[i];
+        }
+        return this.buffer != null ? this.buffer.get(i) : this.flat().at(i);
+    }
+
+    private ImmutableInts leaf() {
+        return this.isConcat() ? this.flat() : this;
+    }
+
+    private boolean isConcat() {
+        return this.value == null && this.buffer == null;
+    }
+
+    private ImmutableInts flat() {
+        ImmutableInts flat = this.flat;
+        if (flat == null) {
+            // the nodes are walked with a stack of their own, as long chains of appends are deep
+            int[] array = new int[this.intCount];
+            Deque<ImmutableInts> nodes = new ArrayDeque<>();
+            nodes.push(this);
+            for (int position = 0; !nodes.isEmpty(); ) {
+                ImmutableInts node = nodes.pop();
+                ImmutableInts left = node.left, right = node.right; // both are cleared once the node is flat
+                if (left != null && right != null && node.flat == null) {
+                    nodes.push(right);
+                    nodes.push(left);
+                } else {
+                    node.leaf().range().get(array, position, node.intCount);
+                    position += node.intCount;
+                }
+            }
+            this.flat = flat = new ImmutableInts(array, 0, array.length);
+            this.left = null;
+            this.right = null;
+        }
+        return flat;
+    }
+
+    public boolean isDirect() {
+        return this.buffer != null && this.buffer.isDirect();
+    }
+
     @Override
-    public Iterator<Integer> iterator() {
-        return new Iterator<Integer>() {
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
             private int index = 0;
 
             @Override
@@ -44,27 +119,42 @@ public class ImmutableInts implements Iterable<Integer> {
             }
 
             @Override
-            public Integer next() {
+            public int nextInt() {
                 return ImmutableInts.this.get(this.index++);
             }
         };
     }
 
+    @Override
+    public Spliterator.OfInt spliterator() {
+        if (this.isConcat()) {
+            return this.flat().spliterator();
+        }
+        if (this.value == null) {
+            return new Values(this.offset, this.offset + this.intCount);
+        }
+        return Spliterators.spliterator(this.value, this.offset, this.offset + this.intCount, Spliterator.ORDERED | Spliterator.IMMUTABLE);
+    }
+
+    public void forEachInt(IntConsumer action) {
+        ImmutableInts leaf = this.leaf();
+        for (int i = leaf.offset, end = leaf.offset + leaf.intCount; i < end; ++i) {
+            action.accept(leaf.at(i));
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (o == this) return true;
         if (o instanceof ImmutableInts) {
-            int thatLength = ((ImmutableInts) o).intCount;
+            ImmutableInts that = (ImmutableInts) o;
+            int thatLength = that.intCount;
             if (thatLength == this.intCount) {
-                int[] thatValue = ((ImmutableInts) o).value;
-                if (thatLength == this.value.length && thatLength == thatValue.length) {
-                    return Arrays.equals(thatValue, this.value);
+                ImmutableInts self = this.leaf(), other = that.leaf();
+                if (self.value == null || other.value == null) {
+                    return self.range().equals(other.range());
                 }
-                int end = this.offset + this.intCount;
-                for (int i = this.offset, j = ((ImmutableInts) o).offset; i < end; ++i, ++j) {
-                    if (this.value[i] != thatValue[j]) return false;
-                }
-                return true;
+                return ArraySupport.equals(self.value, self.offset, other.value, other.offset, thatLength);
             }
         }
         return false;
@@ -73,9 +163,14 @@ public class ImmutableInts implements Iterable<Integer> {
     @Override
     public int hashCode() {
         if (this.hash == 0) {
-            int hash = 1, end = this.offset + this.intCount;
-            for (int i = this.offset; i < end; ++i) {
-                hash = hash * 31 + Integer.hashCode(this.value[i]);
+            ImmutableInts leaf = this.leaf();
+            if (leaf.value != null) {
+                this.hash = ArraySupport.hashCode(leaf.value, leaf.offset, leaf.intCount);
+                return this.hash;
+            }
+            int hash = 1, end = leaf.offset + leaf.intCount;
+            for (int i = leaf.offset; i < end; ++i) {
+                hash = hash * 31 + Integer.hashCode(leaf.at(i));
             }
             this.hash = hash;
         }
@@ -89,22 +184,28 @@ public class ImmutableInts implements Iterable<Integer> {
 
     public String toString(String prefix, String delimiter, String suffix) {
         StringJoiner joiner = new StringJoiner(delimiter, prefix, suffix);
-        for (int i = offset, end = offset + intCount; i < end; ++i) {
-            joiner.add(Integer.toString(value[i]));
+        ImmutableInts leaf = this.leaf();
+        for (int i = leaf.offset, end = leaf.offset + leaf.intCount; i < end; ++i) {
+            joiner.add(Integer.toString(leaf.at(i)));
         }
         return joiner.toString();
     }
 
     public int[] toIntArray() {
+        if (this.value == null) {
+            int[] array = new int[this.intCount];
+            this.range().get(array);
+            return array;
+        }
         return Arrays.copyOfRange(value, offset, offset + intCount);
     }
 
     public IntBuffer toIntBuffer() {
-        return IntBuffer.wrap(value, offset, intCount).slice().asReadOnlyBuffer();
+        return this.range().asReadOnlyBuffer();
     }
 
     public IntStream stream() {
-        return IntStream.of(value);
+        return StreamSupport.intStream(this.spliterator(), false);
     }
 
     public ImmutableInts concat(ImmutableInts other) {
@@ -112,7 +213,52 @@ public class ImmutableInts implements Iterable<Integer> {
     }
 
     public Builder toBuilder() {
-        return new Builder(this.value);
+        Builder builder = new Builder(8);
+        builder.prefix = this;
+        return builder;
+    }
+
+    // copies the values into native memory, so that they no longer take up space in the heap
+    public ImmutableInts toDirect() {
+        if (this.isDirect() || this.intCount == 0) {
+            return this;
+        }
+        IntBuffer buffer = ByteBuffer.allocateDirect(this.intCount * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        buffer.put(this.range()).clear();
+        return new ImmutableInts(null, buffer, 0, this.intCount);
+    }
+
+    private IntBuffer range() {
+        if (this.isConcat()) {
+            return this.flat().range();
+        }
+        if (this.value == null) {
+            IntBuffer buffer = this.buffer.duplicate();
+            buffer.limit(this.offset + this.intCount).position(this.offset);
+            return buffer.slice();
+        }
+        return IntBuffer.wrap(value, offset, intCount).slice();
+    }
+
+    // writes big-endian values from the given range, for the nbt writer
+    void encode(int from, int length, byte[] dst) {
+        ImmutableInts leaf = this.leaf();
+        if (leaf.value != null) {
+            ArraySupport.putInts(leaf.value, leaf.offset + from, dst, 0, length);
+        } else {
+            IntBuffer range = leaf.range();
+            range.limit(from + length).position(from);
+            ByteBuffer.wrap(dst).asIntBuffer().put(range);
+        }
+    }
+
+    // the remaining bytes are read in the order of the buffer without being copied, so they must never be modified
+    public static ImmutableInts view(ByteBuffer buffer) {
+        if (buffer.remaining() % Integer.BYTES != 0) {
+            throw new IllegalArgumentException("Expect a multiple of " + Integer.BYTES + " bytes, got " + buffer.remaining());
+        }
+        IntBuffer ints = buffer.asIntBuffer();
+        return ints.capacity() == 0 ? EMPTY : new ImmutableInts(null, ints, 0, ints.capacity());
     }
 
     public static ImmutableInts empty() {
@@ -129,13 +275,30 @@ public class ImmutableInts implements Iterable<Integer> {
         if (offset < 0) {
             throw new IndexOutOfBoundsException("Index: " + offset + ", Size: " + ints.intCount);
         }
-        return new ImmutableInts(ints.value, ints.offset + offset, length);
+        ImmutableInts leaf = ints.leaf();
+        return new ImmutableInts(leaf.value, leaf.buffer, leaf.offset + offset, length);
     }
 
     public static ImmutableInts concat(ImmutableInts first, ImmutableInts second) {
-        return ImmutableInts.builder()
-                .add(first.value, first.offset, first.intCount)
-                .add(second.value, second.offset, second.intCount).build();
+        if (first.intCount == 0) {
+            return second;
+        }
+        if (second.intCount == 0) {
+            return first;
+        }
+        int length = first.intCount + second.intCount;
+        if (length < 0) {
+            throw new IllegalArgumentException("Concatenation is too long: " + first.intCount + " + " + second.intCount);
+        }
+        if (length <= COPY_LIMIT) {
+            return ImmutableInts.builder(length).add(first.range()).add(second.range()).build();
+        }
+        ImmutableInts left = first.left, right = first.right;
+        if (left != null && right != null && first.flat == null && right.intCount + second.intCount <= COPY_LIMIT) {
+            // small appends are merged into the last segment, so that segments do not get too small
+            return new ImmutableInts(left, concat(right, second));
+        }
+        return new ImmutableInts(first, second);
     }
 
     public static Builder builder() {
@@ -146,19 +309,64 @@ public class ImmutableInts implements Iterable<Integer> {
         return new Builder(initCapacity);
     }
 
+    // splits in halves, the same way as the spliterators of arrays do
+    private final class Values implements Spliterator.OfInt {
+        private int index;
+        private final int end;
+
+        private Values(int index, int end) {
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            int from = this.index, middle = (from + this.end) >>> 1;
+            if (from >= middle) {
+                return null;
+            }
+            this.index = middle;
+            return new Values(from, middle);
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (this.index < this.end) {
+                action.accept(ImmutableInts.this.at(this.index++));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            int from = this.index, end = this.end;
+            this.index = end;
+            for (int i = from; i < end; ++i) {
+                action.accept(ImmutableInts.this.at(i));
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.end - this.index;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE | Spliterator.NONNULL;
+        }
+    }
+
     public static final class Builder {
         private int[] value;
         private int length;
+        private ImmutableInts prefix; // what the builder was created from, as it is only appended to
 
         private Builder(int initCapacity) {
             this.value = new int[initCapacity];
         }
 
-        private Builder(int[] array) {
-            this.value = Arrays.copyOf(array, array.length);
-            this.length = array.length;
-        }
-
         private int[] growIfNecessary(int size) {
             int[] oldValue = this.value;
             if (oldValue == null) {
@@ -197,12 +405,14 @@ public class ImmutableInts implements Iterable<Integer> {
         }
 
         public ImmutableInts build() {
+            ImmutableInts prefix = this.prefix;
             if (this.length == 0) {
-                return ImmutableInts.EMPTY;
+                return prefix != null ? prefix : ImmutableInts.EMPTY;
             }
             int[] value = this.value;
             this.value = null; // make the builder frozen
-            return new ImmutableInts(value, 0, this.length);
+            ImmutableInts built = new ImmutableInts(value, 0, this.length);
+            return prefix != null ? concat(prefix, built) : built;
         }
     }
 }
@@ -1,26 +1,57 @@
 package io.izzel.nbt.util;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.LongBuffer;
+import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.Deque;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.StringJoiner;
+import java.util.function.LongConsumer;
 import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
 
 public class ImmutableLongs implements Iterable<Long> {
 
     private static final ImmutableLongs EMPTY = new ImmutableLongs(new long[0], 0, 0);
+    private static final int COPY_LIMIT = 64; // shorter concatenations are copied right away
 
     private final long[] value;
+    private final LongBuffer buffer; // used instead of the array when the values live outside the heap
 
     private final int longCount;
     private final int offset;
 
+    // set for concatenations, which are copied into one array on the first access and then let go
+    private volatile ImmutableLongs left;
+    private volatile ImmutableLongs right;
+    private volatile ImmutableLongs flat;
+
     private int hash;
 
     private ImmutableLongs(long[] value, int offset, int length) {
+        this(value, null, offset, length);
+    }
+
+    private ImmutableLongs(ImmutableLongs left, ImmutableLongs right) {
+        this.longCount = left.longCount + right.longCount;
+        this.offset = 0;
+        this.value = null;
+        this.buffer = null;
+        this.left = left;
+        this.right = right;
+    }
+
+    private ImmutableLongs(long[] value, LongBuffer buffer, int offset, int length) {
         this.longCount = length;
         this.offset = offset;
         this.value = value;
+        this.buffer = buffer;
+        this.left = null;
+        this.right = null;
     }
 
     public int size() {
@@ -29,14 +60,58 @@ public class ImmutableLongs implements Iterable<Long> {
 
     public long get(int index) {
         if (index >= 0 && index < this.longCount) {
-            return this.value[index + this.offset];
+            return this.at(index + this.offset);
         }
         throw new IndexOutOfBoundsException("Index: " + index);
     }
 
+    private long at(int i) {
+        if (this.value != null) {
+            return this.value[i];
+        }
+        return this.buffer != null ? this.buffer.get(i) : this.flat().at(i);
+    }
+
+    private ImmutableLongs leaf() {
+        return this.isConcat() ? this.flat() : this;
+    }
+
+    private boolean isConcat() {
+        return this.value == null && this.buffer == null;
+    }
+
+    private ImmutableLongs flat() {
+        ImmutableLongs flat = this.flat;
+        if (flat == null) {
+            // the nodes are walked with a stack of their own, as long chains of appends are deep
+            long[] array = new long[this.longCount];
+            Deque<ImmutableLongs> nodes = new ArrayDeque<>();
+            nodes.push(this);
+            for (int position = 0; !nodes.isEmpty(); ) {
+                ImmutableLongs node = nodes.pop();
+                ImmutableLongs left = node.left, right = node.right; // both are cleared once the node is flat
+                if (left != null && right != null && node.flat == null) {
+                    nodes.push(right);
+                    nodes.push(left);
+                } else {
+                    node.leaf().range().get(array, position, node.longCount);
+                    position += node.longCount;
+                }
+            }
+            this.flat = flat = new ImmutableLongs(array, 0, array.length);
+            this.left = null;
+            this.right = null;
+        }
+        return flat;
+    }
+
+    public boolean isDirect() {
+        return this.buffer != null && this.buffer.isDirect();
+    }
+
     @Override
-    public Iterator<Long> iterator() {
-        return new Iterator<Long>() {
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
             private int index = 0;
 
             @Override
@@ -45,27 +120,42 @@ public class ImmutableLongs implements Iterable<Long> {
             }
 
             @Override
-            public Long next() {
+            public long nextLong() {
                 return ImmutableLongs.this.get(this.index++);
             }
         };
     }
 
+    @Override
+    public Spliterator.OfLong spliterator() {
+        if (this.isConcat()) {
+            return this.flat().spliterator();
+        }
+        if (this.value == null) {
+            return new Values(this.offset, this.offset + this.longCount);
+        }
+        return Spliterators.spliterator(this.value, this.offset, this.offset + this.longCount, Spliterator.ORDERED | Spliterator.IMMUTABLE);
+    }
+
+    public void forEachLong(LongConsumer action) {
+        ImmutableLongs leaf = this.leaf();
+        for (int i = leaf.offset, end = leaf.offset + leaf.longCount; i < end; ++i) {
+            action.accept(leaf.at(i));
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (o == this) return true;
         if (o instanceof ImmutableLongs) {
-            int thatLength = ((ImmutableLongs) o).longCount;
+            ImmutableLongs that = (ImmutableLongs) o;
+            int thatLength = that.longCount;
             if (thatLength == this.longCount) {
-                long[] thatValue = ((ImmutableLongs) o).value;
-                if (thatLength == this.value.length && thatLength == thatValue.length) {
-                    return Arrays.equals(thatValue, this.value);
-                }
-                int end = this.offset + this.longCount;
-                for (int i = this.offset, j = ((ImmutableLongs) o).offset; i < end; ++i, ++j) {
-                    if (this.value[i] != thatValue[j]) return false;
+                ImmutableLongs self = this.leaf(), other = that.leaf();
+                if (self.value == null || other.value == null) {
+                    return self.range().equals(other.range());
                 }
-                return true;
+                return ArraySupport.equals(self.value, self.offset, other.value, other.offset, thatLength);
             }
         }
         return false;
@@ -74,9 +164,14 @@ public class ImmutableLongs implements Iterable<Long> {
     @Override
     public int hashCode() {
         if (this.hash == 0) {
-            int hash = 1, end = this.offset + this.longCount;
-            for (int i = this.offset; i < end; ++i) {
-                hash = hash * 31 + Long.hashCode(this.value[i]);
+            ImmutableLongs leaf = this.leaf();
+            if (leaf.value != null) {
+                this.hash = ArraySupport.hashCode(leaf.value, leaf.offset, leaf.longCount);
+                return this.hash;
+            }
+            int hash = 1, end = leaf.offset + leaf.longCount;
+            for (int i = leaf.offset; i < end; ++i) {
+                hash = hash * 31 + Long.hashCode(leaf.at(i));
             }
             this.hash = hash;
         }
@@ -90,22 +185,28 @@ public class ImmutableLongs implements Iterable<Long> {
 
     public String toString(String prefix, String delimiter, String suffix) {
         StringJoiner joiner = new StringJoiner(delimiter, prefix, suffix);
-        for (int i = offset, end = offset + longCount; i < end; ++i) {
-            joiner.add(Long.toString(value[i]));
+        ImmutableLongs leaf = this.leaf();
+        for (int i = leaf.offset, end = leaf.offset + leaf.longCount; i < end; ++i) {
+            joiner.add(Long.toString(leaf.at(i)));
         }
         return joiner.toString();
     }
 
     public long[] toLongArray() {
+        if (this.value == null) {
+            long[] array = new long[this.longCount];
+            this.range().get(array);
+            return array;
+        }
         return Arrays.copyOfRange(value, offset, offset + longCount);
     }
 
     public LongBuffer toLongBuffer() {
-        return LongBuffer.wrap(value, offset, longCount).slice().asReadOnlyBuffer();
+        return this.range().asReadOnlyBuffer();
     }
 
     public LongStream stream() {
-        return LongStream.of(value);
+        return StreamSupport.longStream(this.spliterator(), false);
     }
 
     public ImmutableLongs concat(ImmutableLongs other) {
@@ -113,7 +214,66 @@ public class ImmutableLongs implements Iterable<Long> {
     }
 
     public ImmutableLongs.Builder toBuilder() {
-        return new ImmutableLongs.Builder(this.value);
+        ImmutableLongs.Builder builder = new ImmutableLongs.Builder(8);
+        builder.prefix = this;
+        return builder;
+    }
+
+    // copies the values into native memory, so that they no longer take up space in the heap
+    public ImmutableLongs toDirect() {
+        if (this.isDirect() || this.longCount == 0) {
+            return this;
+        }
+        LongBuffer buffer = ByteBuffer.allocateDirect(this.longCount * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+        buffer.put(this.range()).clear();
+        return new ImmutableLongs(null, buffer, 0, this.longCount);
+    }
+
+    private LongBuffer range() {
+        if (this.isConcat()) {
+            return this.flat().range();
+        }
+        if (this.value == null) {
+            LongBuffer buffer = this.buffer.duplicate();
+            buffer.limit(this.offset + this.longCount).position(this.offset);
+            return buffer.slice();
+        }
+        return LongBuffer.wrap(value, offset, longCount).slice();
+    }
+
+    // writes big-endian values from the given range, for the nbt writer
+    void encode(int from, int length, byte[] dst) {
+        ImmutableLongs leaf = this.leaf();
+        if (leaf.value != null) {
+            ArraySupport.putLongs(leaf.value, leaf.offset + from, dst, 0, length);
+        } else {
+            LongBuffer range = leaf.range();
+            range.limit(from + length).position(from);
+            ByteBuffer.wrap(dst).asLongBuffer().put(range);
+        }
+    }
+
+    // the array is shared, so it must never be modified, and it is null for values backed by a buffer
+    long[] array() {
+        return this.leaf().value;
+    }
+
+    int arrayOffset() {
+        return this.leaf().offset;
+    }
+
+    // takes the ownership of the array
+    static ImmutableLongs wrap(long[] value) {
+        return value.length == 0 ? EMPTY : new ImmutableLongs(value, 0, value.length);
+    }
+
+    // the remaining bytes are read in the order of the buffer without being copied, so they must never be modified
+    public static ImmutableLongs view(ByteBuffer buffer) {
+        if (buffer.remaining() % Long.BYTES != 0) {
+            throw new IllegalArgumentException("Expect a multiple of " + Long.BYTES + " bytes, got " + buffer.remaining());
+        }
+        LongBuffer longs = buffer.asLongBuffer();
+        return longs.capacity() == 0 ? EMPTY : new ImmutableLongs(null, longs, 0, longs.capacity());
     }
 
     public static ImmutableLongs empty() {
@@ -130,13 +290,30 @@ public class ImmutableLongs implements Iterable<Long> {
         if (offset < 0) {
             throw new IndexOutOfBoundsException("Index: " + offset + ", Size: " + longs.longCount);
         }
-        return new ImmutableLongs(longs.value, longs.offset + offset, length);
+        ImmutableLongs leaf = longs.leaf();
+        return new ImmutableLongs(leaf.value, leaf.buffer, leaf.offset + offset, length);
     }
 
     public static ImmutableLongs concat(ImmutableLongs first, ImmutableLongs second) {
-        return ImmutableLongs.builder()
-                .add(first.value, first.offset, first.longCount)
-                .add(second.value, second.offset, second.longCount).build();
+        if (first.longCount == 0) {
+            return second;
+        }
+        if (second.longCount == 0) {
+            return first;
+        }
+        int length = first.longCount + second.longCount;
+        if (length < 0) {
+            throw new IllegalArgumentException("Concatenation is too long: " + first.longCount + " + " + second.longCount);
+        }
+        if (length <= COPY_LIMIT) {
+            return ImmutableLongs.builder(length).add(first.range()).add(second.range()).build();
+        }
+        ImmutableLongs left = first.left, right = first.right;
+        if (left != null && right != null && first.flat == null && right.longCount + second.longCount <= COPY_LIMIT) {
+            // small appends are merged into the last segment, so that segments do not get too small
+            return new ImmutableLongs(left, concat(right, second));
+        }
+        return new ImmutableLongs(first, second);
     }
 
     public static Builder builder() {
@@ -147,19 +324,64 @@ public class ImmutableLongs implements Iterable<Long> {
         return new Builder(initCapacity);
     }
 
+    // splits in halves, the same way as the spliterators of arrays do
+    private final class Values implements Spliterator.OfLong {
+        private int index;
+        private final int end;
+
+        private Values(int index, int end) {
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            int from = this.index, middle = (from + this.end) >>> 1;
+            if (from >= middle) {
+                return null;
+            }
+            this.index = middle;
+            return new Values(from, middle);
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (this.index < this.end) {
+                action.accept(ImmutableLongs.this.at(this.index++));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            int from = this.index, end = this.end;
+            this.index = end;
+            for (int i = from; i < end; ++i) {
+                action.accept(ImmutableLongs.this.at(i));
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.end - this.index;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE | Spliterator.NONNULL;
+        }
+    }
+
     public static final class Builder {
         private long[] value;
         private int length;
+        private ImmutableLongs prefix; // what the builder was created from, as it is only appended to
 
         private Builder(int initCapacity) {
             this.value = new long[initCapacity];
         }
 
-        private Builder(long[] array) {
-            this.value = Arrays.copyOf(array, array.length);
-            this.length = array.length;
-        }
-
         private long[] growIfNecessary(int size) {
             long[] oldValue = this.value;
             if (oldValue == null) {
@@ -198,12 +420,14 @@ public class ImmutableLongs implements Iterable<Long> {
         }
 
         public ImmutableLongs build() {
+            ImmutableLongs prefix = this.prefix;
             if (this.length == 0) {
-                return ImmutableLongs.EMPTY;
+                return prefix != null ? prefix : ImmutableLongs.EMPTY;
             }
             long[] value = this.value;
             this.value = null; // make the builder frozen
-            return new ImmutableLongs(value, 0, this.length);
+            ImmutableLongs built = new ImmutableLongs(value, 0, this.length);
+            return prefix != null ? concat(prefix, built) : built;
         }
     }
 }
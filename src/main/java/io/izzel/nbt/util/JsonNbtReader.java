@@ -0,0 +1,699 @@
+package io.izzel.nbt.util;
+
+import io.izzel.nbt.ByteArrayTag;
+import io.izzel.nbt.ByteTag;
+import io.izzel.nbt.CompoundTag;
+import io.izzel.nbt.DoubleTag;
+import io.izzel.nbt.EndTag;
+import io.izzel.nbt.IntArrayTag;
+import io.izzel.nbt.IntTag;
+import io.izzel.nbt.LongArrayTag;
+import io.izzel.nbt.LongTag;
+import io.izzel.nbt.NumberTag;
+import io.izzel.nbt.StringTag;
+import io.izzel.nbt.Tag;
+import io.izzel.nbt.TagType;
+import io.izzel.nbt.visitor.TagCompoundVisitor;
+import io.izzel.nbt.visitor.TagListVisitor;
+import io.izzel.nbt.visitor.TagValueVisitor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+public class JsonNbtReader implements Closeable {
+
+    private static final Object LIST = new Object();
+    private static final Object COMPOUND = new Object();
+
+    private final Reader data; // refills the buffer in chunks, or null if the whole input is in the buffer
+    private final JsonTypeHints hints;
+
+    private final char[] buffer;
+    private int position;
+    private int limit;
+    private int base; // characters before the buffer, for error positions
+
+    private char[] token = new char[32];
+    private int tokenLength;
+    private final StringBuilder builder = new StringBuilder();
+
+    private String pendingKey; // the first key of a compound that was opened, read while looking for a type hint
+    private boolean pendingWrapped;
+
+    public JsonNbtReader(Reader data) throws IOException {
+        this(data, JsonTypeHints.marked());
+    }
+
+    public JsonNbtReader(Reader data, JsonTypeHints hints) throws IOException {
+        this.data = data;
+        this.hints = hints;
+        this.buffer = new char[8192];
+    }
+
+    public JsonNbtReader(InputStream stream) throws IOException {
+        this(stream, JsonTypeHints.marked());
+    }
+
+    public JsonNbtReader(InputStream stream, JsonTypeHints hints) throws IOException {
+        this(new InputStreamReader(stream, StandardCharsets.UTF_8), hints);
+    }
+
+    public JsonNbtReader(String string) throws IOException {
+        this(string, JsonTypeHints.marked());
+    }
+
+    public JsonNbtReader(String string, JsonTypeHints hints) throws IOException {
+        this.data = null;
+        this.hints = hints;
+        this.buffer = string.toCharArray();
+        this.limit = this.buffer.length;
+    }
+
+    public void accept(TagValueVisitor visitor) throws IOException {
+        Object[] stack = new Object[8];
+        int pointer = 0;
+        Object head = this.readHead();
+        if (head instanceof EndTag) {
+            visitor.visitEnd();
+            return;
+        }
+        if (head == LIST) {
+            stack[pointer++] = new ListContext(visitor.visitList());
+        } else if (head == COMPOUND) {
+            stack[pointer++] = new CompoundContext(visitor.visitCompound(), this.pendingWrapped, this.pendingKey);
+        } else {
+            ((Tag) head).accept(visitor);
+        }
+        while (pointer > 0) {
+            Object context = stack[pointer - 1];
+            TagValueVisitor valueVisitor;
+            if (context instanceof ListContext) {
+                ListContext list = (ListContext) context;
+                int c = this.peekAfterSpaces();
+                if (c == ']') {
+                    ++this.position;
+                    if (list.count == 0) {
+                        list.tagVisitor.visitType(TagType.END);
+                    }
+                    list.tagVisitor.visitLength(list.count);
+                    list.tagVisitor.visitEnd();
+                    --pointer;
+                    continue;
+                }
+                if (list.count > 0) {
+                    this.expect(',');
+                }
+                head = this.readHead();
+                TagType type = head == LIST ? TagType.LIST : head == COMPOUND ? TagType.COMPOUND : ((Tag) head).getType();
+                if (type == TagType.END) {
+                    throw this.error(ParseFailureException.Type.UNEXPECTED_NULL);
+                }
+                if (list.count == 0) {
+                    if (!this.hints.isMarked() && isNumber(type)) {
+                        this.readNumbers(list.tagVisitor, (Tag) head);
+                        --pointer;
+                        continue;
+                    }
+                    list.elemType = type;
+                    list.tagVisitor.visitType(type);
+                } else if (type != list.elemType) {
+                    throw this.error(ParseFailureException.Type.MIXED_TAG_TYPES_IN_LIST);
+                }
+                list.count += 1;
+                valueVisitor = list.tagVisitor.visitValue();
+            } else {
+                CompoundContext compound = (CompoundContext) context;
+                String key = compound.pendingKey;
+                if (key != null) {
+                    compound.pendingKey = null;
+                } else {
+                    int c = this.peekAfterSpaces();
+                    if (c == '}') {
+                        ++this.position;
+                        if (compound.wrapped) {
+                            this.expect('}');
+                        }
+                        compound.tagVisitor.visitEnd();
+                        --pointer;
+                        continue;
+                    }
+                    this.expect(',');
+                    key = this.readString();
+                    this.expect(':');
+                }
+                valueVisitor = compound.tagVisitor.visit(key);
+                head = this.readHead();
+                if (head instanceof EndTag) {
+                    throw this.error(ParseFailureException.Type.UNEXPECTED_NULL);
+                }
+            }
+            if (head == LIST || head == COMPOUND) {
+                if (pointer >= stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[pointer++] = head == LIST
+                        ? new ListContext(valueVisitor.visitList())
+                        : new CompoundContext(valueVisitor.visitCompound(), this.pendingWrapped, this.pendingKey);
+            } else {
+                ((Tag) head).accept(valueVisitor);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.data != null) {
+            this.data.close();
+        }
+    }
+
+    public Tag toTag() throws IOException {
+        TagWriter writer = new TagWriter();
+        this.accept(writer);
+        this.readUntilEOF();
+        return writer.getTag();
+    }
+
+    public CompoundTag toCompoundTag() throws IOException {
+        Tag tag = this.toTag();
+        if (tag.getType() != TagType.COMPOUND) {
+            throw new IOException("Expect " + TagType.COMPOUND.getTagName() + " but got " + tag.getType());
+        }
+        return (CompoundTag) tag;
+    }
+
+    public byte[] toBinaryNbt() throws IOException {
+        try (ByteArrayOutputStream stream = new ByteArrayOutputStream()) {
+            try (NbtWriter nbtWriter = new NbtWriter(stream)) {
+                this.accept(nbtWriter);
+                this.readUntilEOF();
+            }
+            return stream.toByteArray();
+        }
+    }
+
+    private void readUntilEOF() throws IOException {
+        if (this.peekAfterSpaces() >= 0) {
+            throw this.error(ParseFailureException.Type.TRAILING_CHARACTERS);
+        }
+    }
+
+    // a whole value, except for lists and compounds, which are only opened
+    private Object readHead() throws IOException {
+        int c = this.peekAfterSpaces();
+        switch (c) {
+            case '[': {
+                ++this.position;
+                return LIST;
+            }
+            case '{': {
+                ++this.position;
+                if (this.peekAfterSpaces() == '}') {
+                    ++this.position;
+                    return CompoundTag.empty();
+                }
+                String key = this.readString();
+                this.expect(':');
+                if (this.hints.isMarked() && key.equals(this.hints.getTypeKey())) {
+                    return this.readHinted();
+                }
+                this.pendingKey = key;
+                this.pendingWrapped = false;
+                return COMPOUND;
+            }
+            case '"': {
+                return StringTag.of(this.readString());
+            }
+            case 't': {
+                this.readLiteral("true");
+                return ByteTag.of(true);
+            }
+            case 'f': {
+                this.readLiteral("false");
+                return ByteTag.of(false);
+            }
+            case 'n': {
+                this.readLiteral("null");
+                return EndTag.of();
+            }
+            case -1: {
+                throw this.error(ParseFailureException.Type.UNEXPECTED_EOF);
+            }
+            default: {
+                this.readNumberToken();
+                Tag tag = null;
+                if (!this.isFloatingToken()) {
+                    tag = StringNbtReader.scanInteger(this.token, 0, this.tokenLength, TagType.INT);
+                    if (tag == null) {
+                        tag = StringNbtReader.scanInteger(this.token, 0, this.tokenLength, TagType.LONG);
+                    }
+                }
+                if (tag == null) {
+                    tag = StringNbtReader.scanFloating(this.token, 0, this.tokenLength, TagType.DOUBLE, true);
+                }
+                if (tag == null) {
+                    throw this.error(ParseFailureException.Type.INVALID_NUMBER);
+                }
+                return tag;
+            }
+        }
+    }
+
+    // the rest of {"@type":"long","@value":42}, after the type key
+    private Object readHinted() throws IOException {
+        TagType type;
+        try {
+            type = TagType.valueOf(this.readString().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw this.error(ParseFailureException.Type.INVALID_TYPE_HINT);
+        }
+        this.expect(',');
+        if (!this.readString().equals(this.hints.getValueKey())) {
+            throw this.error(ParseFailureException.Type.INVALID_TYPE_HINT);
+        }
+        this.expect(':');
+        Tag tag;
+        switch (type) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG: {
+                this.readNumberToken();
+                tag = StringNbtReader.scanInteger(this.token, 0, this.tokenLength, type);
+                break;
+            }
+            case FLOAT:
+            case DOUBLE: {
+                // non-finite values come as strings
+                if (this.peekAfterSpaces() == '"') {
+                    String s = this.readString();
+                    tag = StringNbtReader.scanFloating(s.toCharArray(), 0, s.length(), type, true);
+                } else {
+                    this.readNumberToken();
+                    tag = StringNbtReader.scanFloating(this.token, 0, this.tokenLength, type, true);
+                }
+                break;
+            }
+            case STRING: {
+                tag = StringTag.of(this.readString());
+                break;
+            }
+            case BYTE_ARRAY: {
+                ImmutableBytes.Builder builder = ImmutableBytes.builder();
+                this.expect('[');
+                for (boolean first = true; this.peekAfterSpaces() != ']'; first = false) {
+                    if (!first) {
+                        this.expect(',');
+                    }
+                    builder.add(((ByteTag) this.readInteger(TagType.BYTE)).getByte());
+                }
+                ++this.position;
+                tag = ByteArrayTag.of(builder.build());
+                break;
+            }
+            case INT_ARRAY: {
+                ImmutableInts.Builder builder = ImmutableInts.builder();
+                this.expect('[');
+                for (boolean first = true; this.peekAfterSpaces() != ']'; first = false) {
+                    if (!first) {
+                        this.expect(',');
+                    }
+                    builder.add(((IntTag) this.readInteger(TagType.INT)).getInt());
+                }
+                ++this.position;
+                tag = IntArrayTag.of(builder.build());
+                break;
+            }
+            case LONG_ARRAY: {
+                ImmutableLongs.Builder builder = ImmutableLongs.builder();
+                this.expect('[');
+                for (boolean first = true; this.peekAfterSpaces() != ']'; first = false) {
+                    if (!first) {
+                        this.expect(',');
+                    }
+                    builder.add(((LongTag) this.readInteger(TagType.LONG)).getLong());
+                }
+                ++this.position;
+                tag = LongArrayTag.of(builder.build());
+                break;
+            }
+            case COMPOUND: {
+                // a compound whose first key is the type key itself, its entries are read without looking for hints
+                this.expect('{');
+                if (this.peekAfterSpaces() == '}') {
+                    ++this.position;
+                    this.expect('}');
+                    return CompoundTag.empty();
+                }
+                this.pendingKey = this.readString();
+                this.pendingWrapped = true;
+                this.expect(':');
+                return COMPOUND;
+            }
+            default: {
+                throw this.error(ParseFailureException.Type.INVALID_TYPE_HINT);
+            }
+        }
+        if (tag == null) {
+            throw this.error(ParseFailureException.Type.INVALID_NUMBER);
+        }
+        this.expect('}');
+        return tag;
+    }
+
+    private Tag readInteger(TagType type) throws IOException {
+        this.readNumberToken();
+        Tag tag = StringNbtReader.scanInteger(this.token, 0, this.tokenLength, type);
+        if (tag == null) {
+            throw this.error(ParseFailureException.Type.INVALID_NUMBER);
+        }
+        return tag;
+    }
+
+    // without type hints plain numbers only settle the element type once the whole list is seen, so [1,2.5] becomes a double list
+    private void readNumbers(TagListVisitor listVisitor, Tag first) throws IOException {
+        Tag[] numbers = new Tag[16];
+        int count = 0;
+        TagType type = first.getType();
+        numbers[count++] = first;
+        while (this.peekAfterSpaces() != ']') {
+            this.expect(',');
+            Object head = this.readHead();
+            if (head instanceof EndTag) {
+                throw this.error(ParseFailureException.Type.UNEXPECTED_NULL);
+            }
+            TagType next = head instanceof Tag ? ((Tag) head).getType() : TagType.END;
+            if (!isNumber(next)) {
+                throw this.error(ParseFailureException.Type.MIXED_TAG_TYPES_IN_LIST);
+            }
+            if (next == TagType.DOUBLE || next == TagType.LONG && type == TagType.INT) {
+                type = next;
+            }
+            if (count == numbers.length) {
+                numbers = Arrays.copyOf(numbers, count * 2);
+            }
+            numbers[count++] = (Tag) head;
+        }
+        ++this.position;
+        listVisitor.visitType(type);
+        listVisitor.visitLength(count);
+        for (int i = 0; i < count; ++i) {
+            widen(numbers[i], type).accept(listVisitor.visitValue());
+        }
+        listVisitor.visitEnd();
+    }
+
+    private static boolean isNumber(TagType type) {
+        return type == TagType.INT || type == TagType.LONG || type == TagType.DOUBLE;
+    }
+
+    private static Tag widen(Tag tag, TagType type) {
+        if (tag.getType() == type) {
+            return tag;
+        }
+        if (type == TagType.LONG) {
+            return LongTag.of(((IntTag) tag).getInt());
+        }
+        return DoubleTag.of(((NumberTag) tag).getNumber().doubleValue());
+    }
+
+    private void readNumberToken() throws IOException {
+        this.peekAfterSpaces();
+        int length = 0;
+        while (true) {
+            if (this.position >= this.limit && !this.fill()) {
+                break;
+            }
+            char c = this.buffer[this.position];
+            if (!(c >= '0' && c <= '9' || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E')) {
+                break;
+            }
+            if (length == this.token.length) {
+                this.token = Arrays.copyOf(this.token, length * 2);
+            }
+            this.token[length++] = c;
+            ++this.position;
+        }
+        if (length == 0) {
+            throw this.error(ParseFailureException.Type.UNEXPECTED_CHARACTER);
+        }
+        if (!isJsonNumber(this.token, length)) {
+            throw this.error(ParseFailureException.Type.INVALID_NUMBER);
+        }
+        this.tokenLength = length;
+    }
+
+    // -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?, the number scanners alone would take 01 or +1 as well
+    private static boolean isJsonNumber(char[] s, int length) {
+        int i = 0;
+        if (s[i] == '-') {
+            ++i;
+        }
+        if (i < length && s[i] == '0') {
+            ++i;
+        } else {
+            int start = i;
+            while (i < length && s[i] >= '0' && s[i] <= '9') {
+                ++i;
+            }
+            if (i == start) {
+                return false;
+            }
+        }
+        if (i < length && s[i] == '.') {
+            int start = ++i;
+            while (i < length && s[i] >= '0' && s[i] <= '9') {
+                ++i;
+            }
+            if (i == start) {
+                return false;
+            }
+        }
+        if (i < length && (s[i] == 'e' || s[i] == 'E')) {
+            ++i;
+            if (i < length && (s[i] == '+' || s[i] == '-')) {
+                ++i;
+            }
+            int start = i;
+            while (i < length && s[i] >= '0' && s[i] <= '9') {
+                ++i;
+            }
+            if (i == start) {
+                return false;
+            }
+        }
+        return i == length;
+    }
+
+    private boolean isFloatingToken() {
+        for (int i = 0; i < this.tokenLength; ++i) {
+            char c = this.token[i];
+            if (c == '.' || c == 'e' || c == 'E') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String readString() throws IOException {
+        this.expect('"');
+        // runs without escapes that end inside the buffer are taken as they are
+        char[] buffer = this.buffer;
+        for (int i = this.position; i < this.limit; ++i) {
+            char c = buffer[i];
+            if (c == '"') {
+                String s = new String(buffer, this.position, i - this.position);
+                this.position = i + 1;
+                return s;
+            }
+            if (c == '\\' || c < 0x20) {
+                break;
+            }
+        }
+        StringBuilder builder = this.builder;
+        builder.setLength(0);
+        while (true) {
+            if (this.position >= this.limit && !this.fill()) {
+                throw this.error(ParseFailureException.Type.UNEXPECTED_EOF);
+            }
+            char c = this.buffer[this.position++];
+            if (c == '"') {
+                return builder.toString();
+            }
+            if (c < 0x20) {
+                --this.position;
+                throw this.error(ParseFailureException.Type.UNEXPECTED_CHARACTER);
+            }
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            if (this.position >= this.limit && !this.fill()) {
+                throw this.error(ParseFailureException.Type.UNEXPECTED_EOF);
+            }
+            c = this.buffer[this.position++];
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    builder.append(c);
+                    break;
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'u': {
+                    int value = 0;
+                    for (int i = 0; i < 4; ++i) {
+                        if (this.position >= this.limit && !this.fill()) {
+                            throw this.error(ParseFailureException.Type.UNEXPECTED_EOF);
+                        }
+                        int digit = Character.digit(this.buffer[this.position++], 16);
+                        if (digit < 0) {
+                            --this.position;
+                            throw this.error(ParseFailureException.Type.INVALID_ESCAPE);
+                        }
+                        value = value << 4 | digit;
+                    }
+                    builder.append((char) value);
+                    break;
+                }
+                default: {
+                    --this.position;
+                    throw this.error(ParseFailureException.Type.INVALID_ESCAPE);
+                }
+            }
+        }
+    }
+
+    private void readLiteral(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); ++i) {
+            if (this.position >= this.limit && !this.fill()) {
+                throw this.error(ParseFailureException.Type.UNEXPECTED_EOF);
+            }
+            if (this.buffer[this.position] != literal.charAt(i)) {
+                throw this.error(ParseFailureException.Type.UNEXPECTED_CHARACTER);
+            }
+            ++this.position;
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = this.peekAfterSpaces();
+        if (c != expected) {
+            throw this.error(c < 0 ? ParseFailureException.Type.UNEXPECTED_EOF : ParseFailureException.Type.UNEXPECTED_CHARACTER);
+        }
+        ++this.position;
+    }
+
+    private int peekAfterSpaces() throws IOException {
+        while (true) {
+            if (this.position >= this.limit && !this.fill()) {
+                return -1;
+            }
+            char c = this.buffer[this.position];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+            ++this.position;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (this.data != null) {
+            int count;
+            do {
+                count = this.data.read(this.buffer, 0, this.buffer.length);
+            } while (count == 0);
+            if (count > 0) {
+                this.base += this.limit;
+                this.position = 0;
+                this.limit = count;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ParseFailureException error(ParseFailureException.Type type) {
+        return new ParseFailureException(this.base + this.position, type);
+    }
+
+    private static final class ListContext {
+        private final TagListVisitor tagVisitor;
+        private TagType elemType;
+        private int count;
+
+        private ListContext(TagListVisitor tagVisitor) {
+            this.tagVisitor = tagVisitor;
+        }
+    }
+
+    private static final class CompoundContext {
+        private final TagCompoundVisitor tagVisitor;
+        private final boolean wrapped; // inside {"@type":"compound","@value":...}, which is closed along with it
+        private String pendingKey;
+
+        private CompoundContext(TagCompoundVisitor tagVisitor, boolean wrapped, String pendingKey) {
+            this.tagVisitor = tagVisitor;
+            this.wrapped = wrapped;
+            this.pendingKey = pendingKey;
+        }
+    }
+
+    public static final class ParseFailureException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int position;
+        private final Type type;
+
+        public ParseFailureException(int position, Type type) {
+            super("Parse error (at position " + position + "): " + type.message);
+            this.position = position;
+            this.type = type;
+        }
+
+        public int getPosition() {
+            return this.position;
+        }
+
+        public Type getType() {
+            return this.type;
+        }
+
+        public enum Type {
+            UNEXPECTED_EOF("Unexpected EOF"),
+            UNEXPECTED_CHARACTER("Unexpected character"),
+            INVALID_ESCAPE("Invalid escape sequence in a string"),
+            INVALID_NUMBER("Number out of range or malformed"),
+            INVALID_TYPE_HINT("Unrecognized type hint"),
+            UNEXPECTED_NULL("Null is only allowed as the whole document"),
+            MIXED_TAG_TYPES_IN_LIST("Mixed tag types in a list tag"),
+            TRAILING_CHARACTERS("Unexpected characters after the value");
+
+            private final String message;
+
+            Type(String message) {
+                this.message = message;
+            }
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package io.izzel.nbt.util;
+
+import io.izzel.nbt.TagType;
+import io.izzel.nbt.visitor.TagCompoundVisitor;
+import io.izzel.nbt.visitor.TagListVisitor;
+import io.izzel.nbt.visitor.TagValueVisitor;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Locale;
+
+public class JsonNbtWriter extends TagValueVisitor implements Flushable, Closeable {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final TextOutput data;
+
+    public JsonNbtWriter(Writer writer) throws IOException {
+        this(new TextOutput(writer, null), JsonTypeHints.marked());
+    }
+
+    public JsonNbtWriter(Writer writer, JsonTypeHints hints) throws IOException {
+        this(new TextOutput(writer, null), hints);
+    }
+
+    public JsonNbtWriter(Appendable appendable) throws IOException {
+        this(new TextOutput(appendable, null), JsonTypeHints.marked());
+    }
+
+    public JsonNbtWriter(Appendable appendable, JsonTypeHints hints) throws IOException {
+        this(new TextOutput(appendable, null), hints);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.data.flush();
+        this.data.throwException();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.data.closeQuietly();
+        this.data.throwException();
+    }
+
+    @Override
+    public void visitEnd() {
+        // individual end tags are written as null, which the reader turns back into an end tag
+        if (this.data.suppressed.isEmpty()) {
+            try {
+                this.data.write("null");
+                this.data.done();
+            } catch (IOException e) {
+                this.data.suppressed.add(e);
+            }
+        }
+    }
+
+    private JsonNbtWriter(TextOutput output, JsonTypeHints hints) {
+        super(new ValueWriter(output, hints));
+        this.data = output;
+    }
+
+    // factories rather than constructors, as print streams are appendables too
+    public static JsonNbtWriter utf8(OutputStream stream) {
+        return utf8(stream, JsonTypeHints.marked());
+    }
+
+    public static JsonNbtWriter utf8(OutputStream stream, JsonTypeHints hints) {
+        return new JsonNbtWriter(new TextOutput(null, stream), hints); // encoded straight from the char buffer
+    }
+
+    static String typeName(TagType type) {
+        return type.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static void writeString(TextOutput data, String s) throws IOException {
+        data.write('"');
+        char[] chars = data.chars;
+        for (int i = 0, length = s.length(); i < length; ++i) {
+            if (data.count > chars.length - 6) {
+                data.ensure(6);
+                chars = data.chars;
+            }
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                chars[data.count++] = '\\';
+                chars[data.count++] = c;
+            } else if (c >= 0x20) {
+                chars[data.count++] = c;
+            } else if (c == '\n') {
+                chars[data.count++] = '\\';
+                chars[data.count++] = 'n';
+            } else if (c == '\t') {
+                chars[data.count++] = '\\';
+                chars[data.count++] = 't';
+            } else if (c == '\r') {
+                chars[data.count++] = '\\';
+                chars[data.count++] = 'r';
+            } else {
+                chars[data.count++] = '\\';
+                chars[data.count++] = 'u';
+                chars[data.count++] = '0';
+                chars[data.count++] = '0';
+                chars[data.count++] = HEX[c >> 4];
+                chars[data.count++] = HEX[c & 0xF];
+            }
+        }
+        data.write('"');
+    }
+
+    private static final class ValueWriter extends TagValueVisitor {
+
+        private final TextOutput data;
+        private final JsonTypeHints hints;
+
+        private ValueWriter(TextOutput output, JsonTypeHints hints) {
+            super(null);
+            this.data = output;
+            this.hints = hints;
+        }
+
+        @Override
+        public void visitEnd() {
+            if (this.data.suppressed.isEmpty()) {
+                this.data.suppressed.add(new IOException("End tags are not allowed in json representations"));
+            }
+        }
+
+        @Override
+        public void visitByte(byte b) {
+            if (this.data.suppressed.isEmpty()) {
+                try {
+                    boolean marked = this.openHint(TagType.BYTE);
+                    this.data.writeLong(b);
+                    this.closeHint(marked);
+                } catch (IOException e) {
+                    this.data.suppressed.add(e);
+                }
+            }
+        }
+
+        @Override
+        public void visitShort(short s) {
+            if (this.data.suppressed.isEmpty()) {
+                try {
+                    boolean marked = this.openHint(TagType.SHORT);
+                    this.data.writeLong(s);
+                    this.closeHint(marked);
+                } catch (IOException e) {
+                    this.data.suppressed.add(e);
+                }
+            }
+        }
+
+        @Override
+        public void visitInt(int i) {
+            if (this.data.suppressed.isEmpty()) {
+                try {
+                    this.data.writeLong(i);
+                    this.data.done();
+                } catch (IOException e) {
+                    this.data.suppressed.add(e);
+                }
+            }
+        }
+
+        @Override
+        public void visitLong(long l) {
+            if (this.data.suppressed.isEmpty()) {
+                try {
+                    boolean marked = this.openHint(TagType.LONG);
+                    this.data.writeLong(l);
+                    this.closeHint(marked);
+                } catch (IOException e) {
+                    this.data.suppressed.add(e);
+                }
+            }
+        }
+
+        @Override
+        public void visitFloat(float f) {
+            if (this.data.suppressed.isEmpty()) {
+                try {
+                    boolean marked = this.openHint(TagType.FLOAT);
+                    if (Float.isFinite(f)) {
+                        this.data.writeFloat(f);
+                    } else {
+                        writeString(this.data, Float.toString(f)); // json has no literals for these
+                    }
+                    this.closeHint(marked);
+                } catch (IOException e) {
+                    this.data.suppressed.add(e);
+                }
+            }
+        }
+
+        @Override
+        public void visitDouble(double d) {
+            if (this.data.suppressed.isEmpty()) {
+                try {
+                    // the decimal point or exponent is always printed, which is what tells doubles from ints
+                    if (Double.isFinite(d)) {
+                        this.data.writeDouble(d);
+                        this.data.done();
+                    } else {
+                        boolean marked = this.openHint(TagType.DOUBLE);
+                        writeString(this.data, Double.toString(d));
+                        this.closeHint(marked);
+                    }
+                } catch (IOException e) {
+                    this.data.suppressed.add(e);
+                }
+            }
+        }
+
+        @Override
+        public void visitByteArray(ImmutableBytes bytes) {
+            if (this.data.suppressed.isEmpty()) {
+                try {
+                    boolean marked = this.openHint(TagType.BYTE_ARRAY);
+                    this.data.write('[');
+                    for (int i = 0, size = bytes.size(); i < size; ++i) {
+                        if (i > 0) {
+                            this.data.write(',');
+                        }
+                        this.data.writeLong(bytes.get(i));
+                    }
+                    this.data.write(']');
+                    this.closeHint(marked);
+                } catch (IOException e) {
+                    this.data.suppressed.add(e);
+                }
+            }
+        }
+
+        @Override
+        public void visitString(String s) {
+            if (this.data.suppressed.isEmpty()) {
+                try {
+                    writeString(this.data, s);
+                    this.data.done();
+                } catch (IOException e) {
+                    this.data.suppressed.add(e);
+                }
+            }
+        }
+
+        @Override
+        public TagListVisitor visitList() {
+            return new ListWriter(this);
+        }
+
+        @Override
+        public TagCompoundVisitor visitCompound() {
+            return new CompoundWriter(this);
+        }
+
+        @Override
+        public void visitIntArray(ImmutableInts ints) {
+            if (this.data.suppressed.isEmpty()) {
+                try {
+                    boolean marked = this.openHint(TagType.INT_ARRAY);
+                    this.data.write('[');
+                    for (int i = 0, size = ints.size(); i < size; ++i) {
+                        if (i > 0) {
+                            this.data.write(',');
+                        }
+                        this.data.writeLong(ints.get(i));
+                    }
+                    this.data.write(']');
+                    this.closeHint(marked);
+                } catch (IOException e) {
+                    this.data.suppressed.add(e);
+                }
+            }
+        }
+
+        @Override
+        public void visitLongArray(ImmutableLongs longs) {
+            if (this.data.suppressed.isEmpty()) {
+                try {
+                    boolean marked = this.openHint(TagType.LONG_ARRAY);
+                    this.data.write('[');
+                    for (int i = 0, size = longs.size(); i < size; ++i) {
+                        if (i > 0) {
+                            this.data.write(',');
+                        }
+                        this.data.writeLong(longs.get(i));
+                    }
+                    this.data.write(']');
+                    this.closeHint(marked);
+                } catch (IOException e) {
+                    this.data.suppressed.add(e);
+                }
+            }
+        }
+
+        private boolean openHint(TagType type) throws IOException {
+            if (!this.hints.isMarked()) {
+                return false;
+            }
+            this.data.write('{');
+            writeString(this.data, this.hints.getTypeKey());
+            this.data.write(':');
+            writeString(this.data, typeName(type));
+            this.data.write(',');
+            writeString(this.data, this.hints.getValueKey());
+            this.data.write(':');
+            return true;
+        }
+
+        private void closeHint(boolean marked) throws IOException {
+            if (marked) {
+                this.data.write('}');
+            }
+            this.data.done();
+        }
+    }
+
+    private static final class ListWriter extends TagListVisitor {
+
+        private boolean notFirst;
+
+        private final ValueWriter value; // stateless, so shared by every value
+        private final TextOutput data;
+
+        public ListWriter(ValueWriter value) {
+            super(null);
+            this.value = value;
+            this.data = value.data;
+            this.data.enter();
+        }
+
+        @Override
+        public TagValueVisitor visitValue() {
+            if (this.data.suppressed.isEmpty()) {
+                try {
+                    this.data.write(this.notFirst ? ',' : '[');
+                    this.notFirst = true;
+                } catch (IOException e) {
+                    this.data.suppressed.add(e);
+                }
+            }
+            return this.value;
+        }
+
+        @Override
+        public void visitEnd() {
+            if (this.data.suppressed.isEmpty()) {
+                try {
+                    this.data.write(this.notFirst ? "]" : "[]");
+                    this.data.exit();
+                } catch (IOException e) {
+                    this.data.suppressed.add(e);
+                }
+            }
+        }
+    }
+
+    private static final class CompoundWriter extends TagCompoundVisitor {
+
+        private boolean notFirst;
+        private boolean wrapped; // the first key looked like a type hint, so the compound itself got one
+
+        private final ValueWriter value;
+        private final TextOutput data;
+
+        public CompoundWriter(ValueWriter value) {
+            super(null);
+            this.value = value;
+            this.data = value.data;
+            this.data.enter();
+        }
+
+        @Override
+        public TagValueVisitor visit(String key) {
+            if (this.data.suppressed.isEmpty()) {
+                try {
+                    if (!this.notFirst) {
+                        this.wrapped = this.value.hints.isMarked() && key.equals(this.value.hints.getTypeKey());
+                        if (this.wrapped) {
+                            this.value.openHint(TagType.COMPOUND);
+                        }
+                    }
+                    this.data.write(this.notFirst ? ',' : '{');
+                    writeString(this.data, key);
+                    this.data.write(':');
+                    this.notFirst = true;
+                } catch (IOException e) {
+                    this.data.suppressed.add(e);
+                }
+            }
+            return this.value;
+        }
+
+        @Override
+        public void visitEnd() {
+            if (this.data.suppressed.isEmpty()) {
+                try {
+                    this.data.write(this.notFirst ? this.wrapped ? "}}" : "}" : "{}");
+                    this.data.exit();
+                } catch (IOException e) {
+                    this.data.suppressed.add(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package io.izzel.nbt.util;
+
+// how tag types survive in json: either not at all, or as {"@type":"long","@value":42} wrappers around values which
+// json cannot tell apart otherwise, with the type written first so readers know what follows before the value comes
+public final class JsonTypeHints {
+
+    private static final JsonTypeHints NONE = new JsonTypeHints(null, null);
+    private static final JsonTypeHints MARKED = new JsonTypeHints("@type", "@value");
+
+    private final String typeKey;
+    private final String valueKey;
+
+    private JsonTypeHints(String typeKey, String valueKey) {
+        this.typeKey = typeKey;
+        this.valueKey = valueKey;
+    }
+
+    public boolean isMarked() {
+        return this.typeKey != null;
+    }
+
+    public String getTypeKey() {
+        return this.typeKey;
+    }
+
+    public String getValueKey() {
+        return this.valueKey;
+    }
+
+    // plain json: integers read back as ints or longs, decimals as doubles, booleans as bytes, and arrays as lists
+    public static JsonTypeHints none() {
+        return NONE;
+    }
+
+    // lossless: ints, doubles, strings, lists and compounds stay plain, everything else is wrapped
+    public static JsonTypeHints marked() {
+        return MARKED;
+    }
+
+    public static JsonTypeHints marked(String typeKey, String valueKey) {
+        if (typeKey.equals(valueKey)) {
+            throw new IllegalArgumentException("Type and value keys must differ, got " + typeKey);
+        }
+        return new JsonTypeHints(typeKey, valueKey);
+    }
+
+    @Override
+    public String toString() {
+        return this.isMarked() ? "JsonTypeHints{" + this.typeKey + ", " + this.valueKey + "}" : "JsonTypeHints{none}";
+    }
+}
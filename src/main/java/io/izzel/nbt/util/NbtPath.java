@@ -0,0 +1,464 @@
+package io.izzel.nbt.util;
+
+import io.izzel.nbt.CompoundTag;
+import io.izzel.nbt.EndTag;
+import io.izzel.nbt.ListTag;
+import io.izzel.nbt.Tag;
+import io.izzel.nbt.TagType;
+import io.izzel.nbt.visitor.TagCompoundVisitor;
+import io.izzel.nbt.visitor.TagListVisitor;
+import io.izzel.nbt.visitor.TagValueVisitor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+public final class NbtPath {
+
+    private static final int NAME = 0;
+    private static final int INDEX = 1;
+    private static final int ALL = 2;
+    private static final int LIST_FILTER = 3;
+    private static final int COMPOUND_FILTER = 4;
+
+    private final String source;
+    private final int[] kinds;
+    private final Object[] arguments; // names, indices, or compound patterns
+    private final boolean single;
+
+    private NbtPath(String source, int[] kinds, Object[] arguments) {
+        boolean single = true;
+        for (int kind : kinds) {
+            single &= kind != ALL && kind != LIST_FILTER;
+        }
+        this.source = source;
+        this.kinds = kinds;
+        this.arguments = arguments;
+        this.single = single;
+    }
+
+    public Tag get(Tag tag, Tag fallback) {
+        if (!this.single) {
+            List<Tag> result = this.getAll(tag);
+            return result.isEmpty() ? fallback : result.get(0);
+        }
+        for (int i = 0; i < this.kinds.length && tag != null; ++i) {
+            tag = this.step(tag, i);
+        }
+        return tag != null ? tag : fallback;
+    }
+
+    public Tag getOrDefault(Tag tag) {
+        return this.get(tag, EndTag.of());
+    }
+
+    public List<Tag> getAll(Tag tag) {
+        return this.getAll(tag, 0);
+    }
+
+    public int count(Tag tag) {
+        return this.single ? this.get(tag, null) != null ? 1 : 0 : this.getAll(tag).size();
+    }
+
+    // only the compounds and lists on the way to the match are rebuilt, and an end tag result removes the match
+    public Tag update(Tag tag, UnaryOperator<Tag> function) {
+        return this.update(tag, 0, function, false);
+    }
+
+    public Tag updateAll(Tag tag, UnaryOperator<Tag> function) {
+        return this.update(tag, 0, function, true);
+    }
+
+    // every match is delivered to the same visitor, in the order they are read
+    public TagValueVisitor filter(TagValueVisitor target) {
+        return this.filter(target, 0);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || o instanceof NbtPath && this.source.equals(((NbtPath) o).source);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.source.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.source;
+    }
+
+    private Tag step(Tag tag, int i) {
+        switch (this.kinds[i]) {
+            case NAME: {
+                if (tag.getType() != TagType.COMPOUND) return null;
+                Tag child = ((CompoundTag) tag).get((String) this.arguments[i], EndTag.of());
+                return child.getType() != TagType.END ? child : null;
+            }
+            case INDEX: {
+                if (tag.getType() != TagType.LIST) return null;
+                ListTag list = (ListTag) tag;
+                int index = (Integer) this.arguments[i];
+                return list.get(index < 0 ? list.size() + index : index, null);
+            }
+            default: {
+                return matches((CompoundTag) this.arguments[i], tag) ? tag : null;
+            }
+        }
+    }
+
+    private List<Tag> getAll(Tag tag, int from) {
+        List<Tag> tags = Collections.singletonList(tag);
+        for (int i = from; i < this.kinds.length && !tags.isEmpty(); ++i) {
+            List<Tag> next = new ArrayList<>(tags.size());
+            for (Tag current : tags) {
+                switch (this.kinds[i]) {
+                    case ALL:
+                    case LIST_FILTER: {
+                        if (current.getType() == TagType.LIST) {
+                            ListTag list = (ListTag) current;
+                            for (int j = 0; j < list.size(); ++j) {
+                                Tag element = list.getOrDefault(j);
+                                if (this.kinds[i] == ALL || matches((CompoundTag) this.arguments[i], element)) {
+                                    next.add(element);
+                                }
+                            }
+                        }
+                        break;
+                    }
+                    default: {
+                        Tag child = this.step(current, i);
+                        if (child != null) next.add(child);
+                        break;
+                    }
+                }
+            }
+            tags = next;
+        }
+        return tags;
+    }
+
+    // recursion is bounded by the number of steps in the path, not by how deep the tag is
+    private Tag update(Tag tag, int i, UnaryOperator<Tag> function, boolean all) {
+        if (i == this.kinds.length) {
+            return Objects.requireNonNull(function.apply(tag));
+        }
+        switch (this.kinds[i]) {
+            case NAME: {
+                Tag child = this.step(tag, i);
+                if (child == null) {
+                    return tag;
+                }
+                Tag result = this.update(child, i + 1, function, all);
+                if (result == child) {
+                    return tag;
+                }
+                String name = (String) this.arguments[i];
+                CompoundTag.Builder builder = ((CompoundTag) tag).toBuilder(true);
+                return (result.getType() == TagType.END ? builder.remove(name) : builder.set(name, result)).build();
+            }
+            case INDEX: {
+                Tag child = this.step(tag, i);
+                if (child == null) {
+                    return tag;
+                }
+                Tag result = this.update(child, i + 1, function, all);
+                if (result == child) {
+                    return tag;
+                }
+                ListTag list = (ListTag) tag;
+                int index = (Integer) this.arguments[i];
+                index = index < 0 ? list.size() + index : index;
+                ListTag.Builder builder = list.toBuilder();
+                return (result.getType() == TagType.END ? builder.remove(index) : builder.set(index, result)).build();
+            }
+            case ALL:
+            case LIST_FILTER: {
+                if (tag.getType() != TagType.LIST) {
+                    return tag;
+                }
+                ListTag list = (ListTag) tag;
+                ListTag.Builder builder = null;
+                boolean done = false;
+                for (int j = 0; j < list.size(); ++j) {
+                    Tag element = list.getOrDefault(j), result = element;
+                    if (!done && (this.kinds[i] == ALL || matches((CompoundTag) this.arguments[i], element))) {
+                        // a single update goes to the first element the rest of the path resolves on
+                        if (all || this.resolves(element, i + 1)) {
+                            result = this.update(element, i + 1, function, all);
+                            done = !all;
+                        }
+                    }
+                    if (builder == null && result != element) {
+                        builder = ListTag.builder();
+                        for (int k = 0; k < j; ++k) {
+                            builder.add(list.getOrDefault(k));
+                        }
+                    }
+                    if (builder != null && result.getType() != TagType.END) {
+                        builder.add(result);
+                    }
+                }
+                return builder != null ? builder.build() : tag;
+            }
+            default: {
+                return matches((CompoundTag) this.arguments[i], tag) ? this.update(tag, i + 1, function, all) : tag;
+            }
+        }
+    }
+
+    private boolean resolves(Tag tag, int from) {
+        for (int i = from; i < this.kinds.length; ++i) {
+            if (this.kinds[i] == ALL || this.kinds[i] == LIST_FILTER) {
+                return !this.getAll(tag, i).isEmpty();
+            }
+            tag = this.step(tag, i);
+            if (tag == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private TagValueVisitor filter(TagValueVisitor target, int i) {
+        if (i == this.kinds.length) {
+            return target;
+        }
+        switch (this.kinds[i]) {
+            case NAME: {
+                String name = (String) this.arguments[i];
+                return new TagValueVisitor(null) {
+                    @Override
+                    public TagCompoundVisitor visitCompound() {
+                        return new TagCompoundVisitor(null) {
+                            @Override
+                            public TagValueVisitor visit(String key) {
+                                return name.equals(key) ? NbtPath.this.filter(target, i + 1) : super.visit(key);
+                            }
+                        };
+                    }
+                };
+            }
+            case INDEX:
+            case ALL:
+            case LIST_FILTER: {
+                return new TagValueVisitor(null) {
+                    @Override
+                    public TagListVisitor visitList() {
+                        return new TagListVisitor(null) {
+                            private int index = NbtPath.this.kinds[i] == INDEX ? (Integer) NbtPath.this.arguments[i] : 0;
+                            private int next;
+
+                            @Override
+                            public void visitLength(int length) {
+                                if (this.index < 0) this.index += length; // counting from the end
+                            }
+
+                            @Override
+                            public TagValueVisitor visitValue() {
+                                int current = this.next++;
+                                switch (NbtPath.this.kinds[i]) {
+                                    case INDEX:
+                                        return current == this.index ? NbtPath.this.filter(target, i + 1) : super.visitValue();
+                                    case ALL:
+                                        return NbtPath.this.filter(target, i + 1);
+                                    default:
+                                        return NbtPath.this.buffer(target, i);
+                                }
+                            }
+                        };
+                    }
+                };
+            }
+            default: {
+                return this.buffer(target, i);
+            }
+        }
+    }
+
+    // compound patterns can only be checked once the whole compound has been read
+    private TagValueVisitor buffer(TagValueVisitor target, int i) {
+        TagWriter writer = new TagWriter();
+        return new TagValueVisitor(null) {
+            @Override
+            public TagCompoundVisitor visitCompound() {
+                return new TagCompoundVisitor(writer.visitCompound()) {
+                    @Override
+                    public void visitEnd() {
+                        super.visitEnd();
+                        Tag tag = writer.getTag();
+                        if (matches((CompoundTag) NbtPath.this.arguments[i], tag)) {
+                            for (Tag result : NbtPath.this.getAll(tag, i + 1)) {
+                                new TagReader(result).accept(target);
+                            }
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    // the check is recursive, but never deeper than the pattern itself
+    private static boolean matches(CompoundTag pattern, Tag tag) {
+        if (tag.getType() != TagType.COMPOUND) {
+            return false;
+        }
+        CompoundTag compound = (CompoundTag) tag;
+        for (CompoundTag.Entry<?> entry : pattern.dump()) {
+            Tag value = compound.get(entry.getKey(), EndTag.of());
+            if (value.getType() == TagType.END || !matchesValue(entry.getValue(), value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesValue(Tag pattern, Tag tag) {
+        switch (pattern.getType()) {
+            case COMPOUND: {
+                return matches((CompoundTag) pattern, tag);
+            }
+            case LIST: {
+                if (tag.getType() != TagType.LIST) {
+                    return false;
+                }
+                ListTag patternList = (ListTag) pattern, list = (ListTag) tag;
+                if (patternList.size() == 0) {
+                    return list.size() == 0;
+                }
+                // every element of the pattern has to be matched by some element of the list
+                for (int i = 0; i < patternList.size(); ++i) {
+                    boolean found = false;
+                    for (int j = 0; j < list.size() && !found; ++j) {
+                        found = matchesValue(patternList.getOrDefault(i), list.getOrDefault(j));
+                    }
+                    if (!found) return false;
+                }
+                return true;
+            }
+            default: {
+                return pattern.equals(tag);
+            }
+        }
+    }
+
+    public static NbtPath compile(String path) {
+        List<Integer> kinds = new ArrayList<>();
+        List<Object> arguments = new ArrayList<>();
+        int length = path.length(), i = 0;
+        if (length == 0) {
+            throw new IllegalArgumentException("Empty nbt path");
+        }
+        while (true) {
+            char c = path.charAt(i);
+            if (c == '{') {
+                int end = endOfCompound(path, i);
+                kinds.add(COMPOUND_FILTER);
+                arguments.add(parseCompound(path, i, end));
+                i = end;
+            } else if (c != '[') {
+                int start = i;
+                String name;
+                if (c == '"' || c == '\'') {
+                    StringBuilder builder = new StringBuilder();
+                    for (++i; i < length && path.charAt(i) != c; ++i) {
+                        if (path.charAt(i) == '\\' && i + 1 < length) ++i;
+                        builder.append(path.charAt(i));
+                    }
+                    if (i++ >= length) {
+                        throw invalid(path, start, "unterminated quoted name");
+                    }
+                    name = builder.toString();
+                } else {
+                    while (i < length && ".[{ ".indexOf(path.charAt(i)) < 0) ++i;
+                    if (i == start) {
+                        throw invalid(path, start, "expected a name");
+                    }
+                    name = path.substring(start, i);
+                }
+                kinds.add(NAME);
+                arguments.add(name);
+                if (i < length && path.charAt(i) == '{') {
+                    int end = endOfCompound(path, i);
+                    kinds.add(COMPOUND_FILTER);
+                    arguments.add(parseCompound(path, i, end));
+                    i = end;
+                }
+            }
+            while (i < length && path.charAt(i) == '[') {
+                int start = i++;
+                if (i < length && path.charAt(i) == ']') {
+                    kinds.add(ALL);
+                    arguments.add(null);
+                } else if (i < length && path.charAt(i) == '{') {
+                    int end = endOfCompound(path, i);
+                    kinds.add(LIST_FILTER);
+                    arguments.add(parseCompound(path, i, end));
+                    i = end;
+                } else {
+                    int digits = i;
+                    if (i < length && path.charAt(i) == '-') ++i;
+                    while (i < length && Character.isDigit(path.charAt(i))) ++i;
+                    try {
+                        kinds.add(INDEX);
+                        arguments.add(Integer.parseInt(path.substring(digits, i)));
+                    } catch (NumberFormatException e) {
+                        throw invalid(path, start, "expected an index");
+                    }
+                }
+                if (i >= length || path.charAt(i) != ']') {
+                    throw invalid(path, start, "unterminated brackets");
+                }
+                ++i;
+            }
+            if (i == length) {
+                break;
+            }
+            if (path.charAt(i) != '.' || ++i == length) {
+                throw invalid(path, i, "expected a separator");
+            }
+        }
+        int[] kindArray = new int[kinds.size()];
+        for (int j = 0; j < kindArray.length; ++j) {
+            kindArray[j] = kinds.get(j);
+        }
+        return new NbtPath(path, kindArray, arguments.toArray());
+    }
+
+    private static int endOfCompound(String path, int start) {
+        int depth = 0;
+        char quote = 0;
+        for (int i = start; i < path.length(); ++i) {
+            char c = path.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') ++i;
+                else if (c == quote) quote = 0;
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '{' || c == '[') {
+                ++depth;
+            } else if ((c == '}' || c == ']') && --depth == 0) {
+                return i + 1;
+            }
+        }
+        throw invalid(path, start, "unterminated compound");
+    }
+
+    private static CompoundTag parseCompound(String path, int start, int end) {
+        try {
+            return new StringNbtReader(path.substring(start, end)).toCompoundTag();
+        } catch (IOException e) {
+            IllegalArgumentException exception = invalid(path, start, "malformed compound");
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    private static IllegalArgumentException invalid(String path, int position, String reason) {
+        return new IllegalArgumentException("Invalid nbt path at " + position + ", " + reason + ": " + path);
+    }
+}
@@ -14,8 +14,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
 import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
-import java.nio.LongBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -29,6 +27,8 @@ public class NbtReader implements Closeable {
     private final TagType tagType;
     private final String name;
 
+    private byte[] numberBuffer;
+
     public NbtReader(InputStream stream) throws IOException {
         this.data = stream instanceof DataInputStream ? (DataInputStream) stream : new DataInputStream(stream);
         this.tagType = nextType();
@@ -147,9 +147,13 @@ public class NbtReader implements Closeable {
                         int len = this.data.readInt();
                         if (tagType != TagType.END || len <= 0) {
                             TagListVisitor visitor = tagVisitor.visitList();
-                            stack[pointer++] = new ListContext(len, visitor, tagType);
                             visitor.visitType(tagType);
                             visitor.visitLength(len);
+                            if (this.readNumbers(visitor, tagType, len)) {
+                                visitor.visitEnd();
+                            } else {
+                                stack[pointer++] = new ListContext(len, visitor, tagType);
+                            }
                             break;
                         }
                         throw new IOException("List tags do not allow end tag values");
@@ -162,14 +166,13 @@ public class NbtReader implements Closeable {
                         int len = this.data.readInt();
                         if (len >= 0 && len <= 0x7FFFFFF7) {
                             byte[] bufferArray = new byte[8192];
+                            int[] values = new int[8192 / Integer.BYTES];
                             ImmutableInts.Builder builder = ImmutableInts.builder();
-                            IntBuffer buffer = ByteBuffer.wrap(bufferArray).asIntBuffer();
-                            for (int bufferLimit = buffer.limit(), offset = 0, bufferStep;
+                            for (int bufferLimit = values.length, offset = 0, bufferStep;
                                  (bufferStep = Math.min(bufferLimit, len - offset)) > 0; offset += bufferStep) {
-                                this.data.readFully(bufferArray, 0, 8192 * bufferStep / bufferLimit);
-                                buffer.limit(bufferStep);
-                                builder.add(buffer);
-                                buffer.clear();
+                                this.data.readFully(bufferArray, 0, bufferStep * Integer.BYTES);
+                                ArraySupport.getInts(bufferArray, 0, values, 0, bufferStep);
+                                builder.add(values, 0, bufferStep);
                             }
                             tagVisitor.visitIntArray(builder.build());
                             break;
@@ -180,14 +183,13 @@ public class NbtReader implements Closeable {
                         int len = this.data.readInt();
                         if (len >= 0 && len <= 0x7FFFFFF7) {
                             byte[] bufferArray = new byte[8192];
+                            long[] values = new long[8192 / Long.BYTES];
                             ImmutableLongs.Builder builder = ImmutableLongs.builder();
-                            LongBuffer buffer = ByteBuffer.wrap(bufferArray).asLongBuffer();
-                            for (int bufferLimit = buffer.limit(), offset = 0, bufferStep;
+                            for (int bufferLimit = values.length, offset = 0, bufferStep;
                                  (bufferStep = Math.min(bufferLimit, len - offset)) > 0; offset += bufferStep) {
-                                this.data.readFully(bufferArray, 0, 8192 * bufferStep / bufferLimit);
-                                buffer.limit(bufferStep);
-                                builder.add(buffer);
-                                buffer.clear();
+                                this.data.readFully(bufferArray, 0, bufferStep * Long.BYTES);
+                                ArraySupport.getLongs(bufferArray, 0, values, 0, bufferStep);
+                                builder.add(values, 0, bufferStep);
                             }
                             tagVisitor.visitLongArray(builder.build());
                             break;
@@ -220,6 +222,71 @@ public class NbtReader implements Closeable {
         }
     }
 
+    private boolean readNumbers(TagListVisitor visitor, TagType tagType, int len) throws IOException {
+        byte[] bufferArray = this.numberBuffer;
+        if (bufferArray == null) {
+            this.numberBuffer = bufferArray = new byte[8192];
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bufferArray);
+        switch (tagType) {
+            case BYTE: {
+                for (int offset = 0, bufferStep; (bufferStep = Math.min(8192, len - offset)) > 0; offset += bufferStep) {
+                    this.data.readFully(bufferArray, 0, bufferStep);
+                    visitor.visitByteValues(bufferArray, 0, bufferStep);
+                }
+                return true;
+            }
+            case SHORT: {
+                short[] values = new short[Math.max(0, Math.min(4096, len))];
+                for (int offset = 0, bufferStep; (bufferStep = Math.min(4096, len - offset)) > 0; offset += bufferStep) {
+                    this.data.readFully(bufferArray, 0, bufferStep * 2);
+                    buffer.asShortBuffer().get(values, 0, bufferStep);
+                    visitor.visitShortValues(values, 0, bufferStep);
+                }
+                return true;
+            }
+            case INT: {
+                int[] values = new int[Math.max(0, Math.min(2048, len))];
+                for (int offset = 0, bufferStep; (bufferStep = Math.min(2048, len - offset)) > 0; offset += bufferStep) {
+                    this.data.readFully(bufferArray, 0, bufferStep * 4);
+                    ArraySupport.getInts(bufferArray, 0, values, 0, bufferStep);
+                    visitor.visitIntValues(values, 0, bufferStep);
+                }
+                return true;
+            }
+            case LONG: {
+                long[] values = new long[Math.max(0, Math.min(1024, len))];
+                for (int offset = 0, bufferStep; (bufferStep = Math.min(1024, len - offset)) > 0; offset += bufferStep) {
+                    this.data.readFully(bufferArray, 0, bufferStep * 8);
+                    ArraySupport.getLongs(bufferArray, 0, values, 0, bufferStep);
+                    visitor.visitLongValues(values, 0, bufferStep);
+                }
+                return true;
+            }
+            case FLOAT: {
+                float[] values = new float[Math.max(0, Math.min(2048, len))];
+                for (int offset = 0, bufferStep; (bufferStep = Math.min(2048, len - offset)) > 0; offset += bufferStep) {
+                    this.data.readFully(bufferArray, 0, bufferStep * 4);
+                    buffer.asFloatBuffer().get(values, 0, bufferStep);
+                    visitor.visitFloatValues(values, 0, bufferStep);
+                }
+                return true;
+            }
+            case DOUBLE: {
+                double[] values = new double[Math.max(0, Math.min(1024, len))];
+                for (int offset = 0, bufferStep; (bufferStep = Math.min(1024, len - offset)) > 0; offset += bufferStep) {
+                    this.data.readFully(bufferArray, 0, bufferStep * 8);
+                    buffer.asDoubleBuffer().get(values, 0, bufferStep);
+                    visitor.visitDoubleValues(values, 0, bufferStep);
+                }
+                return true;
+            }
+            default: {
+                return false;
+            }
+        }
+    }
+
     private TagType nextType() throws IOException {
         try {
             return TagType.getById(this.data.readByte());
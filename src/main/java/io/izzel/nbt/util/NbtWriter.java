@@ -12,8 +12,9 @@ import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
-import java.nio.LongBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -63,7 +64,7 @@ public class NbtWriter extends TagValueVisitor implements Flushable, Closeable {
     }
 
     private NbtWriter(DataOutputStream data, String name, List<IOException> suppressed) {
-        super(new ValueWriter(data, name, suppressed));
+        super(new ValueWriter(data, name, suppressed, new Scratch()));
         this.suppressed = suppressed;
         this.data = data;
     }
@@ -73,12 +74,14 @@ public class NbtWriter extends TagValueVisitor implements Flushable, Closeable {
         private final List<IOException> suppressed;
         private final DataOutputStream data;
         private final String name;
+        private final Scratch scratch;
 
-        private ValueWriter(DataOutputStream data, String name, List<IOException> suppressed) {
+        private ValueWriter(DataOutputStream data, String name, List<IOException> suppressed, Scratch scratch) {
             super(null);
             this.name = name;
             this.data = data;
             this.suppressed = suppressed;
+            this.scratch = scratch;
         }
 
         @Override
@@ -171,12 +174,12 @@ public class NbtWriter extends TagValueVisitor implements Flushable, Closeable {
                     this.writePrefix(TagType.BYTE_ARRAY);
                     int len = bytes.size();
                     this.data.writeInt(len);
-                    byte[] bufferArray = new byte[8192];
+                    byte[] bufferArray = this.scratch.get(len, Byte.BYTES);
                     ByteBuffer buffer = ByteBuffer.wrap(bufferArray);
                     for (int bufferLimit = buffer.limit(), offset = 0, bufferStep;
                          (bufferStep = Math.min(bufferLimit, len - offset)) > 0; offset += bufferStep) {
                         buffer.put(ImmutableBytes.slice(bytes, offset, bufferStep).toByteArray());
-                        this.data.write(bufferArray, 0, 8192 * bufferStep / bufferLimit);
+                        this.data.write(bufferArray, 0, bufferStep * Byte.BYTES);
                         buffer.rewind();
                     }
                 } catch (IOException e) {
@@ -208,7 +211,7 @@ public class NbtWriter extends TagValueVisitor implements Flushable, Closeable {
                     this.suppressed.add(e);
                 }
             }
-            return new ListWriter(this.data, this.suppressed);
+            return new ListWriter(this.data, this.suppressed, this.scratch);
         }
 
         @Override
@@ -220,7 +223,7 @@ public class NbtWriter extends TagValueVisitor implements Flushable, Closeable {
                     this.suppressed.add(e);
                 }
             }
-            return new CompoundWriter(this.data, this.suppressed);
+            return new CompoundWriter(this.data, this.suppressed, this.scratch);
         }
 
         @Override
@@ -230,13 +233,11 @@ public class NbtWriter extends TagValueVisitor implements Flushable, Closeable {
                     this.writePrefix(TagType.INT_ARRAY);
                     int len = ints.size();
                     this.data.writeInt(len);
-                    byte[] bufferArray = new byte[8192];
-                    IntBuffer buffer = ByteBuffer.wrap(bufferArray).asIntBuffer();
-                    for (int bufferLimit = buffer.limit(), offset = 0, bufferStep;
+                    byte[] bufferArray = this.scratch.get(len, Integer.BYTES);
+                    for (int bufferLimit = bufferArray.length / Integer.BYTES, offset = 0, bufferStep;
                          (bufferStep = Math.min(bufferLimit, len - offset)) > 0; offset += bufferStep) {
-                        buffer.put(ImmutableInts.slice(ints, offset, bufferStep).toIntArray());
-                        this.data.write(bufferArray, 0, 8192 * bufferStep / bufferLimit);
-                        buffer.rewind();
+                        ints.encode(offset, bufferStep, bufferArray);
+                        this.data.write(bufferArray, 0, bufferStep * Integer.BYTES);
                     }
                 } catch (IOException e) {
                     this.suppressed.add(e);
@@ -251,13 +252,11 @@ public class NbtWriter extends TagValueVisitor implements Flushable, Closeable {
                     this.writePrefix(TagType.LONG_ARRAY);
                     int len = longs.size();
                     this.data.writeInt(len);
-                    byte[] bufferArray = new byte[8192];
-                    LongBuffer buffer = ByteBuffer.wrap(bufferArray).asLongBuffer();
-                    for (int bufferLimit = buffer.limit(), offset = 0, bufferStep;
+                    byte[] bufferArray = this.scratch.get(len, Long.BYTES);
+                    for (int bufferLimit = bufferArray.length / Long.BYTES, offset = 0, bufferStep;
                          (bufferStep = Math.min(bufferLimit, len - offset)) > 0; offset += bufferStep) {
-                        buffer.put(ImmutableLongs.slice(longs, offset, bufferStep).toLongArray());
-                        this.data.write(bufferArray, 0, 8192 * bufferStep / bufferLimit);
-                        buffer.rewind();
+                        longs.encode(offset, bufferStep, bufferArray);
+                        this.data.write(bufferArray, 0, bufferStep * Long.BYTES);
                     }
                 } catch (IOException e) {
                     this.suppressed.add(e);
@@ -282,11 +281,13 @@ public class NbtWriter extends TagValueVisitor implements Flushable, Closeable {
         private ByteArrayOutputStream tmp;
         private final DataOutputStream data;
         private final List<IOException> suppressed;
+        private final Scratch scratch;
 
-        public ListWriter(DataOutputStream data, List<IOException> suppressed) {
+        public ListWriter(DataOutputStream data, List<IOException> suppressed, Scratch scratch) {
             super(null);
             this.data = data;
             this.suppressed = suppressed;
+            this.scratch = scratch;
             this.tmp = new ByteArrayOutputStream(0); // TODO: nbt binary whose size is larger than 2GB
         }
 
@@ -320,7 +321,109 @@ public class NbtWriter extends TagValueVisitor implements Flushable, Closeable {
         @Override
         public TagValueVisitor visitValue() {
             DataOutputStream outputStream = this.tmp != null ? new DataOutputStream(this.tmp) : data;
-            return new ValueWriter(outputStream, null, this.suppressed);
+            return new ValueWriter(outputStream, null, this.suppressed, this.scratch);
+        }
+
+        @Override
+        public void visitByteValues(byte[] values, int offset, int length) {
+            if (this.suppressed.isEmpty()) {
+                try {
+                    (this.tmp != null ? this.tmp : this.data).write(values, offset, length);
+                } catch (IOException e) {
+                    this.suppressed.add(e);
+                }
+            }
+        }
+
+        @Override
+        public void visitShortValues(short[] values, int offset, int length) {
+            if (this.suppressed.isEmpty()) {
+                try {
+                    OutputStream outputStream = this.tmp != null ? this.tmp : this.data;
+                    byte[] bufferArray = this.scratch.get(length, Short.BYTES);
+                    ShortBuffer buffer = ByteBuffer.wrap(bufferArray).asShortBuffer();
+                    for (int bufferLimit = buffer.limit(), end = offset + length, bufferStep;
+                         (bufferStep = Math.min(bufferLimit, end - offset)) > 0; offset += bufferStep) {
+                        buffer.put(values, offset, bufferStep);
+                        outputStream.write(bufferArray, 0, bufferStep * Short.BYTES);
+                        buffer.rewind();
+                    }
+                } catch (IOException e) {
+                    this.suppressed.add(e);
+                }
+            }
+        }
+
+        @Override
+        public void visitIntValues(int[] values, int offset, int length) {
+            if (this.suppressed.isEmpty()) {
+                try {
+                    OutputStream outputStream = this.tmp != null ? this.tmp : this.data;
+                    byte[] bufferArray = this.scratch.get(length, Integer.BYTES);
+                    for (int bufferLimit = bufferArray.length / Integer.BYTES, end = offset + length, bufferStep;
+                         (bufferStep = Math.min(bufferLimit, end - offset)) > 0; offset += bufferStep) {
+                        ArraySupport.putInts(values, offset, bufferArray, 0, bufferStep);
+                        outputStream.write(bufferArray, 0, bufferStep * Integer.BYTES);
+                    }
+                } catch (IOException e) {
+                    this.suppressed.add(e);
+                }
+            }
+        }
+
+        @Override
+        public void visitLongValues(long[] values, int offset, int length) {
+            if (this.suppressed.isEmpty()) {
+                try {
+                    OutputStream outputStream = this.tmp != null ? this.tmp : this.data;
+                    byte[] bufferArray = this.scratch.get(length, Long.BYTES);
+                    for (int bufferLimit = bufferArray.length / Long.BYTES, end = offset + length, bufferStep;
+                         (bufferStep = Math.min(bufferLimit, end - offset)) > 0; offset += bufferStep) {
+                        ArraySupport.putLongs(values, offset, bufferArray, 0, bufferStep);
+                        outputStream.write(bufferArray, 0, bufferStep * Long.BYTES);
+                    }
+                } catch (IOException e) {
+                    this.suppressed.add(e);
+                }
+            }
+        }
+
+        @Override
+        public void visitFloatValues(float[] values, int offset, int length) {
+            if (this.suppressed.isEmpty()) {
+                try {
+                    OutputStream outputStream = this.tmp != null ? this.tmp : this.data;
+                    byte[] bufferArray = this.scratch.get(length, Float.BYTES);
+                    FloatBuffer buffer = ByteBuffer.wrap(bufferArray).asFloatBuffer();
+                    for (int bufferLimit = buffer.limit(), end = offset + length, bufferStep;
+                         (bufferStep = Math.min(bufferLimit, end - offset)) > 0; offset += bufferStep) {
+                        buffer.put(values, offset, bufferStep);
+                        outputStream.write(bufferArray, 0, bufferStep * Float.BYTES);
+                        buffer.rewind();
+                    }
+                } catch (IOException e) {
+                    this.suppressed.add(e);
+                }
+            }
+        }
+
+        @Override
+        public void visitDoubleValues(double[] values, int offset, int length) {
+            if (this.suppressed.isEmpty()) {
+                try {
+                    OutputStream outputStream = this.tmp != null ? this.tmp : this.data;
+                    byte[] bufferArray = this.scratch.get(length, Double.BYTES);
+                    DoubleBuffer buffer = ByteBuffer.wrap(bufferArray).asDoubleBuffer();
+                    for (int bufferLimit = buffer.limit(), end = offset + length, bufferStep;
+                         (bufferStep = Math.min(bufferLimit, end - offset)) > 0; offset += bufferStep) {
+                        buffer.put(values, offset, bufferStep);
+                        outputStream.write(bufferArray, 0, bufferStep * Double.BYTES);
+                        buffer.rewind();
+                    }
+                } catch (IOException e) {
+                    this.suppressed.add(e);
+                }
+            }
         }
     }
 
@@ -328,16 +431,18 @@ public class NbtWriter extends TagValueVisitor implements Flushable, Closeable {
 
         private final DataOutputStream data;
         private final List<IOException> suppressed;
+        private final Scratch scratch;
 
-        public CompoundWriter(DataOutputStream data, List<IOException> suppressed) {
+        public CompoundWriter(DataOutputStream data, List<IOException> suppressed, Scratch scratch) {
             super(null);
             this.data = data;
             this.suppressed = suppressed;
+            this.scratch = scratch;
         }
 
         @Override
         public TagValueVisitor visit(String key) {
-            return new ValueWriter(this.data, key, this.suppressed);
+            return new ValueWriter(this.data, key, this.suppressed, this.scratch);
         }
 
         @Override
@@ -351,4 +456,18 @@ public class NbtWriter extends TagValueVisitor implements Flushable, Closeable {
             }
         }
     }
+
+    // shared by all the nested writers, and only as large as the largest value written so far needs
+    private static final class Scratch {
+
+        private byte[] bytes = new byte[0];
+
+        private byte[] get(int length, int width) {
+            int size = (int) Math.min((long) length * width, 8192);
+            if (this.bytes.length < size) {
+                this.bytes = new byte[size];
+            }
+            return this.bytes;
+        }
+    }
 }
@@ -0,0 +1,100 @@
+package io.izzel.nbt.util;
+
+import java.util.Arrays;
+
+public final class Nibbles {
+
+    private final ImmutableBytes bytes; // two entries per byte, the even one in the lower half as light arrays store them
+
+    private Nibbles(ImmutableBytes bytes) {
+        this.bytes = bytes;
+    }
+
+    public ImmutableBytes getBytes() {
+        return this.bytes;
+    }
+
+    public int size() {
+        return this.bytes.size() * 2;
+    }
+
+    public int get(int index) {
+        if (index < 0 || index >= this.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size());
+        }
+        return this.bytes.get(index >> 1) >> ((index & 1) << 2) & 0xF;
+    }
+
+    public Nibbles with(int index, int value) {
+        if (index < 0 || index >= this.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size());
+        }
+        checkValue(value);
+        byte[] array = this.bytes.toByteArray();
+        int shift = (index & 1) << 2;
+        array[index >> 1] = (byte) (array[index >> 1] & ~(0xF << shift) | value << shift);
+        return new Nibbles(ImmutableBytes.wrap(array));
+    }
+
+    public int[] unpack() {
+        int[] values = new int[this.size()];
+        this.unpack(values, 0);
+        return values;
+    }
+
+    public void unpack(int[] values, int offset) {
+        int size = this.bytes.size();
+        if (offset < 0 || offset > values.length - size * 2) {
+            throw new IndexOutOfBoundsException("Index: " + offset + ", Size: " + values.length);
+        }
+        byte[] array = this.bytes.array();
+        int arrayOffset = this.bytes.arrayOffset();
+        if (array == null) {
+            array = this.bytes.toByteArray();
+            arrayOffset = 0;
+        }
+        for (int i = arrayOffset, j = offset, end = i + size; i < end; ++i, j += 2) {
+            values[j] = array[i] & 0xF;
+            values[j + 1] = array[i] >> 4 & 0xF;
+        }
+    }
+
+    public static Nibbles of(ImmutableBytes bytes) {
+        return new Nibbles(bytes);
+    }
+
+    public static Nibbles pack(int[] values) {
+        return pack(values, 0, values.length);
+    }
+
+    public static Nibbles pack(int[] values, int offset, int length) {
+        byte[] array = new byte[(length + 1) >> 1];
+        for (int i = 0; i < length; ++i) {
+            int value = values[offset + i];
+            checkValue(value);
+            array[i >> 1] |= (byte) (value << ((i & 1) << 2));
+        }
+        return new Nibbles(ImmutableBytes.wrap(array));
+    }
+
+    private static void checkValue(int value) {
+        if ((value >>> 4) != 0) {
+            throw new IllegalArgumentException("Value " + value + " does not fit in a nibble");
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || o instanceof Nibbles && this.bytes.equals(((Nibbles) o).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.bytes.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(this.unpack());
+    }
+}
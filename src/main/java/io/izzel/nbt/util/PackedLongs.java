@@ -0,0 +1,249 @@
+package io.izzel.nbt.util;
+
+import java.util.Arrays;
+
+public final class PackedLongs {
+
+    private final ImmutableLongs longs;
+    private final int bits;
+    private final int size;
+    private final boolean padded; // entries never span two longs, as chunks are stored since 1.16
+
+    private PackedLongs(ImmutableLongs longs, int bits, int size, boolean padded) {
+        if (bits < 1 || bits > 32) {
+            throw new IllegalArgumentException("Bits per entry must be between 1 and 32, got " + bits);
+        }
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative size: " + size);
+        }
+        int required = requiredLongs(bits, size, padded);
+        if (longs.size() < required) {
+            throw new IllegalArgumentException("Expect at least " + required + " longs for " + size + " entries of " + bits + " bits, got " + longs.size());
+        }
+        this.longs = longs;
+        this.bits = bits;
+        this.size = size;
+        this.padded = padded;
+    }
+
+    public ImmutableLongs getLongs() {
+        return this.longs;
+    }
+
+    public int getBits() {
+        return this.bits;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isPadded() {
+        return this.padded;
+    }
+
+    public int get(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+        ImmutableLongs longs = this.longs;
+        int bits = this.bits;
+        long mask = (1L << bits) - 1;
+        if (this.padded) {
+            int perLong = 64 / bits, i = index / perLong;
+            return (int) (longs.get(i) >>> (index - i * perLong) * bits & mask);
+        }
+        long bitIndex = (long) index * bits;
+        int i = (int) (bitIndex >>> 6), shift = (int) (bitIndex & 63);
+        long word = longs.get(i) >>> shift;
+        if (shift + bits > 64) {
+            word |= longs.get(i + 1) << (64 - shift);
+        }
+        return (int) (word & mask);
+    }
+
+    public PackedLongs with(int index, int value) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+        checkValue(value, this.bits);
+        long[] array = this.longs.toLongArray();
+        int bits = this.bits;
+        long mask = (1L << bits) - 1, entry = value & mask;
+        if (this.padded) {
+            int perLong = 64 / bits, i = index / perLong, shift = (index - i * perLong) * bits;
+            array[i] = array[i] & ~(mask << shift) | entry << shift;
+        } else {
+            long bitIndex = (long) index * bits;
+            int i = (int) (bitIndex >>> 6), shift = (int) (bitIndex & 63);
+            array[i] = array[i] & ~(mask << shift) | entry << shift;
+            if (shift + bits > 64) {
+                int rest = 64 - shift;
+                array[i + 1] = array[i + 1] & ~(mask >>> rest) | entry >>> rest;
+            }
+        }
+        return new PackedLongs(ImmutableLongs.wrap(array), bits, this.size, this.padded);
+    }
+
+    public int[] unpack() {
+        int[] values = new int[this.size];
+        this.unpack(values, 0);
+        return values;
+    }
+
+    public void unpack(int[] values, int offset) {
+        if (offset < 0 || offset > values.length - this.size) {
+            throw new IndexOutOfBoundsException("Index: " + offset + ", Size: " + values.length);
+        }
+        long[] array = this.longs.array();
+        int arrayOffset = this.longs.arrayOffset();
+        if (array == null) {
+            // off-heap words are copied once, the bulk loops below only work on arrays
+            array = this.longs.toLongArray();
+            arrayOffset = 0;
+        }
+        if (!this.padded) {
+            unpackSpanning(array, arrayOffset, this.bits, values, offset, this.size);
+            return;
+        }
+        // constant widths let the compiler unroll the inner loop once the method is inlined
+        switch (this.bits) {
+            case 1:
+                unpackPadded(array, arrayOffset, 1, values, offset, this.size);
+                break;
+            case 2:
+                unpackPadded(array, arrayOffset, 2, values, offset, this.size);
+                break;
+            case 4:
+                unpackPadded(array, arrayOffset, 4, values, offset, this.size);
+                break;
+            case 5:
+                unpackPadded(array, arrayOffset, 5, values, offset, this.size);
+                break;
+            case 6:
+                unpackPadded(array, arrayOffset, 6, values, offset, this.size);
+                break;
+            case 8:
+                unpackPadded(array, arrayOffset, 8, values, offset, this.size);
+                break;
+            case 9:
+                unpackPadded(array, arrayOffset, 9, values, offset, this.size);
+                break;
+            default:
+                unpackPadded(array, arrayOffset, this.bits, values, offset, this.size);
+                break;
+        }
+    }
+
+    public PackedLongs repack(int bits, boolean padded) {
+        return bits == this.bits && padded == this.padded ? this : pack(this.unpack(), bits, padded);
+    }
+
+    public static PackedLongs padded(ImmutableLongs longs, int bits, int size) {
+        return new PackedLongs(longs, bits, size, true);
+    }
+
+    public static PackedLongs spanning(ImmutableLongs longs, int bits, int size) {
+        return new PackedLongs(longs, bits, size, false);
+    }
+
+    public static PackedLongs pack(int[] values, int bits, boolean padded) {
+        return pack(values, 0, values.length, bits, padded);
+    }
+
+    public static PackedLongs pack(int[] values, int offset, int length, int bits, boolean padded) {
+        if (bits < 1 || bits > 32) {
+            throw new IllegalArgumentException("Bits per entry must be between 1 and 32, got " + bits);
+        }
+        long[] array = new long[requiredLongs(bits, length, padded)];
+        long mask = (1L << bits) - 1;
+        if (padded) {
+            int perLong = 64 / bits;
+            for (int i = 0, j = offset, end = offset + length; j < end; ++i) {
+                long word = 0;
+                for (int k = 0, shift = 0; k < perLong && j < end; ++k, ++j, shift += bits) {
+                    checkValue(values[j], bits);
+                    word |= (values[j] & mask) << shift;
+                }
+                array[i] = word;
+            }
+        } else {
+            long bitIndex = 0;
+            for (int j = offset, end = offset + length; j < end; ++j, bitIndex += bits) {
+                checkValue(values[j], bits);
+                long entry = values[j] & mask;
+                int i = (int) (bitIndex >>> 6), shift = (int) (bitIndex & 63);
+                array[i] |= entry << shift;
+                if (shift + bits > 64) {
+                    array[i + 1] |= entry >>> (64 - shift);
+                }
+            }
+        }
+        return new PackedLongs(ImmutableLongs.wrap(array), bits, length, padded);
+    }
+
+    public static int requiredLongs(int bits, int size, boolean padded) {
+        if (padded) {
+            int perLong = 64 / bits;
+            return (size + perLong - 1) / perLong;
+        }
+        return (int) (((long) size * bits + 63) >>> 6);
+    }
+
+    private static void unpackPadded(long[] array, int arrayOffset, int bits, int[] values, int offset, int size) {
+        int perLong = 64 / bits, whole = size / perLong;
+        long mask = (1L << bits) - 1;
+        for (int i = 0, j = offset; i < whole; ++i) {
+            long word = array[arrayOffset + i];
+            for (int k = 0; k < perLong; ++k, ++j) {
+                values[j] = (int) (word >>> k * bits & mask);
+            }
+        }
+        int rest = size - whole * perLong;
+        if (rest > 0) {
+            long word = array[arrayOffset + whole];
+            for (int k = 0, j = offset + whole * perLong; k < rest; ++k, ++j) {
+                values[j] = (int) (word >>> k * bits & mask);
+            }
+        }
+    }
+
+    private static void unpackSpanning(long[] array, int arrayOffset, int bits, int[] values, int offset, int size) {
+        long mask = (1L << bits) - 1;
+        long bitIndex = 0;
+        for (int j = offset, end = offset + size; j < end; ++j, bitIndex += bits) {
+            int i = arrayOffset + (int) (bitIndex >>> 6), shift = (int) (bitIndex & 63);
+            long word = array[i] >>> shift;
+            if (shift + bits > 64) {
+                word |= array[i + 1] << (64 - shift);
+            }
+            values[j] = (int) (word & mask);
+        }
+    }
+
+    private static void checkValue(int value, int bits) {
+        if (bits < 32 && (value >>> bits) != 0) {
+            throw new IllegalArgumentException("Value " + value + " does not fit in " + bits + " bits");
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (o instanceof PackedLongs) {
+            PackedLongs that = (PackedLongs) o;
+            return this.size == that.size && Arrays.equals(this.unpack(), that.unpack());
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.unpack());
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(this.unpack());
+    }
+}
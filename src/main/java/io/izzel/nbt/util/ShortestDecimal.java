@@ -0,0 +1,234 @@
+package io.izzel.nbt.util;
+
+import java.math.BigInteger;
+
+// the shortest decimal that reads back as the same value, laid out as Float.toString and Double.toString do,
+// following the schubfach algorithm by raffaello giulietti, which is also what java 19 and later use
+final class ShortestDecimal {
+
+    private static final int K_MIN = -324, K_MAX = 292;
+    private static final long MASK_63 = (1L << 63) - 1;
+
+    private static final long[] POW10 = new long[18];
+    private static final long[] G = new long[(K_MAX - K_MIN + 1) << 1]; // 10^-k as 126 bits, the upper and the lower 63
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; ++i) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+        for (int k = K_MIN; k <= K_MAX; ++k) {
+            // scaled into [2^125, 2^126), then rounded up
+            int shift = 125 - flog2pow10(-k);
+            BigInteger g = k <= 0 ? BigInteger.TEN.pow(-k) : BigInteger.ONE.shiftLeft(shift).divide(BigInteger.TEN.pow(k));
+            if (k <= 0) {
+                g = shift >= 0 ? g.shiftLeft(shift) : g.shiftRight(-shift);
+            }
+            g = g.add(BigInteger.ONE);
+            G[(k - K_MIN) << 1] = g.shiftRight(63).longValue();
+            G[((k - K_MIN) << 1) + 1] = g.longValue() & MASK_63;
+        }
+    }
+
+    private ShortestDecimal() {
+    }
+
+    static final int MAX_LENGTH = 24; // -2.2250738585072014E-308
+
+    static int format(double v, char[] dst, int at) {
+        long bits = Double.doubleToRawLongBits(v);
+        long t = bits & (1L << 52) - 1;
+        int bq = (int) (bits >>> 52) & 0x7FF;
+        if (bq == 0x7FF) {
+            return special(t != 0, bits < 0, dst, at);
+        }
+        if (bits < 0) {
+            dst[at++] = '-';
+        }
+        if (bq != 0) {
+            int mq = 1075 - bq;
+            long c = 1L << 52 | t;
+            if (0 < mq && mq < 53) {
+                // small integers are exact, and no shorter decimal can be closer than half their ulp
+                long f = c >> mq;
+                if (f << mq == c) {
+                    return toChars(f, 0, dst, at);
+                }
+            }
+            return toDecimal(-mq, c, 0, t != 0 || bq == 1, dst, at);
+        }
+        if (t != 0) {
+            // the tiniest subnormals are scaled up to leave enough digits to choose from
+            return t < 3 ? toDecimal(-1074, 10 * t, -1, true, dst, at) : toDecimal(-1074, t, 0, true, dst, at);
+        }
+        return zero(dst, at);
+    }
+
+    static int format(float v, char[] dst, int at) {
+        int bits = Float.floatToRawIntBits(v);
+        int t = bits & (1 << 23) - 1;
+        int bq = bits >>> 23 & 0xFF;
+        if (bq == 0xFF) {
+            return special(t != 0, bits < 0, dst, at);
+        }
+        if (bits < 0) {
+            dst[at++] = '-';
+        }
+        if (bq != 0) {
+            int mq = 150 - bq;
+            int c = 1 << 23 | t;
+            if (0 < mq && mq < 24) {
+                int f = c >> mq;
+                if (f << mq == c) {
+                    return toChars(f, 0, dst, at);
+                }
+            }
+            return toDecimal(-mq, c, 0, t != 0 || bq == 1, dst, at);
+        }
+        if (t != 0) {
+            return t < 8 ? toDecimal(-149, 10 * t, -1, true, dst, at) : toDecimal(-149, t, 0, true, dst, at);
+        }
+        return zero(dst, at);
+    }
+
+    // c 2^q is the value, with its neighbours equally far apart unless c is the smallest significand of a binade
+    private static int toDecimal(int q, long c, int dk, boolean regular, char[] dst, int at) {
+        int out = (int) c & 1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (regular) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+        long g1 = G[(k - K_MIN) << 1], g0 = G[((k - K_MIN) << 1) + 1];
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+        long s = vb >> 2;
+        if (s >= 100) {
+            // one digit less, if exactly one of the two candidates is inside the rounding interval
+            long sp10 = s / 10 * 10;
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                return toChars(upin ? sp10 : tp10, k, dst, at);
+            }
+        }
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            return toChars(uin ? s : t, k + dk, dst, at);
+        }
+        // both or neither are inside, so the closer one wins, and the even one on ties
+        long cmp = vb - (s + t << 1);
+        return toChars(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk, dst, at);
+    }
+
+    // g cp / 2^128 rounded to odd
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = ArraySupport.multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = ArraySupport.multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+    private static int flog10pow2(int e) {
+        return (int) (e * 661_971_961_083L >> 41);
+    }
+
+    private static int flog10threeQuartersPow2(int e) {
+        return (int) (e * 661_971_961_083L - 274_743_187_321L >> 41);
+    }
+
+    private static int flog2pow10(int e) {
+        return (int) (e * 913_124_641_741L >> 38);
+    }
+
+    // f 10^e, plain between 10^-3 and 10^7 and computerized scientific notation elsewhere
+    private static int toChars(long f, int e, char[] dst, int at) {
+        while (f % 10 == 0) {
+            f /= 10;
+            e += 1;
+        }
+        int length = length(f);
+        int exponent = length + e - 1;
+        if (exponent >= 0 && exponent < 7) {
+            if (length <= exponent + 1) {
+                at = digits(f, length, dst, at);
+                for (int i = length; i <= exponent; ++i) {
+                    dst[at++] = '0';
+                }
+                dst[at++] = '.';
+                dst[at++] = '0';
+            } else {
+                long p = POW10[length - exponent - 1];
+                at = digits(f / p, exponent + 1, dst, at);
+                dst[at++] = '.';
+                at = digits(f % p, length - exponent - 1, dst, at);
+            }
+        } else if (exponent < 0 && exponent >= -3) {
+            dst[at++] = '0';
+            dst[at++] = '.';
+            for (int i = exponent; i < -1; ++i) {
+                dst[at++] = '0';
+            }
+            at = digits(f, length, dst, at);
+        } else {
+            long p = POW10[length - 1];
+            at = digits(f / p, 1, dst, at);
+            dst[at++] = '.';
+            if (length > 1) {
+                at = digits(f % p, length - 1, dst, at);
+            } else {
+                dst[at++] = '0';
+            }
+            dst[at++] = 'E';
+            if (exponent < 0) {
+                dst[at++] = '-';
+                exponent = -exponent;
+            }
+            at = digits(exponent, length(exponent), dst, at);
+        }
+        return at;
+    }
+
+    private static int length(long f) {
+        int length = 1;
+        while (length < POW10.length && f >= POW10[length]) {
+            length += 1;
+        }
+        return length;
+    }
+
+    // written backwards, so leading zeros are kept
+    private static int digits(long value, int length, char[] dst, int at) {
+        for (int i = at + length - 1; i >= at; --i) {
+            dst[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return at + length;
+    }
+
+    private static int special(boolean nan, boolean negative, char[] dst, int at) {
+        String s = nan ? "NaN" : negative ? "-Infinity" : "Infinity";
+        s.getChars(0, s.length(), dst, at);
+        return at + s.length();
+    }
+
+    private static int zero(char[] dst, int at) {
+        dst[at++] = '0';
+        dst[at++] = '.';
+        dst[at++] = '0';
+        return at;
+    }
+}
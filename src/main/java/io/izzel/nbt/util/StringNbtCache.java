@@ -0,0 +1,147 @@
+package io.izzel.nbt.util;
+
+import io.izzel.nbt.CompoundTag;
+import io.izzel.nbt.Tag;
+import io.izzel.nbt.TagType;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+public class StringNbtCache {
+
+    private final Segment[] segments; // each one a small lru map behind its own lock
+    private final int maximumSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public StringNbtCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive, got " + maximumSize);
+        }
+        int count = 1;
+        while (count < 16 && count * 32 <= maximumSize) {
+            count <<= 1; // small caches keep a single segment, so the least recently used entry is exact
+        }
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; ++i) {
+            this.segments[i] = new Segment(maximumSize / count + (i < maximumSize % count ? 1 : 0), this.evictions);
+        }
+        this.maximumSize = maximumSize;
+    }
+
+    public Tag parse(String snbt) throws IOException {
+        Segment segment = this.segmentFor(snbt);
+        Tag tag;
+        synchronized (segment) {
+            tag = segment.get(snbt);
+        }
+        if (tag != null) {
+            this.hits.increment();
+            return tag;
+        }
+        this.misses.increment();
+        // parsed outside the lock, tags are immutable so whichever racing result lands first is shared
+        Tag parsed = new StringNbtReader(snbt).toTag();
+        synchronized (segment) {
+            tag = segment.putIfAbsent(snbt, parsed);
+        }
+        return tag != null ? tag : parsed;
+    }
+
+    public CompoundTag parseCompound(String snbt) throws IOException {
+        Tag tag = this.parse(snbt);
+        if (tag.getType() != TagType.COMPOUND) {
+            throw new IOException("Expect " + TagType.COMPOUND.getTagName() + " but got " + tag.getType());
+        }
+        return (CompoundTag) tag;
+    }
+
+    public void invalidate(String snbt) {
+        Segment segment = this.segmentFor(snbt);
+        synchronized (segment) {
+            segment.remove(snbt);
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public int getMaximumSize() {
+        return this.maximumSize;
+    }
+
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return this.evictions.sum();
+    }
+
+    public double getHitRate() {
+        long hits = this.hits.sum(), total = hits + this.misses.sum();
+        return total == 0 ? 1.0 : (double) hits / total;
+    }
+
+    public void resetStatistics() {
+        this.hits.reset();
+        this.misses.reset();
+        this.evictions.reset();
+    }
+
+    private Segment segmentFor(String snbt) {
+        int hash = snbt.hashCode();
+        return this.segments[(hash ^ hash >>> 16) & this.segments.length - 1];
+    }
+
+    @Override
+    public String toString() {
+        return "StringNbtCache{size=" + this.size() + ", hits=" + this.getHitCount() + ", misses=" + this.getMissCount() + ", evictions=" + this.getEvictionCount() + "}";
+    }
+
+    private static final class Segment extends LinkedHashMap<String, Tag> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private final LongAdder evictions;
+
+        private Segment(int capacity, LongAdder evictions) {
+            super(16, 0.75f, true); // access order, so the eldest entry is the least recently used
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Tag> eldest) {
+            if (this.size() > this.capacity) {
+                this.evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
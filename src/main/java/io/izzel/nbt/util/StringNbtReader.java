@@ -18,57 +18,109 @@ import io.izzel.nbt.visitor.TagValueVisitor;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
-import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class StringNbtReader implements Closeable {
 
-    private static final Pattern SPECIAL = Pattern.compile("(true|false)");
+    private static final double[] DOUBLE_POWERS = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final float[] FLOAT_POWERS = {
+            1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
 
-    private static final Pattern FLOATING = Pattern.compile("(NaN|[-+]?Infinity|[-+]?(?:[0-9]+[.]|[0-9]*[.][0-9]+)(?:[eE][-+]?[0-9]+)?)");
-    private static final Pattern INTEGER = Pattern.compile("([-+]?(?:0|[1-9][0-9]*))");
+    private final Reader data; // refills the buffer in chunks, or null if the whole input is in the buffer
 
-    private static final Pattern DOUBLE = Pattern.compile("(NaN|[-+]?Infinity|[-+]?(?:[0-9]+[.]?|[0-9]*[.][0-9]+)(?:e[-+]?[0-9]+)?)[dD]");
-    private static final Pattern FLOAT = Pattern.compile("(NaN|[-+]?Infinity|[-+]?(?:[0-9]+[.]?|[0-9]*[.][0-9]+)(?:e[-+]?[0-9]+)?)[fF]");
-    private static final Pattern LONG = Pattern.compile("([-+]?(?:0|[1-9][0-9]*))[lL]");
-    private static final Pattern SHORT = Pattern.compile("([-+]?(?:0|[1-9][0-9]*))[sS]");
-    private static final Pattern BYTE = Pattern.compile("([-+]?(?:0|[1-9][0-9]*))[bB]");
-
-    private final Reader data;
+    private char[] buffer;
+    private int position;
+    private int limit;
 
     private boolean eof;
     private int pointer;
     private char peek;
 
+    private char[] token = new char[32]; // the last unquoted token, reused to avoid building strings for numbers
+    private int tokenLength;
+
+    private boolean slots; // templates mark slots as strings starting with \0, which may stand for any type
+
     public StringNbtReader(Reader data) throws IOException {
-        if (data.markSupported()) {
-            this.data = data;
-            this.pointer = -1;
-            this.peek = this.readNextChar();
-        } else {
-            throw new IOException("The string nbt reader requires a reader which supports the mark operation");
+        this.data = data;
+        this.buffer = new char[8192];
+        this.pointer = -1;
+        this.peek = this.readNextChar();
+    }
+
+    public StringNbtReader(InputStream stream) throws IOException {
+        this(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    }
+
+    // the array is read in place, so it must not be modified while parsing
+    public StringNbtReader(char[] chars, int offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset > chars.length - length) {
+            throw new IndexOutOfBoundsException("Index: " + offset + ", Length: " + length + ", Size: " + chars.length);
         }
+        this.data = null;
+        this.buffer = chars;
+        this.position = offset;
+        this.limit = offset + length;
+        this.pointer = -1;
+        this.peek = this.readNextChar();
+    }
+
+    public StringNbtReader(char[] chars) throws IOException {
+        this(chars, 0, chars.length);
+    }
+
+    public StringNbtReader(CharSequence chars) throws IOException {
+        this(chars instanceof String ? ((String) chars).toCharArray() : chars.toString().toCharArray());
     }
 
     public StringNbtReader(String string) throws IOException {
-        this(new StringReader(string));
+        this(string.toCharArray());
+    }
+
+    // utf-8 input, decoded at once
+    public StringNbtReader(ByteBuffer bytes) throws IOException {
+        this(StandardCharsets.UTF_8.newDecoder().decode(bytes));
+    }
+
+    public StringNbtReader(byte[] bytes) throws IOException {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    private StringNbtReader(CharBuffer chars) throws IOException {
+        this(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
     }
 
     public void accept(TagValueVisitor visitor) throws IOException {
-        this.read(new ValueContext(visitor, TagType.END));
+        this.read(new ValueContext(visitor, null));
+    }
+
+    // slots are let through list and array type checks, and visitors must implement SlotVisitor for arrays with slots
+    void acceptTemplate(TagValueVisitor visitor) throws IOException {
+        this.slots = true;
+        this.accept(visitor);
+        this.readUntilEOF();
     }
 
     @Override
     public void close() throws IOException {
-        this.data.close();
+        if (this.data != null) {
+            this.data.close();
+        }
     }
 
     public Tag toTag() throws IOException {
@@ -131,62 +183,50 @@ public class StringNbtReader implements Closeable {
             Object context = stack[--pointer];
             if (context instanceof ValueContext) {
                 char c = this.readCharAfterSpaces();
-                TagType requiredTagType = ((ValueContext) context).tagType;
+                ListContext list = ((ValueContext) context).list;
                 if (c == '{') {
-                    if (requiredTagType != TagType.END && requiredTagType != TagType.COMPOUND) {
-                        throw this.error(ParseFailureException.Type.MIXED_TAG_TYPES_IN_LIST);
-                    }
+                    this.checkListType(list, TagType.COMPOUND);
                     stack[pointer++] = new CompoundContext(((ValueContext) context).tagVisitor.visitCompound());
                     this.readNextChar();
                     continue;
                 }
                 if (c == '[') {
-                    stack[pointer++] = new ArrayStartContext(((ValueContext) context).tagVisitor, requiredTagType);
+                    stack[pointer++] = new ArrayStartContext(((ValueContext) context).tagVisitor, list);
                     this.readNextChar();
                     continue;
                 }
                 if (c == '\'' || c == '\"') {
-                    if (requiredTagType != TagType.END && requiredTagType != TagType.STRING) {
-                        throw this.error(ParseFailureException.Type.MIXED_TAG_TYPES_IN_LIST);
+                    if (!this.isSlot()) {
+                        this.checkListType(list, TagType.STRING);
                     }
                     this.readString(((ValueContext) context).tagVisitor);
                     continue;
                 }
                 Tag tag = this.readNumberOrString(TagType.INT, TagType.DOUBLE, pointer <= 0);
-                if (requiredTagType != TagType.END && requiredTagType != tag.getType()) {
-                    throw this.error(ParseFailureException.Type.MIXED_TAG_TYPES_IN_LIST);
-                }
+                this.checkListType(list, tag.getType());
                 tag.accept(((ValueContext) context).tagVisitor);
             } else if (context instanceof ArrayStartContext) {
-                TagType requiredTagType = ((ArrayStartContext) context).tagType;
+                ListContext list = ((ArrayStartContext) context).list;
                 char c = this.peek;
                 if (c == 'B') {
-                    if (requiredTagType != TagType.END && requiredTagType != TagType.BYTE_ARRAY) {
-                        throw this.error(ParseFailureException.Type.MIXED_TAG_TYPES_IN_LIST);
-                    }
+                    this.checkListType(list, TagType.BYTE_ARRAY);
                     this.readByteArrayPart(((ArrayStartContext) context).tagVisitor);
                     this.readNextChar();
                     continue;
                 }
                 if (c == 'I') {
-                    if (requiredTagType != TagType.END && requiredTagType != TagType.INT_ARRAY) {
-                        throw this.error(ParseFailureException.Type.MIXED_TAG_TYPES_IN_LIST);
-                    }
+                    this.checkListType(list, TagType.INT_ARRAY);
                     this.readIntArrayPart(((ArrayStartContext) context).tagVisitor);
                     this.readNextChar();
                     continue;
                 }
                 if (c == 'L') {
-                    if (requiredTagType != TagType.END && requiredTagType != TagType.LONG_ARRAY) {
-                        throw this.error(ParseFailureException.Type.MIXED_TAG_TYPES_IN_LIST);
-                    }
+                    this.checkListType(list, TagType.LONG_ARRAY);
                     this.readLongArrayPart(((ArrayStartContext) context).tagVisitor);
                     this.readNextChar();
                     continue;
                 }
-                if (requiredTagType != TagType.END && requiredTagType != TagType.LIST) {
-                    throw this.error(ParseFailureException.Type.MIXED_TAG_TYPES_IN_LIST);
-                }
+                this.checkListType(list, TagType.LIST);
                 c = this.readCharAfterSpaces();
                 TagListVisitor listVisitor = ((ArrayStartContext) context).tagVisitor.visitList();
                 if (c == '{') {
@@ -227,7 +267,7 @@ public class StringNbtReader implements Closeable {
                     if (pointer >= stack.length) {
                         stack = Arrays.copyOf(stack, stack.length * 2 + 1);
                     }
-                    stack[pointer++] = new ArrayStartContext(listVisitor.visitValue(), TagType.END);
+                    stack[pointer++] = new ArrayStartContext(listVisitor.visitValue(), null);
                     continue;
                 }
                 if (c == ']') {
@@ -238,9 +278,10 @@ public class StringNbtReader implements Closeable {
                     continue;
                 }
                 if (c == '\'' || c == '\"') {
-                    listVisitor.visitType(TagType.STRING);
+                    TagType type = this.isSlot() ? TagType.END : TagType.STRING; // settled by the first element which is not a slot
+                    listVisitor.visitType(type);
                     this.readString(listVisitor.visitValue());
-                    stack[pointer++] = new ListContext(listVisitor, TagType.STRING);
+                    stack[pointer++] = new ListContext(listVisitor, type);
                     continue;
                 }
                 Tag tag = this.readNumberOrString(TagType.INT, TagType.DOUBLE, false);
@@ -263,7 +304,7 @@ public class StringNbtReader implements Closeable {
                 if (++pointer >= stack.length) {
                     stack = Arrays.copyOf(stack, stack.length * 2 + 1);
                 }
-                stack[pointer++] = new ValueContext(tagVisitor.visitValue(), ((ListContext) context).tagType);
+                stack[pointer++] = new ValueContext(tagVisitor.visitValue(), (ListContext) context);
                 this.readNextChar();
             } else if (context instanceof CompoundContext) {
                 char c = this.readCharAfterSpaces();
@@ -289,11 +330,14 @@ public class StringNbtReader implements Closeable {
                 if (++pointer >= stack.length) {
                     stack = Arrays.copyOf(stack, stack.length * 2 + 1);
                 }
-                stack[pointer++] = new ValueContext(valueVisitor, TagType.END);
+                stack[pointer++] = new ValueContext(valueVisitor, null);
                 this.readNextChar();
             }
         }
-        this.data.reset();
+        // the character after the value is left for the next read
+        if (!this.eof) {
+            --this.position;
+        }
         this.eof = false;
         --this.pointer;
     }
@@ -302,23 +346,33 @@ public class StringNbtReader implements Closeable {
         this.readNextChar();
         this.readNextChar();
         ImmutableBytes.Builder builder = ImmutableBytes.builder();
-        while (true) {
+        String[] slots = null;
+        for (int i = 0; ; ++i) {
             this.readCharAfterSpaces();
-            Tag tag = this.readNumberOrString(TagType.BYTE, TagType.END, false);
-            if (tag.getType() == TagType.BYTE) {
-                builder.add(((ByteTag) tag).getByte());
-                char c = this.readCharAfterSpaces();
-                if (c == ',') {
-                    this.readNextChar();
-                    continue;
+            if (this.isSlot()) {
+                slots = withSlot(slots, i, this.readStringPart());
+                builder.add((byte) 0);
+                this.readNextChar();
+            } else {
+                Tag tag = this.readNumberOrString(TagType.BYTE, TagType.END, false);
+                if (tag.getType() != TagType.BYTE) {
+                    throw this.error(ParseFailureException.Type.INVALID_NUMBER_TYPE_IN_BYTE_ARRAY);
                 }
-                if (c == ']') {
-                    visitor.visitByteArray(builder.build());
-                    return;
+                builder.add(((ByteTag) tag).getByte());
+            }
+            char c = this.readCharAfterSpaces();
+            if (c == ',') {
+                this.readNextChar();
+                continue;
+            }
+            if (c == ']') {
+                if (slots != null) {
+                    ((SlotVisitor) visitor).visitArraySlots(Arrays.copyOf(slots, i + 1));
                 }
-                throw this.error(ParseFailureException.Type.UNRECOGNIZED_VALUE_SEPARATOR);
+                visitor.visitByteArray(builder.build());
+                return;
             }
-            throw this.error(ParseFailureException.Type.INVALID_NUMBER_TYPE_IN_BYTE_ARRAY);
+            throw this.error(ParseFailureException.Type.UNRECOGNIZED_VALUE_SEPARATOR);
         }
     }
 
@@ -326,23 +380,33 @@ public class StringNbtReader implements Closeable {
         this.readNextChar();
         this.readNextChar();
         ImmutableInts.Builder builder = ImmutableInts.builder();
-        while (true) {
+        String[] slots = null;
+        for (int i = 0; ; ++i) {
             this.readCharAfterSpaces();
-            Tag tag = this.readNumberOrString(TagType.INT, TagType.END, false);
-            if (tag.getType() == TagType.INT) {
-                builder.add(((IntTag) tag).getInt());
-                char c = this.readCharAfterSpaces();
-                if (c == ',') {
-                    this.readNextChar();
-                    continue;
+            if (this.isSlot()) {
+                slots = withSlot(slots, i, this.readStringPart());
+                builder.add(0);
+                this.readNextChar();
+            } else {
+                Tag tag = this.readNumberOrString(TagType.INT, TagType.END, false);
+                if (tag.getType() != TagType.INT) {
+                    throw this.error(ParseFailureException.Type.INVALID_NUMBER_TYPE_IN_INT_ARRAY);
                 }
-                if (c == ']') {
-                    visitor.visitIntArray(builder.build());
-                    return;
+                builder.add(((IntTag) tag).getInt());
+            }
+            char c = this.readCharAfterSpaces();
+            if (c == ',') {
+                this.readNextChar();
+                continue;
+            }
+            if (c == ']') {
+                if (slots != null) {
+                    ((SlotVisitor) visitor).visitArraySlots(Arrays.copyOf(slots, i + 1));
                 }
-                throw this.error(ParseFailureException.Type.UNRECOGNIZED_VALUE_SEPARATOR);
+                visitor.visitIntArray(builder.build());
+                return;
             }
-            throw this.error(ParseFailureException.Type.INVALID_NUMBER_TYPE_IN_INT_ARRAY);
+            throw this.error(ParseFailureException.Type.UNRECOGNIZED_VALUE_SEPARATOR);
         }
     }
 
@@ -350,92 +414,281 @@ public class StringNbtReader implements Closeable {
         this.readNextChar();
         this.readNextChar();
         ImmutableLongs.Builder builder = ImmutableLongs.builder();
-        while (true) {
+        String[] slots = null;
+        for (int i = 0; ; ++i) {
             this.readCharAfterSpaces();
-            Tag tag = this.readNumberOrString(TagType.LONG, TagType.END, false);
-            if (tag.getType() == TagType.LONG) {
-                builder.add(((LongTag) tag).getLong());
-                char c = this.readCharAfterSpaces();
-                if (c == ',') {
-                    this.readNextChar();
-                    continue;
+            if (this.isSlot()) {
+                slots = withSlot(slots, i, this.readStringPart());
+                builder.add(0L);
+                this.readNextChar();
+            } else {
+                Tag tag = this.readNumberOrString(TagType.LONG, TagType.END, false);
+                if (tag.getType() != TagType.LONG) {
+                    throw this.error(ParseFailureException.Type.INVALID_NUMBER_TYPE_IN_LONG_ARRAY);
                 }
-                if (c == ']') {
-                    visitor.visitLongArray(builder.build());
-                    return;
+                builder.add(((LongTag) tag).getLong());
+            }
+            char c = this.readCharAfterSpaces();
+            if (c == ',') {
+                this.readNextChar();
+                continue;
+            }
+            if (c == ']') {
+                if (slots != null) {
+                    ((SlotVisitor) visitor).visitArraySlots(Arrays.copyOf(slots, i + 1));
                 }
-                throw this.error(ParseFailureException.Type.UNRECOGNIZED_VALUE_SEPARATOR);
+                visitor.visitLongArray(builder.build());
+                return;
             }
-            throw this.error(ParseFailureException.Type.INVALID_NUMBER_TYPE_IN_LONG_ARRAY);
+            throw this.error(ParseFailureException.Type.UNRECOGNIZED_VALUE_SEPARATOR);
         }
     }
 
     private Tag readNumberOrString(TagType integerHint, TagType floatingHint, boolean allowEmpty) throws IOException {
-        String s = this.readUnquotedString(allowEmpty);
-        try {
-            Matcher matcher;
-            TagType tagType = TagType.END;
-            if ((matcher = SPECIAL.matcher(s)).matches()) {
-                return ByteTag.of(Boolean.parseBoolean(matcher.group(1)));
-            } else if ((matcher = DOUBLE.matcher(s)).matches()) {
-                tagType = TagType.DOUBLE;
-            } else if ((matcher = FLOAT.matcher(s)).matches()) {
-                tagType = TagType.FLOAT;
-            } else if ((matcher = LONG.matcher(s)).matches()) {
-                tagType = TagType.LONG;
-            } else if ((matcher = SHORT.matcher(s)).matches()) {
-                tagType = TagType.SHORT;
-            } else if ((matcher = BYTE.matcher(s)).matches()) {
-                tagType = TagType.BYTE;
-            } else if ((matcher = FLOATING.matcher(s)).matches()) {
-                tagType = floatingHint;
-            } else if ((matcher = INTEGER.matcher(s)).matches()) {
-                tagType = integerHint;
-            }
-            switch (tagType) {
-                case BYTE:
-                    return ByteTag.of(Byte.parseByte(matcher.group(1)));
-                case SHORT:
-                    return ShortTag.of(Short.parseShort(matcher.group(1)));
-                case INT:
-                    return IntTag.of(Integer.parseInt(matcher.group(1)));
-                case LONG:
-                    return LongTag.of(Long.parseLong(matcher.group(1)));
-                case FLOAT:
-                    return FloatTag.of(Float.parseFloat(matcher.group(1)));
-                case DOUBLE:
-                    return DoubleTag.of(Double.parseDouble(matcher.group(1)));
-            }
-            throw new NumberFormatException();
-        } catch (NumberFormatException e) {
-            return s.isEmpty() ? EndTag.of() : StringTag.of(s);
+        this.readUnquoted(allowEmpty);
+        char[] token = this.token;
+        int length = this.tokenLength;
+        Tag tag = scanNumber(token, length, integerHint, floatingHint);
+        if (tag != null) {
+            return tag;
         }
+        return length == 0 ? EndTag.of() : StringTag.of(new String(token, 0, length));
     }
 
-    private String readUnquotedString(boolean allowEmpty) throws IOException {
-        StringBuilder sb = new StringBuilder();
-        char c = this.peek;
-        while (true) {
-            if (c >= '0' && c <= '9' || c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z') {
-                sb.append(c);
-                c = this.readNextChar();
-                continue;
+    // classifies and converts a token in one pass, accepting what the vanilla patterns accept
+    private static Tag scanNumber(char[] s, int length, TagType integerHint, TagType floatingHint) {
+        if (length == 0) {
+            return null;
+        }
+        char last = s[length - 1];
+        switch (last) {
+            case 'e':
+                if (length == 4 && s[0] == 't' && s[1] == 'r' && s[2] == 'u') {
+                    return ByteTag.of(true);
+                }
+                if (length == 5 && s[0] == 'f' && s[1] == 'a' && s[2] == 'l' && s[3] == 's') {
+                    return ByteTag.of(false);
+                }
+                return null;
+            case 'd':
+            case 'D':
+                return scanFloating(s, 0, length - 1, TagType.DOUBLE, true);
+            case 'f':
+            case 'F':
+                return scanFloating(s, 0, length - 1, TagType.FLOAT, true);
+            case 'l':
+            case 'L':
+                return scanInteger(s, 0, length - 1, TagType.LONG);
+            case 's':
+            case 'S':
+                return scanInteger(s, 0, length - 1, TagType.SHORT);
+            case 'b':
+            case 'B':
+                return scanInteger(s, 0, length - 1, TagType.BYTE);
+            default:
+                Tag tag = scanInteger(s, 0, length, integerHint);
+                return tag != null ? tag : scanFloating(s, 0, length, floatingHint, false);
+        }
+    }
+
+    static Tag scanInteger(char[] s, int from, int to, TagType type) {
+        long limit;
+        switch (type) {
+            case BYTE:
+                limit = Byte.MIN_VALUE;
+                break;
+            case SHORT:
+                limit = Short.MIN_VALUE;
+                break;
+            case INT:
+                limit = Integer.MIN_VALUE;
+                break;
+            case LONG:
+                limit = Long.MIN_VALUE;
+                break;
+            default:
+                return null;
+        }
+        int i = from;
+        boolean negative = false;
+        if (i < to && (s[i] == '-' || s[i] == '+')) {
+            negative = s[i++] == '-';
+        }
+        if (i >= to || s[i] == '0' && i + 1 < to) {
+            return null;
+        }
+        if (!negative) {
+            limit += 1; // the negated maximum
+        }
+        // accumulated as a negative number, which has the larger range
+        long result = 0, min = limit / 10;
+        for (; i < to; ++i) {
+            int digit = s[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return null;
             }
-            if (c == '_' || c == '-' || c == '.' || c == '+') {
-                sb.append(c);
-                c = this.readNextChar();
-                continue;
+            if (result < min) {
+                return null;
             }
-            if (sb.length() > 0 || allowEmpty) {
-                return sb.toString();
+            result *= 10;
+            if (result < limit + digit) {
+                return null;
             }
+            result -= digit;
+        }
+        long value = negative ? result : -result;
+        switch (type) {
+            case BYTE:
+                return ByteTag.of((byte) value);
+            case SHORT:
+                return ShortTag.of((short) value);
+            case INT:
+                return IntTag.of((int) value);
+            default:
+                return LongTag.of(value);
+        }
+    }
+
+    // suffixed numbers may omit the dot, plain ones need it, and both take either case of exponent as the writer prints an upper case one
+    static Tag scanFloating(char[] s, int from, int to, TagType type, boolean suffixed) {
+        if (type != TagType.FLOAT && type != TagType.DOUBLE) {
+            return null;
+        }
+        int i = from;
+        boolean signed = false, negative = false;
+        if (i < to && (s[i] == '-' || s[i] == '+')) {
+            signed = true;
+            negative = s[i++] == '-';
+        }
+        if (matches(s, i, to, "Infinity")) {
+            double value = negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+            return type == TagType.FLOAT ? FloatTag.of((float) value) : DoubleTag.of(value);
+        }
+        if (!signed && matches(s, i, to, "NaN")) {
+            return type == TagType.FLOAT ? FloatTag.of(Float.NaN) : DoubleTag.of(Double.NaN);
+        }
+        long mantissa = 0;
+        int exponent = 0, integerDigits = 0, fractionDigits = 0;
+        boolean dot = false, truncated = false;
+        for (; i < to; ++i) {
+            char c = s[i];
+            if (c >= '0' && c <= '9') {
+                if (dot) {
+                    ++fractionDigits;
+                } else {
+                    ++integerDigits;
+                }
+                if (mantissa < 100_000_000_000_000_000L) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    exponent -= dot ? 1 : 0;
+                } else {
+                    truncated |= c != '0';
+                    exponent += dot ? 0 : 1;
+                }
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                break;
+            }
+        }
+        if (suffixed ? integerDigits == 0 && fractionDigits == 0 : !dot || integerDigits == 0 && fractionDigits == 0) {
+            return null;
+        }
+        if (i < to && (s[i] == 'e' || s[i] == 'E')) {
+            boolean negativeExponent = false;
+            if (++i < to && (s[i] == '-' || s[i] == '+')) {
+                negativeExponent = s[i++] == '-';
+            }
+            if (i >= to) {
+                return null;
+            }
+            int value = 0;
+            for (; i < to; ++i) {
+                int digit = s[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    return null;
+                }
+                value = Math.min(value * 10 + digit, 100_000); // far beyond any finite value
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if (i < to) {
+            return null;
+        }
+        // exact operands with a single rounding give the correctly rounded result, anything else is left to the jdk
+        if (type == TagType.FLOAT) {
+            float value;
+            if (!truncated && mantissa <= 1 << 24 && exponent >= -10 && exponent <= 10) {
+                value = exponent < 0 ? mantissa / FLOAT_POWERS[-exponent] : mantissa * FLOAT_POWERS[exponent];
+            } else {
+                value = Float.parseFloat(new String(s, from, to - from));
+            }
+            return FloatTag.of(negative ? -Math.abs(value) : value);
+        } else {
+            double value;
+            if (!truncated && mantissa <= 1L << 53 && exponent >= -22 && exponent <= 22) {
+                value = exponent < 0 ? mantissa / DOUBLE_POWERS[-exponent] : mantissa * DOUBLE_POWERS[exponent];
+            } else {
+                value = Double.parseDouble(new String(s, from, to - from));
+            }
+            return DoubleTag.of(negative ? -Math.abs(value) : value);
+        }
+    }
+
+    private static boolean matches(char[] s, int from, int to, String literal) {
+        if (to - from != literal.length()) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); ++i) {
+            if (s[from + i] != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void readUnquoted(boolean allowEmpty) throws IOException {
+        char[] token = this.token;
+        int length = 0;
+        char c = this.peek;
+        while (isUnquoted(c)) {
+            // the rest of the run is copied straight from the buffer
+            char[] buffer = this.buffer;
+            int start = this.position, end = start, limit = this.limit;
+            while (end < limit && isUnquoted(buffer[end])) {
+                ++end;
+            }
+            if (length + 1 + end - start > token.length) {
+                this.token = token = Arrays.copyOf(token, Math.max(length * 2, length + 1 + end - start));
+            }
+            token[length++] = c;
+            System.arraycopy(buffer, start, token, length, end - start);
+            length += end - start;
+            this.pointer += end - start;
+            this.position = end;
+            c = this.readNextChar();
+        }
+        this.tokenLength = length;
+        if (length == 0 && !allowEmpty) {
             this.readCharAfterSpaces();
             throw this.error(ParseFailureException.Type.UNRECOGNIZED_VALUE_REPRESENTATION);
         }
     }
 
+    private static boolean isUnquoted(char c) {
+        return c >= '0' && c <= '9' || c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c == '_' || c == '-' || c == '.' || c == '+';
+    }
+
+    private String readUnquotedString(boolean allowEmpty) throws IOException {
+        this.readUnquoted(allowEmpty);
+        return new String(this.token, 0, this.tokenLength);
+    }
+
     private TagValueVisitor readKey(TagCompoundVisitor visitor) throws IOException {
         char c = this.peek;
+        if (this.isSlot()) {
+            throw this.error(ParseFailureException.Type.UNEXPECTED_SLOT);
+        }
         if (c == '\'' || c == '\"') {
             final TagValueVisitor tagVisitor = visitor.visit(this.readStringPart());
             this.readNextChar();
@@ -444,6 +697,31 @@ public class StringNbtReader implements Closeable {
         return visitor.visit(this.readUnquotedString(false));
     }
 
+    // lists take the type of their first element, or in templates of the first one which is not a slot
+    private void checkListType(ListContext list, TagType type) throws ParseFailureException {
+        if (list != null) {
+            if (list.tagType == TagType.END) {
+                list.tagType = type;
+            } else if (list.tagType != type) {
+                throw this.error(ParseFailureException.Type.MIXED_TAG_TYPES_IN_LIST);
+            }
+        }
+    }
+
+    private boolean isSlot() {
+        return this.slots && this.peek == '"' && this.position < this.limit && this.buffer[this.position] == StringNbtTemplate.MARKER;
+    }
+
+    private static String[] withSlot(String[] slots, int index, String slot) {
+        if (slots == null) {
+            slots = new String[Math.max(8, index + 1)];
+        } else if (index >= slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(slots.length * 2, index + 1));
+        }
+        slots[index] = slot;
+        return slots;
+    }
+
     private void readString(TagValueVisitor visitor) throws IOException {
         visitor.visitString(this.readStringPart());
         this.readNextChar();
@@ -453,6 +731,14 @@ public class StringNbtReader implements Closeable {
         StringBuilder sb = new StringBuilder();
         char quote = this.peek;
         while (true) {
+            char[] buffer = this.buffer;
+            int start = this.position, end = start, limit = this.limit;
+            while (end < limit && buffer[end] != quote && buffer[end] != '\\') {
+                ++end;
+            }
+            sb.append(buffer, start, end - start);
+            this.pointer += end - start;
+            this.position = end;
             char c = this.readNextChar();
             if (c == quote) {
                 return sb.toString();
@@ -478,6 +764,13 @@ public class StringNbtReader implements Closeable {
     private char readCharAfterSpaces() throws IOException {
         char c = this.peek;
         while (Character.isWhitespace(c)) {
+            char[] buffer = this.buffer;
+            int start = this.position, end = start, limit = this.limit;
+            while (end < limit && Character.isWhitespace(buffer[end])) {
+                ++end;
+            }
+            this.pointer += end - start;
+            this.position = end;
             c = this.readNextChar();
         }
         return c;
@@ -486,43 +779,62 @@ public class StringNbtReader implements Closeable {
     private char readNextChar() throws IOException {
         if (!this.eof) {
             ++this.pointer;
-            this.data.mark(1);
-            int i = this.data.read();
-            if (i < 0) {
-                this.eof = true;
-                return this.peek = 0;
+            if (this.position < this.limit || this.fill()) {
+                return this.peek = this.buffer[this.position++];
             }
-            return this.peek = (char) i;
+            this.eof = true;
+            return this.peek = 0;
         }
         throw this.error(ParseFailureException.Type.UNEXPECTED_EOF);
     }
 
+    private boolean fill() throws IOException {
+        if (this.data != null) {
+            // the last character stays in front, as it is pushed back after each value
+            char[] buffer = this.buffer;
+            int keep = this.position > 0 ? 1 : 0;
+            if (keep > 0) {
+                buffer[0] = buffer[this.position - 1];
+            }
+            int count;
+            do {
+                count = this.data.read(buffer, keep, buffer.length - keep);
+            } while (count == 0);
+            if (count > 0) {
+                this.position = keep;
+                this.limit = keep + count;
+                return true;
+            }
+        }
+        return false;
+    }
+
     private ParseFailureException error(ParseFailureException.Type type) {
         return new ParseFailureException(this.pointer, type);
     }
 
     private static final class ValueContext {
-        private final TagType tagType;
+        private final ListContext list; // the list this value is an element of, or null
         private final TagValueVisitor tagVisitor;
 
-        private ValueContext(TagValueVisitor tagVisitor, TagType tagType) {
-            this.tagType = tagType;
+        private ValueContext(TagValueVisitor tagVisitor, ListContext list) {
+            this.list = list;
             this.tagVisitor = tagVisitor;
         }
     }
 
     private static final class ArrayStartContext {
-        private final TagType tagType;
+        private final ListContext list;
         private final TagValueVisitor tagVisitor;
 
-        private ArrayStartContext(TagValueVisitor tagVisitor, TagType tagType) {
-            this.tagType = tagType;
+        private ArrayStartContext(TagValueVisitor tagVisitor, ListContext list) {
+            this.list = list;
             this.tagVisitor = tagVisitor;
         }
     }
 
     private static final class ListContext {
-        private final TagType tagType;
+        private TagType tagType;
         private final TagListVisitor tagVisitor;
         private final AtomicInteger collectedTagCount;
 
@@ -543,6 +855,12 @@ public class StringNbtReader implements Closeable {
         }
     }
 
+    // receives which elements of the next array are slots, the array itself has zeros in their places
+    interface SlotVisitor {
+
+        void visitArraySlots(String[] slots);
+    }
+
     public static final class ParseFailureException extends IOException {
         private final int position;
         private final Type type;
@@ -570,7 +888,8 @@ public class StringNbtReader implements Closeable {
             MIXED_TAG_TYPES_IN_LIST("Mixed tag types in a list tag"),
             INVALID_NUMBER_TYPE_IN_BYTE_ARRAY("Number not allowed occurred in a byte array"),
             INVALID_NUMBER_TYPE_IN_INT_ARRAY("Number not allowed occurred in an integer array"),
-            INVALID_NUMBER_TYPE_IN_LONG_ARRAY("Number not allowed occurred in an long integer array");
+            INVALID_NUMBER_TYPE_IN_LONG_ARRAY("Number not allowed occurred in an long integer array"),
+            UNEXPECTED_SLOT("Template slots are only allowed as values");
 
             private final String message;
 
@@ -0,0 +1,480 @@
+package io.izzel.nbt.util;
+
+import io.izzel.nbt.ByteArrayTag;
+import io.izzel.nbt.ByteTag;
+import io.izzel.nbt.CompoundTag;
+import io.izzel.nbt.IntArrayTag;
+import io.izzel.nbt.IntTag;
+import io.izzel.nbt.ListTag;
+import io.izzel.nbt.LongArrayTag;
+import io.izzel.nbt.LongTag;
+import io.izzel.nbt.Tag;
+import io.izzel.nbt.TagType;
+import io.izzel.nbt.visitor.TagCompoundVisitor;
+import io.izzel.nbt.visitor.TagListVisitor;
+import io.izzel.nbt.visitor.TagValueVisitor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public final class StringNbtTemplate {
+
+    static final char MARKER = '\u0000'; // starts the string each slot is parsed as, which templates may not contain
+
+    private final String source;
+    private final Node root; // subtrees without slots are kept as constant tags, shared by every result
+    private final Set<String> slots;
+
+    private StringNbtTemplate(String source, Node root, Set<String> slots) {
+        this.source = source;
+        this.root = root;
+        this.slots = Collections.unmodifiableSet(slots);
+    }
+
+    public Set<String> getSlots() {
+        return this.slots;
+    }
+
+    public Tag toTag(Map<String, ? extends Tag> values) {
+        this.check(values);
+        return this.root.toTag(values);
+    }
+
+    public CompoundTag toCompoundTag(Map<String, ? extends Tag> values) {
+        Tag tag = this.toTag(values);
+        if (tag.getType() != TagType.COMPOUND) {
+            throw new IllegalArgumentException("Expect " + TagType.COMPOUND.getTagName() + " but got " + tag.getType());
+        }
+        return (CompoundTag) tag;
+    }
+
+    public void accept(TagValueVisitor visitor, Map<String, ? extends Tag> values) {
+        this.check(values);
+        this.root.accept(visitor, values);
+    }
+
+    private void check(Map<String, ? extends Tag> values) {
+        for (String slot : this.slots) {
+            Tag value = values.get(slot);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing value for slot $" + slot);
+            }
+            if (value.getType() == TagType.END) {
+                throw new IllegalArgumentException("Slot $" + slot + " does not allow end tag values");
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.source;
+    }
+
+    public static StringNbtTemplate compile(String template) throws IOException {
+        // every $slot becomes a string "\0<index>", and positions of parse failures are mapped back afterwards
+        int marker = template.indexOf(MARKER);
+        if (marker >= 0) {
+            throw new IllegalArgumentException("Templates may not contain \\u0000, found at position " + marker);
+        }
+        List<String> names = new ArrayList<>();
+        List<int[]> spans = new ArrayList<>(); // original start and length, rewritten start and length
+        StringBuilder builder = new StringBuilder(template.length() + 16);
+        for (int i = 0, length = template.length(); i < length; ) {
+            char c = template.charAt(i);
+            if (c == '"' || c == '\'') {
+                int end = i + 1;
+                while (end < length && template.charAt(end) != c) {
+                    end += template.charAt(end) == '\\' ? 2 : 1;
+                }
+                end = Math.min(end + 1, length);
+                builder.append(template, i, end);
+                i = end;
+                continue;
+            }
+            int end = i + 1;
+            while (c == '$' && end < length && isSlotName(template.charAt(end))) {
+                end += 1;
+            }
+            if (end - i < 2) {
+                builder.append(c);
+                i += 1;
+                continue;
+            }
+            int start = builder.length();
+            builder.append('"').append(MARKER).append(names.size()).append('"');
+            names.add(template.substring(i + 1, end));
+            spans.add(new int[]{i, end - i, start, builder.length() - start});
+            i = end;
+        }
+        NodeWriter writer = new NodeWriter(names);
+        try {
+            new StringNbtReader(builder.toString()).acceptTemplate(writer);
+        } catch (StringNbtReader.ParseFailureException e) {
+            throw new StringNbtReader.ParseFailureException(originalPosition(spans, e.getPosition()), e.getType());
+        }
+        return new StringNbtTemplate(template, writer.node, new LinkedHashSet<>(names));
+    }
+
+    private static int slotOf(String s) {
+        if (s.length() < 2 || s.charAt(0) != MARKER) {
+            return -1;
+        }
+        return Integer.parseInt(s.substring(1));
+    }
+
+    private static boolean isSlotName(char c) {
+        return c >= '0' && c <= '9' || c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c == '_';
+    }
+
+    private static int originalPosition(List<int[]> spans, int position) {
+        int shift = 0;
+        for (int[] span : spans) {
+            if (position < span[2]) {
+                break;
+            }
+            if (position < span[2] + span[3]) {
+                return span[0];
+            }
+            shift = span[0] + span[1] - (span[2] + span[3]);
+        }
+        return position + shift;
+    }
+
+    private static Tag slotValue(Map<String, ? extends Tag> values, String name, TagType type) {
+        Tag value = values.get(name);
+        if (value.getType() != type) {
+            throw new IllegalArgumentException("Slot $" + name + " requires " + type + " but got " + value.getType());
+        }
+        return value;
+    }
+
+    // builds the nodes bottom-up while the reader goes through the rewritten template
+    private static class NodeWriter extends TagWriter implements StringNbtReader.SlotVisitor {
+
+        private final List<String> names;
+        private String[] arraySlots; // set just before an array which has slots
+        private Node node;
+
+        private NodeWriter(List<String> names) {
+            this.names = names;
+        }
+
+        protected void setNode(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        protected void setTag(Tag tag) {
+            this.setNode(new ConstantNode(tag));
+        }
+
+        @Override
+        public void visitString(String s) {
+            int slot = slotOf(s);
+            if (slot >= 0) {
+                this.setNode(new SlotNode(this.names.get(slot)));
+            } else {
+                super.visitString(s);
+            }
+        }
+
+        @Override
+        public void visitArraySlots(String[] slots) {
+            String[] names = new String[slots.length];
+            for (int i = 0; i < slots.length; ++i) {
+                names[i] = slots[i] != null ? this.names.get(slotOf(slots[i])) : null;
+            }
+            this.arraySlots = names;
+        }
+
+        @Override
+        public void visitByteArray(ImmutableBytes bytes) {
+            this.setArray(ByteArrayTag.of(bytes));
+        }
+
+        @Override
+        public void visitIntArray(ImmutableInts ints) {
+            this.setArray(IntArrayTag.of(ints));
+        }
+
+        @Override
+        public void visitLongArray(ImmutableLongs longs) {
+            this.setArray(LongArrayTag.of(longs));
+        }
+
+        private void setArray(Tag array) {
+            if (this.arraySlots != null) {
+                this.setNode(new ArrayNode(array, this.arraySlots));
+                this.arraySlots = null;
+            } else {
+                this.setTag(array);
+            }
+        }
+
+        @Override
+        public TagListVisitor visitList() {
+            List<Node> children = new ArrayList<>();
+            return new TagListVisitor(null) {
+                @Override
+                public TagValueVisitor visitValue() {
+                    return new NodeWriter(NodeWriter.this.names) {
+                        @Override
+                        protected void setNode(Node node) {
+                            children.add(node);
+                        }
+                    };
+                }
+
+                @Override
+                public void visitEnd() {
+                    NodeWriter.this.setNode(ListNode.of(children.toArray(new Node[0])));
+                }
+            };
+        }
+
+        @Override
+        public TagCompoundVisitor visitCompound() {
+            List<String> keys = new ArrayList<>();
+            List<Node> children = new ArrayList<>();
+            return new TagCompoundVisitor(null) {
+                @Override
+                public TagValueVisitor visit(String key) {
+                    keys.add(key);
+                    return new NodeWriter(NodeWriter.this.names) {
+                        @Override
+                        protected void setNode(Node node) {
+                            children.add(node);
+                        }
+                    };
+                }
+
+                @Override
+                public void visitEnd() {
+                    NodeWriter.this.setNode(CompoundNode.of(keys.toArray(new String[0]), children.toArray(new Node[0])));
+                }
+            };
+        }
+    }
+
+    private interface Node {
+
+        Tag toTag(Map<String, ? extends Tag> values);
+
+        void accept(TagValueVisitor visitor, Map<String, ? extends Tag> values);
+
+        TagType typeOf(Map<String, ? extends Tag> values);
+    }
+
+    private static final class ConstantNode implements Node {
+
+        private final Tag tag;
+
+        private ConstantNode(Tag tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        public Tag toTag(Map<String, ? extends Tag> values) {
+            return this.tag;
+        }
+
+        @Override
+        public void accept(TagValueVisitor visitor, Map<String, ? extends Tag> values) {
+            this.tag.accept(visitor);
+        }
+
+        @Override
+        public TagType typeOf(Map<String, ? extends Tag> values) {
+            return this.tag.getType();
+        }
+    }
+
+    private static final class SlotNode implements Node {
+
+        private final String name;
+
+        private SlotNode(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Tag toTag(Map<String, ? extends Tag> values) {
+            return values.get(this.name);
+        }
+
+        @Override
+        public void accept(TagValueVisitor visitor, Map<String, ? extends Tag> values) {
+            values.get(this.name).accept(visitor);
+        }
+
+        @Override
+        public TagType typeOf(Map<String, ? extends Tag> values) {
+            return values.get(this.name).getType();
+        }
+    }
+
+    private static final class ArrayNode implements Node {
+
+        private final Tag array; // zeros in place of the slots
+        private final String[] slots; // null for constant elements
+
+        private ArrayNode(Tag array, String[] slots) {
+            this.array = array;
+            this.slots = slots;
+        }
+
+        @Override
+        public Tag toTag(Map<String, ? extends Tag> values) {
+            switch (this.array.getType()) {
+                case BYTE_ARRAY: {
+                    byte[] bytes = ((ByteArrayTag) this.array).getBytes().toByteArray();
+                    for (int i = 0; i < this.slots.length; ++i) {
+                        if (this.slots[i] != null) {
+                            bytes[i] = ((ByteTag) slotValue(values, this.slots[i], TagType.BYTE)).getByte();
+                        }
+                    }
+                    return ByteArrayTag.of(bytes);
+                }
+                case INT_ARRAY: {
+                    int[] ints = ((IntArrayTag) this.array).getInts().toIntArray();
+                    for (int i = 0; i < this.slots.length; ++i) {
+                        if (this.slots[i] != null) {
+                            ints[i] = ((IntTag) slotValue(values, this.slots[i], TagType.INT)).getInt();
+                        }
+                    }
+                    return IntArrayTag.of(ints);
+                }
+                default: {
+                    long[] longs = ((LongArrayTag) this.array).getLongs().toLongArray();
+                    for (int i = 0; i < this.slots.length; ++i) {
+                        if (this.slots[i] != null) {
+                            longs[i] = ((LongTag) slotValue(values, this.slots[i], TagType.LONG)).getLong();
+                        }
+                    }
+                    return LongArrayTag.of(longs);
+                }
+            }
+        }
+
+        @Override
+        public void accept(TagValueVisitor visitor, Map<String, ? extends Tag> values) {
+            this.toTag(values).accept(visitor);
+        }
+
+        @Override
+        public TagType typeOf(Map<String, ? extends Tag> values) {
+            return this.array.getType();
+        }
+    }
+
+    private static final class ListNode implements Node {
+
+        private final Node[] children;
+
+        private ListNode(Node[] children) {
+            this.children = children;
+        }
+
+        static Node of(Node[] children) {
+            for (Node child : children) {
+                if (!(child instanceof ConstantNode)) {
+                    return new ListNode(children);
+                }
+            }
+            ListTag.Builder builder = ListTag.builder();
+            for (Node child : children) {
+                builder.add(((ConstantNode) child).tag);
+            }
+            return new ConstantNode(builder.build());
+        }
+
+        @Override
+        public Tag toTag(Map<String, ? extends Tag> values) {
+            // slots may decide the element type, so the list is built again
+            this.elemTypeOf(values);
+            ListTag.Builder builder = ListTag.builder();
+            for (Node child : this.children) {
+                builder.add(child.toTag(values));
+            }
+            return builder.build();
+        }
+
+        @Override
+        public void accept(TagValueVisitor visitor, Map<String, ? extends Tag> values) {
+            TagListVisitor listVisitor = visitor.visitList();
+            listVisitor.visitType(this.elemTypeOf(values));
+            listVisitor.visitLength(this.children.length);
+            for (Node child : this.children) {
+                child.accept(listVisitor.visitValue(), values);
+            }
+            listVisitor.visitEnd();
+        }
+
+        @Override
+        public TagType typeOf(Map<String, ? extends Tag> values) {
+            return TagType.LIST;
+        }
+
+        private TagType elemTypeOf(Map<String, ? extends Tag> values) {
+            TagType elemType = this.children[0].typeOf(values);
+            for (int i = 1; i < this.children.length; ++i) {
+                if (this.children[i].typeOf(values) != elemType) {
+                    throw new IllegalArgumentException("Unmatched tag type (required " + elemType + ")");
+                }
+            }
+            return elemType;
+        }
+    }
+
+    private static final class CompoundNode implements Node {
+
+        private final String[] keys;
+        private final Node[] children;
+
+        private CompoundNode(String[] keys, Node[] children) {
+            this.keys = keys;
+            this.children = children;
+        }
+
+        static Node of(String[] keys, Node[] children) {
+            for (Node child : children) {
+                if (!(child instanceof ConstantNode)) {
+                    return new CompoundNode(keys, children);
+                }
+            }
+            CompoundTag.Builder builder = CompoundTag.builder(true);
+            for (int i = 0; i < keys.length; ++i) {
+                builder.add(keys[i], ((ConstantNode) children[i]).tag);
+            }
+            return new ConstantNode(builder.build());
+        }
+
+        @Override
+        public Tag toTag(Map<String, ? extends Tag> values) {
+            CompoundTag.Builder builder = CompoundTag.builder(true);
+            for (int i = 0; i < this.keys.length; ++i) {
+                builder.add(this.keys[i], this.children[i].toTag(values));
+            }
+            return builder.build();
+        }
+
+        @Override
+        public void accept(TagValueVisitor visitor, Map<String, ? extends Tag> values) {
+            TagCompoundVisitor compoundVisitor = visitor.visitCompound();
+            for (int i = 0; i < this.keys.length; ++i) {
+                this.children[i].accept(compoundVisitor.visit(this.keys[i]), values);
+            }
+            compoundVisitor.visitEnd();
+        }
+
+        @Override
+        public TagType typeOf(Map<String, ? extends Tag> values) {
+            return TagType.COMPOUND;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package io.izzel.nbt.util;
 
-import io.izzel.nbt.StringTag;
 import io.izzel.nbt.visitor.TagCompoundVisitor;
 import io.izzel.nbt.visitor.TagListVisitor;
 import io.izzel.nbt.visitor.TagValueVisitor;
@@ -8,30 +7,47 @@ import io.izzel.nbt.visitor.TagValueVisitor;
 import java.io.Closeable;
 import java.io.Flushable;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-import java.util.regex.Pattern;
 
 public class StringNbtWriter extends TagValueVisitor implements Flushable, Closeable {
 
-    private final Writer data;
-    private final List<IOException> suppressed;
+    private static final boolean[] SIMPLE_KEY = new boolean[128];
+
+    static {
+        for (char c = 'A'; c <= 'Z'; ++c) {
+            SIMPLE_KEY[c] = true;
+        }
+        for (char c = 'a'; c <= 'z'; ++c) {
+            SIMPLE_KEY[c] = true;
+        }
+        for (char c = '0'; c <= '9'; ++c) {
+            SIMPLE_KEY[c] = true;
+        }
+        SIMPLE_KEY['.'] = SIMPLE_KEY['_'] = SIMPLE_KEY['+'] = SIMPLE_KEY['-'] = true;
+    }
+
+    private final TextOutput data;
 
     public StringNbtWriter(Writer writer) throws IOException {
-        this(writer, new ArrayList<>(1));
+        this(new TextOutput(writer, null));
+    }
+
+    public StringNbtWriter(Appendable appendable) throws IOException {
+        this(new TextOutput(appendable, null));
     }
 
+
     @Override
     public void flush() throws IOException {
         this.data.flush();
+        this.data.throwException();
     }
 
     @Override
     public void close() throws IOException {
-        this.closeParentQuietly();
-        this.throwException();
+        this.data.closeQuietly();
+        this.data.throwException();
     }
 
     @Override
@@ -39,165 +55,230 @@ public class StringNbtWriter extends TagValueVisitor implements Flushable, Close
         // we allow string representations of individual end tags
     }
 
-    private void closeParentQuietly() {
-        try {
-            this.data.close();
-        } catch (IOException e) {
-            this.suppressed.add(e);
-        }
+    private StringNbtWriter(TextOutput output) {
+        super(new ValueWriter(output));
+        this.data = output;
     }
 
-    private void throwException() throws IOException {
-        Iterator<IOException> iterator = this.suppressed.iterator();
-        if (iterator.hasNext()) {
-            IOException exception = iterator.next();
-            while (iterator.hasNext()) {
-                exception.addSuppressed(iterator.next());
+    // a factory rather than a constructor, as print streams are appendables too
+    public static StringNbtWriter utf8(OutputStream stream) {
+        return new StringNbtWriter(new TextOutput(null, stream)); // encoded straight from the char buffer
+    }
+
+    private static void writeKey(TextOutput data, String key) throws IOException {
+        int length = key.length();
+        for (int i = 0; i < length; ++i) {
+            char c = key.charAt(i);
+            if (c >= 128 || !SIMPLE_KEY[c]) {
+                writeQuoted(data, key);
+                return;
             }
-            throw exception;
         }
+        if (length == 0) {
+            writeQuoted(data, key);
+            return;
+        }
+        data.write(key);
     }
 
-    private StringNbtWriter(Writer writer, List<IOException> suppressed) {
-        super(new ValueWriter(writer, suppressed));
-        this.suppressed = suppressed;
-        this.data = writer;
+    private static void writeQuoted(TextOutput data, String s) throws IOException {
+        // the same choice as StringTag.escape: the quote that is seen first is left alone
+        char quotation = '"';
+        int length = s.length();
+        for (int i = 0; i < length; ++i) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                quotation = '\'';
+                break;
+            }
+            if (c == '\'') {
+                break;
+            }
+        }
+        data.write(quotation);
+        char[] chars = data.chars;
+        for (int i = 0; i < length; ++i) {
+            if (data.count > chars.length - 2) {
+                data.ensure(2);
+                chars = data.chars;
+            }
+            char c = s.charAt(i);
+            if (c == '\\' || c == quotation) {
+                chars[data.count++] = '\\';
+            }
+            chars[data.count++] = c;
+        }
+        data.write(quotation);
     }
 
     private static final class ValueWriter extends TagValueVisitor {
 
-        private final Writer data;
-        private final List<IOException> suppressed;
+        private final TextOutput data;
 
-        private ValueWriter(Writer writer, List<IOException> suppressed) {
+        private ValueWriter(TextOutput output) {
             super(null);
-            this.data = writer;
-            this.suppressed = suppressed;
+            this.data = output;
         }
 
         @Override
         public void visitEnd() {
-            if (this.suppressed.isEmpty()) {
-                this.suppressed.add(new IOException("End tags are not allowed in string representations"));
+            if (this.data.suppressed.isEmpty()) {
+                this.data.suppressed.add(new IOException("End tags are not allowed in string representations"));
             }
         }
 
         @Override
         public void visitByte(byte b) {
-            if (this.suppressed.isEmpty()) {
+            if (this.data.suppressed.isEmpty()) {
                 try {
-                    this.data.write(b + "b");
+                    this.data.writeLong(b);
+                    this.data.write('b');
+                    this.data.done();
                 } catch (IOException e) {
-                    this.suppressed.add(e);
+                    this.data.suppressed.add(e);
                 }
             }
         }
 
         @Override
         public void visitShort(short s) {
-            if (this.suppressed.isEmpty()) {
+            if (this.data.suppressed.isEmpty()) {
                 try {
-                    this.data.write(s + "s");
+                    this.data.writeLong(s);
+                    this.data.write('s');
+                    this.data.done();
                 } catch (IOException e) {
-                    this.suppressed.add(e);
+                    this.data.suppressed.add(e);
                 }
             }
         }
 
         @Override
         public void visitInt(int i) {
-            if (this.suppressed.isEmpty()) {
+            if (this.data.suppressed.isEmpty()) {
                 try {
-                    this.data.write(i + "");
+                    this.data.writeLong(i);
+                    this.data.done();
                 } catch (IOException e) {
-                    this.suppressed.add(e);
+                    this.data.suppressed.add(e);
                 }
             }
         }
 
         @Override
         public void visitLong(long l) {
-            if (this.suppressed.isEmpty()) {
+            if (this.data.suppressed.isEmpty()) {
                 try {
-                    this.data.write(l + "l");
+                    this.data.writeLong(l);
+                    this.data.write('l');
+                    this.data.done();
                 } catch (IOException e) {
-                    this.suppressed.add(e);
+                    this.data.suppressed.add(e);
                 }
             }
         }
 
         @Override
         public void visitFloat(float f) {
-            if (this.suppressed.isEmpty()) {
+            if (this.data.suppressed.isEmpty()) {
                 try {
-                    this.data.write(f + "f");
+                    this.data.writeFloat(f);
+                    this.data.write('f');
+                    this.data.done();
                 } catch (IOException e) {
-                    this.suppressed.add(e);
+                    this.data.suppressed.add(e);
                 }
             }
         }
 
         @Override
         public void visitDouble(double d) {
-            if (this.suppressed.isEmpty()) {
+            if (this.data.suppressed.isEmpty()) {
                 try {
-                    this.data.write(d + "d");
+                    this.data.writeDouble(d);
+                    this.data.write('d');
+                    this.data.done();
                 } catch (IOException e) {
-                    this.suppressed.add(e);
+                    this.data.suppressed.add(e);
                 }
             }
         }
 
         @Override
         public void visitByteArray(ImmutableBytes bytes) {
-            if (this.suppressed.isEmpty()) {
+            if (this.data.suppressed.isEmpty()) {
                 try {
-                    this.data.write(bytes.toString("[B;", ",", "]"));
+                    this.data.write("[B;");
+                    for (int i = 0, size = bytes.size(); i < size; ++i) {
+                        if (i > 0) {
+                            this.data.write(',');
+                        }
+                        this.data.writeLong(bytes.get(i));
+                    }
+                    this.data.write(']');
+                    this.data.done();
                 } catch (IOException e) {
-                    this.suppressed.add(e);
+                    this.data.suppressed.add(e);
                 }
             }
         }
 
         @Override
         public void visitString(String s) {
-            if (this.suppressed.isEmpty()) {
+            if (this.data.suppressed.isEmpty()) {
                 try {
-                    this.data.write(StringTag.escape(s));
+                    writeQuoted(this.data, s);
+                    this.data.done();
                 } catch (IOException e) {
-                    this.suppressed.add(e);
+                    this.data.suppressed.add(e);
                 }
             }
         }
 
         @Override
         public TagListVisitor visitList() {
-            return new ListWriter(this.data, this.suppressed);
+            return new ListWriter(this);
         }
 
         @Override
         public TagCompoundVisitor visitCompound() {
-            return new CompoundWriter(this.data, this.suppressed);
+            return new CompoundWriter(this);
         }
 
         @Override
         public void visitIntArray(ImmutableInts ints) {
-            if (this.suppressed.isEmpty()) {
+            if (this.data.suppressed.isEmpty()) {
                 try {
-                    this.data.write(ints.toString("[I;", ",", "]"));
+                    this.data.write("[I;");
+                    for (int i = 0, size = ints.size(); i < size; ++i) {
+                        if (i > 0) {
+                            this.data.write(',');
+                        }
+                        this.data.writeLong(ints.get(i));
+                    }
+                    this.data.write(']');
+                    this.data.done();
                 } catch (IOException e) {
-                    this.suppressed.add(e);
+                    this.data.suppressed.add(e);
                 }
             }
         }
 
         @Override
         public void visitLongArray(ImmutableLongs longs) {
-            if (this.suppressed.isEmpty()) {
+            if (this.data.suppressed.isEmpty()) {
                 try {
-                    this.data.write(longs.toString("[L;", ",", "]"));
+                    this.data.write("[L;");
+                    for (int i = 0, size = longs.size(); i < size; ++i) {
+                        if (i > 0) {
+                            this.data.write(',');
+                        }
+                        this.data.writeLong(longs.get(i));
+                    }
+                    this.data.write(']');
+                    this.data.done();
                 } catch (IOException e) {
-                    this.suppressed.add(e);
+                    this.data.suppressed.add(e);
                 }
             }
         }
@@ -207,35 +288,37 @@ public class StringNbtWriter extends TagValueVisitor implements Flushable, Close
 
         private boolean notFirst;
 
-        private final Writer data;
-        private final List<IOException> suppressed;
+        private final ValueWriter value; // stateless, so shared by every value
+        private final TextOutput data;
 
-        public ListWriter(Writer data, List<IOException> suppressed) {
+        public ListWriter(ValueWriter value) {
             super(null);
-            this.data = data;
-            this.suppressed = suppressed;
+            this.value = value;
+            this.data = value.data;
+            this.data.enter();
         }
 
         @Override
         public TagValueVisitor visitValue() {
-            if (this.suppressed.isEmpty()) {
+            if (this.data.suppressed.isEmpty()) {
                 try {
-                    this.data.write(this.notFirst ? "," : "[");
+                    this.data.write(this.notFirst ? ',' : '[');
                     this.notFirst = true;
                 } catch (IOException e) {
-                    this.suppressed.add(e);
+                    this.data.suppressed.add(e);
                 }
             }
-            return new ValueWriter(this.data, this.suppressed);
+            return this.value;
         }
 
         @Override
         public void visitEnd() {
-            if (this.suppressed.isEmpty()) {
+            if (this.data.suppressed.isEmpty()) {
                 try {
                     this.data.write(this.notFirst ? "]" : "[]");
+                    this.data.exit();
                 } catch (IOException e) {
-                    this.suppressed.add(e);
+                    this.data.suppressed.add(e);
                 }
             }
         }
@@ -243,42 +326,41 @@ public class StringNbtWriter extends TagValueVisitor implements Flushable, Close
 
     private static final class CompoundWriter extends TagCompoundVisitor {
 
-        private static final Pattern SIMPLE_KEY = Pattern.compile("[A-Za-z0-9._+-]+");
-
         private boolean notFirst;
 
-        private final Writer data;
-        private final List<IOException> suppressed;
+        private final ValueWriter value; // stateless, so shared by every value
+        private final TextOutput data;
 
-        public CompoundWriter(Writer data, List<IOException> suppressed) {
+        public CompoundWriter(ValueWriter value) {
             super(null);
-            this.data = data;
-            this.suppressed = suppressed;
+            this.value = value;
+            this.data = value.data;
+            this.data.enter();
         }
 
         @Override
         public TagValueVisitor visit(String key) {
-            if (this.suppressed.isEmpty()) {
+            if (this.data.suppressed.isEmpty()) {
                 try {
-                    String escapedKey = SIMPLE_KEY.matcher(key).matches() ? key : StringTag.escape(key);
-                    this.data.write(this.notFirst ? "," : "{");
-                    this.data.write(escapedKey);
-                    this.data.write(":");
+                    this.data.write(this.notFirst ? ',' : '{');
+                    writeKey(this.data, key);
+                    this.data.write(':');
                     this.notFirst = true;
                 } catch (IOException e) {
-                    this.suppressed.add(e);
+                    this.data.suppressed.add(e);
                 }
             }
-            return new ValueWriter(this.data, this.suppressed);
+            return this.value;
         }
 
         @Override
         public void visitEnd() {
-            if (this.suppressed.isEmpty()) {
+            if (this.data.suppressed.isEmpty()) {
                 try {
                     this.data.write(this.notFirst ? "}" : "{}");
+                    this.data.exit();
                 } catch (IOException e) {
-                    this.suppressed.add(e);
+                    this.data.suppressed.add(e);
                 }
             }
         }
@@ -0,0 +1,332 @@
+package io.izzel.nbt.util;
+
+import io.izzel.nbt.CompoundTag;
+import io.izzel.nbt.ListTag;
+import io.izzel.nbt.Tag;
+import io.izzel.nbt.TagType;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+
+public class TagInterner {
+
+    // striped by hash, each segment is a small weak hash set behind its own lock
+    private final Segment[] segments = new Segment[16];
+
+    public TagInterner() {
+        for (int i = 0; i < this.segments.length; ++i) {
+            this.segments[i] = new Segment();
+        }
+    }
+
+    // bottom-up over the given instances, a node is only rebuilt when one of its children was swapped for a pooled one
+    @SuppressWarnings("unchecked")
+    public <T extends Tag> T intern(T tag) {
+        Frame frame = new Frame(null, tag);
+        while (true) {
+            if (frame.next == 0 && !frame.visited) {
+                frame.visited = true;
+                Tag pooled = this.find(frame.tag);
+                if (pooled != null) {
+                    frame.next = frame.size;
+                    frame.result = pooled;
+                }
+            }
+            if (frame.next < frame.size) {
+                Tag child = frame.child(frame.next);
+                if (child.getType() == TagType.LIST || child.getType() == TagType.COMPOUND) {
+                    frame = new Frame(frame, child);
+                } else {
+                    frame.accept(this.canonical(child));
+                }
+                continue;
+            }
+            Tag result = frame.result != null ? frame.result : this.canonical(frame.rebuild());
+            frame = frame.parent;
+            if (frame == null) {
+                return (T) result;
+            }
+            frame.accept(result);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                segment.expunge();
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    Tag canonical(Tag tag) {
+        if (!isPooled(tag.getType())) {
+            return tag;
+        }
+        int hash = hashOf(tag);
+        Segment segment = this.segmentFor(hash);
+        synchronized (segment) {
+            Tag result = segment.get(tag, hash);
+            if (result == null) {
+                segment.add(tag, hash);
+                result = tag;
+            }
+            return result;
+        }
+    }
+
+    private Tag find(Tag tag) {
+        if (!isPooled(tag.getType())) {
+            return tag;
+        }
+        int hash = hashOf(tag);
+        Segment segment = this.segmentFor(hash);
+        synchronized (segment) {
+            return segment.get(tag, hash);
+        }
+    }
+
+    private Segment segmentFor(int hash) {
+        return this.segments[hash >>> 28];
+    }
+
+    // numbers are smaller than any pool entry, and bytes and end tags are singletons already
+    private static boolean isPooled(TagType type) {
+        switch (type) {
+            case END:
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE: {
+                return false;
+            }
+            default: {
+                return true;
+            }
+        }
+    }
+
+    private static int hashOf(Tag tag) {
+        int hash = tag.hashCode();
+        if (tag.getType() == TagType.LIST) {
+            hash = 31 * hash + ((ListTag) tag).getElemType().ordinal(); // empty lists only differ in their type
+        }
+        return hash ^ hash >>> 16;
+    }
+
+    // stricter than equals, which treats all empty lists as equal and ignores the order of compound keys
+    private static boolean sameStructure(Tag first, Tag second) {
+        Queue<Tag> firstTags = new ArrayDeque<>(), secondTags = new ArrayDeque<>();
+        firstTags.add(first);
+        secondTags.add(second);
+        while (!firstTags.isEmpty()) {
+            Tag thisTag = firstTags.remove(), thatTag = secondTags.remove();
+            if (thisTag == thatTag) {
+                continue;
+            }
+            TagType type = thisTag.getType();
+            if (type != thatTag.getType() || thisTag.hashCode() != thatTag.hashCode()) {
+                return false;
+            }
+            switch (type) {
+                case LIST: {
+                    ListTag thisList = (ListTag) thisTag, thatList = (ListTag) thatTag;
+                    if (thisList.getElemType() != thatList.getElemType() || thisList.size() != thatList.size()) {
+                        return false;
+                    }
+                    if (!isPooled(thisList.getElemType())) {
+                        if (!thisList.equals(thatList)) {
+                            return false;
+                        }
+                        break;
+                    }
+                    firstTags.addAll(thisList.dump());
+                    secondTags.addAll(thatList.dump());
+                    break;
+                }
+                case COMPOUND: {
+                    CompoundTag thisCompound = (CompoundTag) thisTag, thatCompound = (CompoundTag) thatTag;
+                    if (thisCompound.size() != thatCompound.size()) {
+                        return false;
+                    }
+                    Iterator<? extends CompoundTag.Entry<?>> thatEntries = thatCompound.dump().iterator();
+                    for (CompoundTag.Entry<?> thisEntry : thisCompound.dump()) {
+                        CompoundTag.Entry<?> thatEntry = thatEntries.next();
+                        if (!thisEntry.getKey().equals(thatEntry.getKey())) {
+                            return false;
+                        }
+                        firstTags.add(thisEntry.getValue());
+                        secondTags.add(thatEntry.getValue());
+                    }
+                    break;
+                }
+                default: {
+                    if (!thisTag.equals(thatTag)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static final class Frame {
+
+        private final Frame parent;
+        private final Tag tag;
+        private final List<?> children; // entries for compounds, and tags for lists which are not numeric
+        private final int size;
+        private Tag[] replaced; // pooled children which differ from the given ones, allocated on the first one
+        private int next;
+        private boolean visited;
+        private Tag result;
+
+        private Frame(Frame parent, Tag tag) {
+            this.parent = parent;
+            this.tag = tag;
+            switch (tag.getType()) {
+                case LIST: {
+                    ListTag list = (ListTag) tag;
+                    this.children = isPooled(list.getElemType()) ? list.dump() : Collections.emptyList();
+                    break;
+                }
+                case COMPOUND: {
+                    this.children = ((CompoundTag) tag).dump();
+                    break;
+                }
+                default: {
+                    this.children = Collections.emptyList();
+                }
+            }
+            this.size = this.children.size();
+        }
+
+        private Tag child(int i) {
+            Object child = this.children.get(i);
+            return child instanceof Tag ? (Tag) child : ((CompoundTag.Entry<?>) child).getValue();
+        }
+
+        private void accept(Tag pooled) {
+            if (pooled != this.child(this.next)) {
+                if (this.replaced == null) {
+                    this.replaced = new Tag[this.size];
+                }
+                this.replaced[this.next] = pooled;
+            }
+            this.next += 1;
+        }
+
+        private Tag rebuild() {
+            if (this.replaced == null) {
+                return this.tag;
+            }
+            if (this.tag.getType() == TagType.LIST) {
+                ListTag.Builder builder = ((ListTag) this.tag).toBuilder();
+                for (int i = 0; i < this.size; ++i) {
+                    if (this.replaced[i] != null) builder.set(i, this.replaced[i]);
+                }
+                return builder.build();
+            }
+            CompoundTag.Builder builder = ((CompoundTag) this.tag).toBuilder();
+            for (int i = 0; i < this.size; ++i) {
+                if (this.replaced[i] != null) builder.set(((CompoundTag.Entry<?>) this.children.get(i)).getKey(), this.replaced[i]);
+            }
+            return builder.build();
+        }
+    }
+
+    private static final class Segment extends ReferenceQueue<Tag> {
+
+        private Ref[] table = new Ref[16];
+        private int size;
+
+        private Tag get(Tag tag, int hash) {
+            this.expunge();
+            for (Ref ref = this.table[hash & this.table.length - 1]; ref != null; ref = ref.next) {
+                if (ref.hash == hash) {
+                    Tag pooled = ref.get();
+                    if (pooled != null && sameStructure(pooled, tag)) {
+                        return pooled;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void add(Tag tag, int hash) {
+            if (this.size >= this.table.length - (this.table.length >>> 2)) {
+                this.resize();
+            }
+            int i = hash & this.table.length - 1;
+            this.table[i] = new Ref(tag, hash, this.table[i], this);
+            this.size += 1;
+        }
+
+        private void resize() {
+            Ref[] table = new Ref[this.table.length * 2];
+            for (Ref head : this.table) {
+                for (Ref ref = head, next; ref != null; ref = next) {
+                    next = ref.next;
+                    int i = ref.hash & table.length - 1;
+                    ref.next = table[i];
+                    table[i] = ref;
+                }
+            }
+            this.table = table;
+        }
+
+        private void expunge() {
+            for (Ref stale; (stale = (Ref) this.poll()) != null; ) {
+                int i = stale.hash & this.table.length - 1;
+                for (Ref ref = this.table[i], prev = null; ref != null; prev = ref, ref = ref.next) {
+                    if (ref == stale) {
+                        if (prev == null) {
+                            this.table[i] = ref.next;
+                        } else {
+                            prev.next = ref.next;
+                        }
+                        this.size -= 1;
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void clear() {
+            while (this.poll() != null) {
+                // references are dropped along with the table
+            }
+            this.table = new Ref[16];
+            this.size = 0;
+        }
+    }
+
+    private static final class Ref extends WeakReference<Tag> {
+
+        private final int hash;
+        private Ref next;
+
+        private Ref(Tag tag, int hash, Ref next, ReferenceQueue<Tag> queue) {
+            super(tag, queue);
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,605 @@
+package io.izzel.nbt.util;
+
+import io.izzel.nbt.ByteArrayTag;
+import io.izzel.nbt.CompoundTag;
+import io.izzel.nbt.EndTag;
+import io.izzel.nbt.IntArrayTag;
+import io.izzel.nbt.ListTag;
+import io.izzel.nbt.LongArrayTag;
+import io.izzel.nbt.StringTag;
+import io.izzel.nbt.Tag;
+import io.izzel.nbt.TagType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.StringJoiner;
+
+public final class TagPatch {
+
+    private static final TagPatch EMPTY = new TagPatch(Collections.emptyList());
+
+    private static final int SET = 0;
+    private static final int REMOVE = 1;
+    private static final int SPLICE = 2;
+    private static final int RANGE = 3;
+
+    private final List<Operation> operations;
+
+    private TagPatch(List<Operation> operations) {
+        this.operations = operations;
+    }
+
+    public int size() {
+        return this.operations.size();
+    }
+
+    public boolean isEmpty() {
+        return this.operations.isEmpty();
+    }
+
+    public Tag apply(Tag tag) {
+        for (Operation operation : this.operations) {
+            tag = operation.apply(tag);
+        }
+        return tag;
+    }
+
+    public byte[] toByteArray() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream data = new DataOutputStream(bytes)) {
+            writeVarInt(data, this.operations.size());
+            for (Operation operation : this.operations) {
+                operation.write(data);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || o instanceof TagPatch && this.operations.equals(((TagPatch) o).operations);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.operations.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "[", "]");
+        for (Operation operation : this.operations) {
+            joiner.add(operation.toString());
+        }
+        return joiner.toString();
+    }
+
+    public static TagPatch empty() {
+        return EMPTY;
+    }
+
+    public static TagPatch fromByteArray(byte[] bytes) throws IOException {
+        try (DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            int size = readVarInt(data);
+            List<Operation> operations = new ArrayList<>(Math.min(size, 64));
+            for (int i = 0; i < size; ++i) {
+                operations.add(Operation.read(data));
+            }
+            if (data.read() >= 0) {
+                throw new IOException("Unexpected trailing bytes after the patch");
+            }
+            return operations.isEmpty() ? EMPTY : new TagPatch(Collections.unmodifiableList(operations));
+        }
+    }
+
+    public static TagPatch diff(Tag from, Tag to) {
+        List<Operation> operations = new ArrayList<>();
+        Deque<Object[]> pending = new ArrayDeque<>(); // tags are compared without recursion as they may be deeply nested
+        pending.push(new Object[]{null, from, to});
+        while (!pending.isEmpty()) {
+            Object[] pair = pending.pop();
+            Step step = (Step) pair[0];
+            Tag thisTag = (Tag) pair[1], thatTag = (Tag) pair[2];
+            if (thisTag == thatTag || thisTag.hashCode() == thatTag.hashCode() && thisTag.equals(thatTag)) {
+                continue;
+            }
+            TagType type = thisTag.getType();
+            if (type != thatTag.getType()) {
+                operations.add(new Operation(SET, Step.toPath(step), 0, 0, thatTag));
+                continue;
+            }
+            switch (type) {
+                case COMPOUND: {
+                    CompoundTag thisCompound = (CompoundTag) thisTag, thatCompound = (CompoundTag) thatTag;
+                    for (CompoundTag.Entry<?> entry : thisCompound.dump()) {
+                        if (thatCompound.get(entry.getKey(), EndTag.of()).getType() == TagType.END) {
+                            operations.add(new Operation(REMOVE, Step.toPath(new Step(step, entry.getKey())), 0, 0, null));
+                        }
+                    }
+                    for (CompoundTag.Entry<?> entry : thatCompound.dump()) {
+                        Tag thisValue = thisCompound.get(entry.getKey(), EndTag.of());
+                        if (thisValue.getType() == TagType.END) {
+                            operations.add(new Operation(SET, Step.toPath(new Step(step, entry.getKey())), 0, 0, entry.getValue()));
+                        } else {
+                            pending.push(new Object[]{new Step(step, entry.getKey()), thisValue, entry.getValue()});
+                        }
+                    }
+                    break;
+                }
+                case LIST: {
+                    ListTag thisList = (ListTag) thisTag, thatList = (ListTag) thatTag;
+                    if (thisList.size() > 0 && thatList.size() > 0 && thisList.getElemType() != thatList.getElemType()) {
+                        operations.add(new Operation(SET, Step.toPath(step), 0, 0, thatTag));
+                        break;
+                    }
+                    int thisSize = thisList.size(), thatSize = thatList.size(), prefix = 0, suffix = 0;
+                    while (prefix < thisSize && prefix < thatSize && equals(thisList, thatList, prefix, prefix)) {
+                        ++prefix;
+                    }
+                    while (suffix < thisSize - prefix && suffix < thatSize - prefix
+                            && equals(thisList, thatList, thisSize - suffix - 1, thatSize - suffix - 1)) {
+                        ++suffix;
+                    }
+                    int removed = thisSize - prefix - suffix, added = thatSize - prefix - suffix;
+                    if (removed == added && isContainer(thatList.getElemType())) {
+                        // elements changed in place are diffed one by one, and indices are left as they are
+                        for (int i = prefix + added - 1; i >= prefix; --i) {
+                            pending.push(new Object[]{new Step(step, i), thisList.getOrDefault(i), thatList.getOrDefault(i)});
+                        }
+                        break;
+                    }
+                    ListTag.Builder inserted = ListTag.builder();
+                    for (int i = prefix; i < prefix + added; ++i) {
+                        inserted.add(thatList.getOrDefault(i));
+                    }
+                    operations.add(new Operation(SPLICE, Step.toPath(step), prefix, removed, inserted.build()));
+                    break;
+                }
+                case BYTE_ARRAY: {
+                    ImmutableBytes thisBytes = ((ByteArrayTag) thisTag).getBytes(), thatBytes = ((ByteArrayTag) thatTag).getBytes();
+                    int thisSize = thisBytes.size(), thatSize = thatBytes.size(), prefix = 0, suffix = 0;
+                    while (prefix < thisSize && prefix < thatSize && thisBytes.get(prefix) == thatBytes.get(prefix)) {
+                        ++prefix;
+                    }
+                    while (suffix < thisSize - prefix && suffix < thatSize - prefix
+                            && thisBytes.get(thisSize - suffix - 1) == thatBytes.get(thatSize - suffix - 1)) {
+                        ++suffix;
+                    }
+                    Tag replacement = ByteArrayTag.of(ImmutableBytes.slice(thatBytes, prefix, thatSize - prefix - suffix));
+                    operations.add(new Operation(RANGE, Step.toPath(step), prefix, thisSize - prefix - suffix, replacement));
+                    break;
+                }
+                case INT_ARRAY: {
+                    ImmutableInts thisInts = ((IntArrayTag) thisTag).getInts(), thatInts = ((IntArrayTag) thatTag).getInts();
+                    int thisSize = thisInts.size(), thatSize = thatInts.size(), prefix = 0, suffix = 0;
+                    while (prefix < thisSize && prefix < thatSize && thisInts.get(prefix) == thatInts.get(prefix)) {
+                        ++prefix;
+                    }
+                    while (suffix < thisSize - prefix && suffix < thatSize - prefix
+                            && thisInts.get(thisSize - suffix - 1) == thatInts.get(thatSize - suffix - 1)) {
+                        ++suffix;
+                    }
+                    Tag replacement = IntArrayTag.of(ImmutableInts.slice(thatInts, prefix, thatSize - prefix - suffix));
+                    operations.add(new Operation(RANGE, Step.toPath(step), prefix, thisSize - prefix - suffix, replacement));
+                    break;
+                }
+                case LONG_ARRAY: {
+                    ImmutableLongs thisLongs = ((LongArrayTag) thisTag).getLongs(), thatLongs = ((LongArrayTag) thatTag).getLongs();
+                    int thisSize = thisLongs.size(), thatSize = thatLongs.size(), prefix = 0, suffix = 0;
+                    while (prefix < thisSize && prefix < thatSize && thisLongs.get(prefix) == thatLongs.get(prefix)) {
+                        ++prefix;
+                    }
+                    while (suffix < thisSize - prefix && suffix < thatSize - prefix
+                            && thisLongs.get(thisSize - suffix - 1) == thatLongs.get(thatSize - suffix - 1)) {
+                        ++suffix;
+                    }
+                    Tag replacement = LongArrayTag.of(ImmutableLongs.slice(thatLongs, prefix, thatSize - prefix - suffix));
+                    operations.add(new Operation(RANGE, Step.toPath(step), prefix, thisSize - prefix - suffix, replacement));
+                    break;
+                }
+                default: {
+                    operations.add(new Operation(SET, Step.toPath(step), 0, 0, thatTag));
+                    break;
+                }
+            }
+        }
+        return operations.isEmpty() ? EMPTY : new TagPatch(Collections.unmodifiableList(operations));
+    }
+
+    private static boolean equals(ListTag thisList, ListTag thatList, int thisIndex, int thatIndex) {
+        Tag thisTag = thisList.getOrDefault(thisIndex), thatTag = thatList.getOrDefault(thatIndex);
+        return thisTag == thatTag || thisTag.hashCode() == thatTag.hashCode() && thisTag.equals(thatTag);
+    }
+
+    private static boolean isContainer(TagType type) {
+        switch (type) {
+            case BYTE_ARRAY:
+            case LIST:
+            case COMPOUND:
+            case INT_ARRAY:
+            case LONG_ARRAY:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream data, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            data.writeByte(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        data.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream data) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = data.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (value < 0) {
+                    throw new IOException("Negative length or index in the patch: " + value);
+                }
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer in the patch");
+    }
+
+    private static int readLength(DataInputStream data, int width) throws IOException {
+        return checkLength(data, readVarInt(data), width);
+    }
+
+    // the patch is read from memory, so a length beyond what is left is corrupt and must not be allocated
+    private static int checkLength(DataInputStream data, int length, int width) throws IOException {
+        int remaining = data.available();
+        if (length > remaining / width) {
+            throw new IOException("Length " + length + " exceeds the remaining " + remaining + " bytes of the patch");
+        }
+        return length;
+    }
+
+    private static final class Step {
+        private final Step parent;
+        private final Object key; // a string for compound names, an integer for list indices
+        private final int depth;
+
+        private Step(Step parent, Object key) {
+            this.parent = parent;
+            this.key = key;
+            this.depth = parent == null ? 1 : parent.depth + 1;
+        }
+
+        private static Object[] toPath(Step step) {
+            Object[] path = new Object[step == null ? 0 : step.depth];
+            for (; step != null; step = step.parent) {
+                path[step.depth - 1] = step.key;
+            }
+            return path;
+        }
+    }
+
+    private static final class Operation {
+        private final int kind;
+        private final Object[] path;
+        private final int index;
+        private final int removed;
+        private final Tag value; // the new value, the inserted list for splices, or the new array range
+
+        private Operation(int kind, Object[] path, int index, int removed, Tag value) {
+            this.kind = kind;
+            this.path = path;
+            this.index = index;
+            this.removed = removed;
+            this.value = value;
+        }
+
+        private Tag apply(Tag root) {
+            int depth = this.path.length;
+            if (this.kind == SET && depth == 0) {
+                return this.value;
+            }
+            int parents = this.kind == SET || this.kind == REMOVE ? depth - 1 : depth;
+            Tag[] tags = new Tag[parents + 1];
+            tags[0] = root;
+            for (int i = 0; i < parents; ++i) {
+                tags[i + 1] = this.child(tags[i], this.path[i]);
+            }
+            Tag target = tags[parents];
+            Tag result;
+            switch (this.kind) {
+                case SET:
+                case REMOVE: {
+                    Object key = this.path[depth - 1];
+                    if (this.kind == REMOVE) {
+                        result = this.compound(target, key).toBuilder(true).remove((String) key).build();
+                    } else if (key instanceof String) {
+                        result = this.compound(target, key).toBuilder(true).set((String) key, this.value).build();
+                    } else {
+                        this.child(target, key);
+                        result = ((ListTag) target).toBuilder().set((Integer) key, this.value).build();
+                    }
+                    break;
+                }
+                case SPLICE: {
+                    if (target.getType() != TagType.LIST) {
+                        throw this.mismatch("expected a list but got " + target.getType());
+                    }
+                    ListTag list = (ListTag) target, inserted = (ListTag) this.value;
+                    if (this.index + this.removed > list.size()) {
+                        throw this.mismatch("range exceeds the list size " + list.size());
+                    }
+                    ListTag.Builder builder = ListTag.builder();
+                    for (int i = 0; i < this.index; ++i) {
+                        builder.add(list.getOrDefault(i));
+                    }
+                    for (int i = 0; i < inserted.size(); ++i) {
+                        builder.add(inserted.getOrDefault(i));
+                    }
+                    for (int i = this.index + this.removed; i < list.size(); ++i) {
+                        builder.add(list.getOrDefault(i));
+                    }
+                    result = builder.build();
+                    break;
+                }
+                default: {
+                    if (target.getType() != this.value.getType()) {
+                        throw this.mismatch("expected " + this.value.getType() + " but got " + target.getType());
+                    }
+                    result = this.replaceRange(target);
+                    break;
+                }
+            }
+            for (int i = parents - 1; i >= 0; --i) {
+                Object key = this.path[i];
+                if (key instanceof String) {
+                    result = ((CompoundTag) tags[i]).toBuilder(true).set((String) key, result).build();
+                } else {
+                    result = ((ListTag) tags[i]).toBuilder().set((Integer) key, result).build();
+                }
+            }
+            return result;
+        }
+
+        private Tag replaceRange(Tag target) {
+            switch (target.getType()) {
+                case BYTE_ARRAY: {
+                    ImmutableBytes bytes = ((ByteArrayTag) target).getBytes();
+                    if (this.index + this.removed > bytes.size()) {
+                        throw this.mismatch("range exceeds the array size " + bytes.size());
+                    }
+                    ImmutableBytes prefix = ImmutableBytes.slice(bytes, 0, this.index);
+                    ImmutableBytes suffix = ImmutableBytes.slice(bytes, this.index + this.removed, bytes.size() - this.index - this.removed);
+                    return ByteArrayTag.of(prefix.concat(((ByteArrayTag) this.value).getBytes()).concat(suffix));
+                }
+                case INT_ARRAY: {
+                    ImmutableInts ints = ((IntArrayTag) target).getInts();
+                    if (this.index + this.removed > ints.size()) {
+                        throw this.mismatch("range exceeds the array size " + ints.size());
+                    }
+                    ImmutableInts prefix = ImmutableInts.slice(ints, 0, this.index);
+                    ImmutableInts suffix = ImmutableInts.slice(ints, this.index + this.removed, ints.size() - this.index - this.removed);
+                    return IntArrayTag.of(prefix.concat(((IntArrayTag) this.value).getInts()).concat(suffix));
+                }
+                default: {
+                    ImmutableLongs longs = ((LongArrayTag) target).getLongs();
+                    if (this.index + this.removed > longs.size()) {
+                        throw this.mismatch("range exceeds the array size " + longs.size());
+                    }
+                    ImmutableLongs prefix = ImmutableLongs.slice(longs, 0, this.index);
+                    ImmutableLongs suffix = ImmutableLongs.slice(longs, this.index + this.removed, longs.size() - this.index - this.removed);
+                    return LongArrayTag.of(prefix.concat(((LongArrayTag) this.value).getLongs()).concat(suffix));
+                }
+            }
+        }
+
+        private Tag child(Tag tag, Object key) {
+            if (key instanceof String) {
+                Tag child = this.compound(tag, key).get((String) key, EndTag.of());
+                if (child.getType() == TagType.END) {
+                    throw this.mismatch("missing name " + key);
+                }
+                return child;
+            }
+            if (tag.getType() != TagType.LIST) {
+                throw this.mismatch("expected a list but got " + tag.getType());
+            }
+            ListTag list = (ListTag) tag;
+            int index = (Integer) key;
+            if (index >= list.size()) {
+                throw this.mismatch("index " + index + " exceeds the list size " + list.size());
+            }
+            return list.getOrDefault(index);
+        }
+
+        private CompoundTag compound(Tag tag, Object key) {
+            if (tag.getType() != TagType.COMPOUND) {
+                throw this.mismatch("expected a compound for name " + key + " but got " + tag.getType());
+            }
+            return (CompoundTag) tag;
+        }
+
+        private IllegalArgumentException mismatch(String reason) {
+            return new IllegalArgumentException("Patch does not apply at " + this.pathString() + ": " + reason);
+        }
+
+        private void write(DataOutputStream data) throws IOException {
+            data.writeByte(this.kind);
+            writeVarInt(data, this.path.length);
+            for (Object key : this.path) {
+                if (key instanceof String) {
+                    byte[] name = ((String) key).getBytes(StandardCharsets.UTF_8);
+                    writeVarInt(data, name.length << 1);
+                    data.write(name);
+                } else {
+                    writeVarInt(data, (Integer) key << 1 | 1);
+                }
+            }
+            switch (this.kind) {
+                case SET: {
+                    byte[] value = new TagReader(this.value).toBinaryNbt();
+                    writeVarInt(data, value.length);
+                    data.write(value);
+                    break;
+                }
+                case SPLICE: {
+                    writeVarInt(data, this.index);
+                    writeVarInt(data, this.removed);
+                    byte[] value = new TagReader(this.value).toBinaryNbt();
+                    writeVarInt(data, value.length);
+                    data.write(value);
+                    break;
+                }
+                case RANGE: {
+                    writeVarInt(data, this.index);
+                    writeVarInt(data, this.removed);
+                    data.writeByte(this.value.getType().getId());
+                    switch (this.value.getType()) {
+                        case BYTE_ARRAY: {
+                            ImmutableBytes bytes = ((ByteArrayTag) this.value).getBytes();
+                            writeVarInt(data, bytes.size());
+                            for (int i = 0; i < bytes.size(); ++i) data.writeByte(bytes.get(i));
+                            break;
+                        }
+                        case INT_ARRAY: {
+                            ImmutableInts ints = ((IntArrayTag) this.value).getInts();
+                            writeVarInt(data, ints.size());
+                            for (int i = 0; i < ints.size(); ++i) data.writeInt(ints.get(i));
+                            break;
+                        }
+                        default: {
+                            ImmutableLongs longs = ((LongArrayTag) this.value).getLongs();
+                            writeVarInt(data, longs.size());
+                            for (int i = 0; i < longs.size(); ++i) data.writeLong(longs.get(i));
+                            break;
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+
+        private static Operation read(DataInputStream data) throws IOException {
+            int kind = data.readByte();
+            if (kind < SET || kind > RANGE) {
+                throw new IOException("Unknown patch operation: " + kind);
+            }
+            Object[] path = new Object[readLength(data, 1)];
+            for (int i = 0; i < path.length; ++i) {
+                int key = readVarInt(data);
+                if ((key & 1) != 0) {
+                    path[i] = key >>> 1;
+                } else {
+                    byte[] name = new byte[checkLength(data, key >>> 1, 1)];
+                    data.readFully(name);
+                    path[i] = new String(name, StandardCharsets.UTF_8);
+                }
+            }
+            switch (kind) {
+                case SET: {
+                    return new Operation(kind, path, 0, 0, readTag(data));
+                }
+                case REMOVE: {
+                    if (path.length == 0 || !(path[path.length - 1] instanceof String)) {
+                        throw new IOException("Removals must end with a name");
+                    }
+                    return new Operation(kind, path, 0, 0, null);
+                }
+                case SPLICE: {
+                    int index = readVarInt(data), removed = readVarInt(data);
+                    Tag value = readTag(data);
+                    if (value.getType() != TagType.LIST) {
+                        throw new IOException("Expect " + TagType.LIST.getTagName() + " but got " + value.getType());
+                    }
+                    return new Operation(kind, path, index, removed, value);
+                }
+                default: {
+                    int index = readVarInt(data), removed = readVarInt(data);
+                    byte type = data.readByte();
+                    int length = readLength(data, type == 11 ? Integer.BYTES : type == 12 ? Long.BYTES : 1);
+                    switch (type == 7 || type == 11 || type == 12 ? TagType.getById(type) : TagType.END) {
+                        case BYTE_ARRAY: {
+                            byte[] bytes = new byte[length];
+                            data.readFully(bytes);
+                            return new Operation(kind, path, index, removed, ByteArrayTag.of(bytes));
+                        }
+                        case INT_ARRAY: {
+                            ImmutableInts.Builder ints = ImmutableInts.builder(Math.min(length, 8192));
+                            for (int i = 0; i < length; ++i) ints.add(data.readInt());
+                            return new Operation(kind, path, index, removed, IntArrayTag.of(ints.build()));
+                        }
+                        case LONG_ARRAY: {
+                            ImmutableLongs.Builder longs = ImmutableLongs.builder(Math.min(length, 8192));
+                            for (int i = 0; i < length; ++i) longs.add(data.readLong());
+                            return new Operation(kind, path, index, removed, LongArrayTag.of(longs.build()));
+                        }
+                        default: {
+                            throw new IOException("Unknown array type in the patch: " + type);
+                        }
+                    }
+                }
+            }
+        }
+
+        private static Tag readTag(DataInputStream data) throws IOException {
+            byte[] value = new byte[readLength(data, 1)];
+            data.readFully(value);
+            return new NbtReader(value).toTag();
+        }
+
+        private String pathString() {
+            StringBuilder builder = new StringBuilder();
+            for (Object key : this.path) {
+                if (key instanceof Integer) {
+                    builder.append('[').append(key).append(']');
+                } else {
+                    if (builder.length() > 0) builder.append('.');
+                    builder.append(StringTag.escape((String) key));
+                }
+            }
+            return builder.toString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (o instanceof Operation) {
+                Operation that = (Operation) o;
+                return this.kind == that.kind && this.index == that.index && this.removed == that.removed
+                        && Arrays.equals(this.path, that.path)
+                        && (this.value == null ? that.value == null : this.value.equals(that.value));
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(this.path) * 31 + this.kind;
+        }
+
+        @Override
+        public String toString() {
+            switch (this.kind) {
+                case SET:
+                    return "set " + this.pathString() + " " + this.value;
+                case REMOVE:
+                    return "remove " + this.pathString();
+                case SPLICE:
+                    return "splice " + this.pathString() + " " + this.index + " " + this.removed + " " + this.value;
+                default:
+                    return "replace " + this.pathString() + " " + this.index + " " + this.removed + " " + this.value;
+            }
+        }
+    }
+}
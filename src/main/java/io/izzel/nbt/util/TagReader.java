@@ -96,9 +96,13 @@ public class TagReader {
                     case LIST: {
                         ListTag listTag = (ListTag) tag;
                         TagListVisitor visitor = tagVisitor.visitList();
-                        stack[pointer++] = new ListContext(visitor, listTag);
                         visitor.visitType(listTag.getElemType());
                         visitor.visitLength(listTag.size());
+                        if (listTag.acceptValues(visitor)) {
+                            visitor.visitEnd();
+                        } else {
+                            stack[pointer++] = new ListContext(visitor, listTag);
+                        }
                         break;
                     }
                     case COMPOUND: {
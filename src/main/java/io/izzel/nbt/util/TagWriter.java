@@ -21,10 +21,17 @@ import io.izzel.nbt.visitor.TagValueVisitor;
 
 public class TagWriter extends TagValueVisitor {
 
+    private final TagInterner interner;
+
     private Tag tag;
 
     public TagWriter() {
+        this(null);
+    }
+
+    public TagWriter(TagInterner interner) {
         super(null);
+        this.interner = interner;
     }
 
     public Tag getTag() {
@@ -42,47 +49,47 @@ public class TagWriter extends TagValueVisitor {
 
     @Override
     public void visitByte(byte b) {
-        this.setTag(ByteTag.of(b));
+        this.setTag(this.canonical(ByteTag.of(b)));
     }
 
     @Override
     public void visitShort(short s) {
-        this.setTag(ShortTag.of(s));
+        this.setTag(this.canonical(ShortTag.of(s)));
     }
 
     @Override
     public void visitInt(int i) {
-        this.setTag(IntTag.of(i));
+        this.setTag(this.canonical(IntTag.of(i)));
     }
 
     @Override
     public void visitLong(long l) {
-        this.setTag(LongTag.of(l));
+        this.setTag(this.canonical(LongTag.of(l)));
     }
 
     @Override
     public void visitFloat(float f) {
-        this.setTag(FloatTag.of(f));
+        this.setTag(this.canonical(FloatTag.of(f)));
     }
 
     @Override
     public void visitDouble(double d) {
-        this.setTag(DoubleTag.of(d));
+        this.setTag(this.canonical(DoubleTag.of(d)));
     }
 
     @Override
     public void visitByteArray(ImmutableBytes bytes) {
-        this.setTag(ByteArrayTag.of(bytes));
+        this.setTag(this.canonical(ByteArrayTag.of(bytes)));
     }
 
     @Override
     public void visitString(String s) {
-        this.setTag(StringTag.of(s));
+        this.setTag(this.canonical(StringTag.of(s)));
     }
 
     @Override
     public TagListVisitor visitList() {
-        return new ListWriter() {
+        return new ListWriter(this.interner) {
             @Override
             protected void setTag(ListTag tag) {
                 TagWriter.this.setTag(tag);
@@ -92,7 +99,7 @@ public class TagWriter extends TagValueVisitor {
 
     @Override
     public TagCompoundVisitor visitCompound() {
-        return new CompoundWriter() {
+        return new CompoundWriter(this.interner) {
             @Override
             protected void setTag(CompoundTag tag) {
                 TagWriter.this.setTag(tag);
@@ -102,22 +109,29 @@ public class TagWriter extends TagValueVisitor {
 
     @Override
     public void visitIntArray(ImmutableInts ints) {
-        this.setTag(IntArrayTag.of(ints));
+        this.setTag(this.canonical(IntArrayTag.of(ints)));
     }
 
     @Override
     public void visitLongArray(ImmutableLongs longs) {
-        this.setTag(LongArrayTag.of(longs));
+        this.setTag(this.canonical(LongArrayTag.of(longs)));
+    }
+
+    private Tag canonical(Tag tag) {
+        return this.interner != null ? this.interner.canonical(tag) : tag;
     }
 
     private abstract static class ListWriter extends TagListVisitor {
 
+        private final TagInterner interner;
+
         private ListTag.Builder builder;
 
         private int length;
 
-        public ListWriter() {
+        public ListWriter(TagInterner interner) {
             super(null);
+            this.interner = interner;
         }
 
         @Override
@@ -132,7 +146,7 @@ public class TagWriter extends TagValueVisitor {
 
         @Override
         public TagValueVisitor visitValue() {
-            return new TagWriter() {
+            return new TagWriter(this.interner) {
                 @Override
                 protected void setTag(Tag tag) {
                     ListWriter.this.builder.add(tag);
@@ -140,13 +154,43 @@ public class TagWriter extends TagValueVisitor {
             };
         }
 
+        @Override
+        public void visitByteValues(byte[] values, int offset, int length) {
+            this.builder.addAll(values, offset, length);
+        }
+
+        @Override
+        public void visitShortValues(short[] values, int offset, int length) {
+            this.builder.addAll(values, offset, length);
+        }
+
+        @Override
+        public void visitIntValues(int[] values, int offset, int length) {
+            this.builder.addAll(values, offset, length);
+        }
+
+        @Override
+        public void visitLongValues(long[] values, int offset, int length) {
+            this.builder.addAll(values, offset, length);
+        }
+
+        @Override
+        public void visitFloatValues(float[] values, int offset, int length) {
+            this.builder.addAll(values, offset, length);
+        }
+
+        @Override
+        public void visitDoubleValues(double[] values, int offset, int length) {
+            this.builder.addAll(values, offset, length);
+        }
+
         @Override
         public void visitEnd() {
             ListTag tag = this.builder.build();
             if (tag.size() != this.length) {
                 throw new IllegalStateException("Mismatched size: expected " + this.length + " but got " + tag.size());
             }
-            this.setTag(tag);
+            this.setTag(this.interner != null ? (ListTag) this.interner.canonical(tag) : tag);
         }
 
         protected abstract void setTag(ListTag tag);
@@ -154,16 +198,18 @@ public class TagWriter extends TagValueVisitor {
 
     private static abstract class CompoundWriter extends TagCompoundVisitor {
 
+        private final TagInterner interner;
         private final CompoundTag.Builder builder;
 
-        public CompoundWriter() {
+        public CompoundWriter(TagInterner interner) {
             super(null);
+            this.interner = interner;
             this.builder = CompoundTag.builder(true);
         }
 
         @Override
         public TagValueVisitor visit(String key) {
-            return new TagWriter() {
+            return new TagWriter(this.interner) {
                 @Override
                 protected void setTag(Tag tag) {
                     CompoundWriter.this.builder.add(key, tag);
@@ -173,7 +219,8 @@ public class TagWriter extends TagValueVisitor {
 
         @Override
         public void visitEnd() {
-            this.setTag(this.builder.build());
+            CompoundTag tag = this.builder.build();
+            this.setTag(this.interner != null ? (CompoundTag) this.interner.canonical(tag) : tag);
         }
 
         protected abstract void setTag(CompoundTag tag);
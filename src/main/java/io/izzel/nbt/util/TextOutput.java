@@ -0,0 +1,198 @@
+package io.izzel.nbt.util;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+// the buffer behind the text writers, handed over in large chunks to an appendable or encoded as utf-8 into a stream
+final class TextOutput {
+
+    // starts small so that short values such as a single tag's toString stay cheap, and grows before draining
+    private static final int MIN_CAPACITY = 64;
+    private static final int MAX_CAPACITY = 8192;
+
+    final Appendable appendable;
+    final OutputStream stream;
+    final List<IOException> suppressed = new ArrayList<>(1);
+
+    char[] chars = new char[MIN_CAPACITY];
+    private byte[] bytes;
+    int count;
+    private int depth; // open lists and compounds, the buffer is handed over once a whole value is written
+
+    TextOutput(Appendable appendable, OutputStream stream) {
+        this.appendable = appendable;
+        this.stream = stream;
+    }
+
+    void enter() {
+        this.depth += 1;
+    }
+
+    void exit() throws IOException {
+        this.depth -= 1;
+        this.done();
+    }
+
+    void done() throws IOException {
+        if (this.depth == 0) {
+            this.drain(true);
+        }
+    }
+
+    // the buffer may be replaced, so callers holding it must read it again afterwards
+    void ensure(int length) throws IOException {
+        if (this.count > this.chars.length - length) {
+            int capacity = this.chars.length;
+            if (capacity < MAX_CAPACITY) {
+                this.chars = Arrays.copyOf(this.chars, Math.min(MAX_CAPACITY, Math.max(capacity * 2, this.count + length)));
+            }
+            if (this.count > this.chars.length - length) {
+                this.drain(false);
+            }
+        }
+    }
+
+    void write(char c) throws IOException {
+        if (this.count == this.chars.length) {
+            this.ensure(1);
+        }
+        this.chars[this.count++] = c;
+    }
+
+    void write(String s) throws IOException {
+        for (int i = 0, length = s.length(); i < length; ) {
+            if (this.count == this.chars.length) {
+                this.ensure(Math.min(length - i, MAX_CAPACITY));
+            }
+            int end = Math.min(length, i + this.chars.length - this.count);
+            s.getChars(i, end, this.chars, this.count);
+            this.count += end - i;
+            i = end;
+        }
+    }
+
+    void writeLong(long l) throws IOException {
+        this.ensure(20);
+        char[] chars = this.chars;
+        int start = this.count;
+        // digits are taken from the negated value, which also covers the minimum
+        if (l < 0) {
+            chars[start++] = '-';
+        } else {
+            l = -l;
+        }
+        int end = start;
+        do {
+            chars[end++] = (char) ('0' - l % 10);
+            l /= 10;
+        } while (l != 0);
+        this.count = end;
+        for (--end; start < end; ++start, --end) {
+            char c = chars[start];
+            chars[start] = chars[end];
+            chars[end] = c;
+        }
+    }
+
+    void writeFloat(float f) throws IOException {
+        this.ensure(ShortestDecimal.MAX_LENGTH);
+        this.count = ShortestDecimal.format(f, this.chars, this.count);
+    }
+
+    void writeDouble(double d) throws IOException {
+        this.ensure(ShortestDecimal.MAX_LENGTH);
+        this.count = ShortestDecimal.format(d, this.chars, this.count);
+    }
+
+    void drain(boolean last) throws IOException {
+        int count = this.count;
+        if (this.stream == null) {
+            if (this.appendable instanceof Writer) {
+                ((Writer) this.appendable).write(this.chars, 0, count);
+            } else if (this.appendable instanceof StringBuilder) {
+                ((StringBuilder) this.appendable).append(this.chars, 0, count);
+            } else if (count > 0) {
+                this.appendable.append(CharBuffer.wrap(this.chars, 0, count));
+            }
+            this.count = 0;
+            return;
+        }
+        // a high surrogate at the end waits for its pair, unless nothing else is coming
+        int end = !last && count > 0 && Character.isHighSurrogate(this.chars[count - 1]) ? count - 1 : count;
+        if (this.bytes == null || this.bytes.length < end * 3) {
+            this.bytes = new byte[this.chars.length * 3];
+        }
+        this.stream.write(this.bytes, 0, encode(this.chars, end, this.bytes));
+        if (end < count) {
+            this.chars[0] = this.chars[end];
+        }
+        this.count = count - end;
+    }
+
+    private static int encode(char[] chars, int length, byte[] bytes) {
+        int j = 0;
+        for (int i = 0; i < length; ++i) {
+            char c = chars[i];
+            if (c < 0x80) {
+                bytes[j++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[j++] = (byte) (0xC0 | c >> 6);
+                bytes[j++] = (byte) (0x80 | c & 0x3F);
+            } else if (!Character.isSurrogate(c)) {
+                bytes[j++] = (byte) (0xE0 | c >> 12);
+                bytes[j++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[j++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars[i + 1])) {
+                int codePoint = Character.toCodePoint(c, chars[++i]);
+                bytes[j++] = (byte) (0xF0 | codePoint >> 18);
+                bytes[j++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                bytes[j++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                bytes[j++] = (byte) (0x80 | codePoint & 0x3F);
+            } else {
+                bytes[j++] = '?'; // unpaired surrogates are replaced as String.getBytes does
+            }
+        }
+        return j;
+    }
+
+    void flush() throws IOException {
+        this.drain(true);
+        if (this.appendable instanceof Flushable) {
+            ((Flushable) this.appendable).flush();
+        } else if (this.stream != null) {
+            this.stream.flush();
+        }
+    }
+
+    void closeQuietly() {
+        try {
+            this.drain(true);
+            if (this.appendable instanceof Closeable) {
+                ((Closeable) this.appendable).close();
+            } else if (this.stream != null) {
+                this.stream.close();
+            }
+        } catch (IOException e) {
+            this.suppressed.add(e);
+        }
+    }
+
+    void throwException() throws IOException {
+        Iterator<IOException> iterator = this.suppressed.iterator();
+        if (iterator.hasNext()) {
+            IOException exception = iterator.next();
+            while (iterator.hasNext()) {
+                exception.addSuppressed(iterator.next());
+            }
+            throw exception;
+        }
+    }
+}
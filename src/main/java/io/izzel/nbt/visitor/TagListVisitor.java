@@ -29,6 +29,42 @@ public abstract class TagListVisitor {
         return new TagValueVisitor(null) {};
     }
 
+    public void visitByteValues(byte[] values, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; ++i) {
+            this.visitValue().visitByte(values[i]);
+        }
+    }
+
+    public void visitShortValues(short[] values, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; ++i) {
+            this.visitValue().visitShort(values[i]);
+        }
+    }
+
+    public void visitIntValues(int[] values, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; ++i) {
+            this.visitValue().visitInt(values[i]);
+        }
+    }
+
+    public void visitLongValues(long[] values, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; ++i) {
+            this.visitValue().visitLong(values[i]);
+        }
+    }
+
+    public void visitFloatValues(float[] values, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; ++i) {
+            this.visitValue().visitFloat(values[i]);
+        }
+    }
+
+    public void visitDoubleValues(double[] values, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; ++i) {
+            this.visitValue().visitDouble(values[i]);
+        }
+    }
+
     public void visitEnd() {
         if (this.visitor != null) {
             this.visitor.visitEnd();
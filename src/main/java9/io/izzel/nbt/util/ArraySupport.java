@@ -0,0 +1,90 @@
+package io.izzel.nbt.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// loaded instead of the class in src/main/java on java 9 and later
+final class ArraySupport {
+
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private ArraySupport() {
+    }
+
+    static boolean equals(byte[] a, int aFrom, byte[] b, int bFrom, int length) {
+        return Arrays.equals(a, aFrom, aFrom + length, b, bFrom, bFrom + length);
+    }
+
+    static boolean equals(int[] a, int aFrom, int[] b, int bFrom, int length) {
+        return Arrays.equals(a, aFrom, aFrom + length, b, bFrom, bFrom + length);
+    }
+
+    static boolean equals(long[] a, int aFrom, long[] b, int bFrom, int length) {
+        return Arrays.equals(a, aFrom, aFrom + length, b, bFrom, bFrom + length);
+    }
+
+    static int hashCode(byte[] a, int from, int length) {
+        if (from == 0 && length == a.length) {
+            return Arrays.hashCode(a);
+        }
+        int hash = 1;
+        for (int i = from, end = from + length; i < end; ++i) {
+            hash = hash * 31 + Byte.hashCode(a[i]);
+        }
+        return hash;
+    }
+
+    static int hashCode(int[] a, int from, int length) {
+        if (from == 0 && length == a.length) {
+            return Arrays.hashCode(a);
+        }
+        int hash = 1;
+        for (int i = from, end = from + length; i < end; ++i) {
+            hash = hash * 31 + Integer.hashCode(a[i]);
+        }
+        return hash;
+    }
+
+    static int hashCode(long[] a, int from, int length) {
+        if (from == 0 && length == a.length) {
+            return Arrays.hashCode(a);
+        }
+        int hash = 1;
+        for (int i = from, end = from + length; i < end; ++i) {
+            hash = hash * 31 + Long.hashCode(a[i]);
+        }
+        return hash;
+    }
+
+    // the views compile to plain loads and stores with a byte swap, without going through a buffer
+    static void getInts(byte[] src, int srcFrom, int[] dst, int dstFrom, int length) {
+        for (int i = 0; i < length; ++i) {
+            dst[dstFrom + i] = (int) INTS.get(src, srcFrom + i * Integer.BYTES);
+        }
+    }
+
+    static void getLongs(byte[] src, int srcFrom, long[] dst, int dstFrom, int length) {
+        for (int i = 0; i < length; ++i) {
+            dst[dstFrom + i] = (long) LONGS.get(src, srcFrom + i * Long.BYTES);
+        }
+    }
+
+    static void putInts(int[] src, int srcFrom, byte[] dst, int dstFrom, int length) {
+        for (int i = 0; i < length; ++i) {
+            INTS.set(dst, dstFrom + i * Integer.BYTES, src[srcFrom + i]);
+        }
+    }
+
+    static void putLongs(long[] src, int srcFrom, byte[] dst, int dstFrom, int length) {
+        for (int i = 0; i < length; ++i) {
+            LONGS.set(dst, dstFrom + i * Long.BYTES, src[srcFrom + i]);
+        }
+    }
+
+    static long multiplyHigh(long x, long y) {
+        return Math.multiplyHigh(x, y);
+    }
+}
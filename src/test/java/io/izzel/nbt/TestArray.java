@@ -3,11 +3,14 @@ package io.izzel.nbt;
 import io.izzel.nbt.util.ImmutableBytes;
 import io.izzel.nbt.util.ImmutableInts;
 import io.izzel.nbt.util.ImmutableLongs;
+import io.izzel.nbt.util.Nibbles;
+import io.izzel.nbt.util.PackedLongs;
 import org.junit.Test;
 
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
+import java.util.Spliterator;
 
 import static org.junit.Assert.*;
 
@@ -46,4 +49,145 @@ public class TestArray {
         assertEquals(DUMMY_BYTES_TAG.hashCode(), DUMMY_IMMUTABLE_BYTES.hashCode());
         assertEquals(DUMMY_LONGS_TAG.hashCode(), DUMMY_IMMUTABLE_LONGS.hashCode());
     }
+
+    @Test
+    public void testPacked() {
+        // 0x7 and 0x1 packed five bits apart, entry 12 spans the first two longs in the old layout
+        ImmutableLongs longs = ImmutableLongs.builder().add(new long[]{0x0000000000000027L | 0x1FL << 60, 0x1L}).build();
+        PackedLongs spanning = PackedLongs.spanning(longs, 5, 14);
+        assertEquals(spanning.get(0), 7);
+        assertEquals(spanning.get(1), 1);
+        assertEquals(spanning.get(12), 0x1F);
+        assertEquals(spanning.get(13), 0);
+        assertEquals(PackedLongs.pack(spanning.unpack(), 5, false).getLongs(), longs);
+
+        PackedLongs padded = spanning.repack(5, true);
+        assertEquals(padded.getLongs().size(), 2);
+        assertArrayEquals(padded.unpack(), spanning.unpack());
+        assertEquals(padded.get(12), 0x1F);
+        assertEquals(padded.with(12, 3).get(12), 3);
+        assertEquals(padded.get(12), 0x1F);
+        assertEquals(spanning.with(12, 3).get(12), 3);
+        assertEquals(spanning.with(12, 3).get(1), 1);
+
+        Nibbles nibbles = Nibbles.of(DUMMY_IMMUTABLE_BYTES);
+        assertArrayEquals(nibbles.unpack(), new int[]{7, 0, 8, 0, 9, 0});
+        assertEquals(nibbles.with(1, 0xF).getBytes().get(0), (byte) 0xF7);
+        assertEquals(Nibbles.pack(nibbles.unpack()), nibbles);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPackedOverflow() {
+        PackedLongs.pack(new int[]{1, 2, 32}, 5, true);
+    }
+
+    @Test
+    public void testDirect() {
+        long[] longs = {1L, -2L, Long.MAX_VALUE, 42L};
+        ImmutableLongs heap = ImmutableLongs.builder().add(longs).build();
+        ImmutableLongs direct = heap.toDirect();
+        assertTrue(direct.isDirect());
+        assertEquals(heap, direct);
+        assertEquals(direct, heap);
+        assertEquals(heap.hashCode(), direct.hashCode());
+        assertEquals(heap.toString(), direct.toString());
+        assertArrayEquals(longs, direct.toLongArray());
+        assertArrayEquals(new long[]{-2L, Long.MAX_VALUE}, ImmutableLongs.slice(direct, 1, 2).stream().toArray());
+        assertEquals(ImmutableLongs.slice(heap, 1, 3), ImmutableLongs.slice(direct, 1, 3).toBuilder().build());
+        assertEquals(heap.concat(heap), direct.concat(heap));
+
+        ByteBuffer region = ByteBuffer.allocateDirect(20);
+        region.putInt(7).putInt(-1).putInt(3).putInt(0x10203040).putInt(5).flip();
+        region.position(4);
+        ImmutableInts ints = ImmutableInts.view(region);
+        assertArrayEquals(new int[]{-1, 3, 0x10203040, 5}, ints.toIntArray());
+        assertEquals(ImmutableInts.builder().add(new int[]{-1, 3, 0x10203040, 5}).build(), ints);
+        assertEquals(0x10203040, ints.toIntBuffer().get(2));
+        assertEquals(ImmutableLongs.builder().add(0xFFFFFFFF00000003L).build(), ImmutableLongs.view(region.duplicate().limit(12)));
+
+        ImmutableBytes bytes = ImmutableBytes.view(region);
+        assertEquals(16, bytes.size());
+        assertEquals(0x10, bytes.get(8));
+        assertEquals(ImmutableBytes.slice(bytes, 8, 4), ImmutableBytes.builder().add(new byte[]{0x10, 0x20, 0x30, 0x40}).build().toDirect());
+        assertEquals(0x1, Nibbles.of(bytes).get(17));
+        assertEquals(-2, PackedLongs.padded(direct, 32, 8).get(2));
+        assertArrayEquals(PackedLongs.padded(heap, 5, 48).unpack(), PackedLongs.padded(direct, 5, 48).unpack());
+    }
+
+    @Test
+    public void testPrimitiveTraversal() {
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = i * 31L - 7;
+        }
+        ImmutableLongs longs = ImmutableLongs.slice(ImmutableLongs.builder().add(values).build(), 100, 9000);
+        long expected = 0;
+        for (int i = 100; i < 9100; ++i) {
+            expected += values[i];
+        }
+        for (ImmutableLongs l : new ImmutableLongs[]{longs, longs.toDirect()}) {
+            assertEquals(expected, l.stream().parallel().sum());
+            assertEquals(9000, l.stream().parallel().filter(v -> true).count());
+            assertTrue(l.spliterator().hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE));
+            assertArrayEquals(longs.toLongArray(), l.stream().parallel().toArray());
+            long[] sum = new long[1];
+            l.forEachLong(v -> sum[0] += v);
+            assertEquals(expected, sum[0]);
+            assertEquals(values[100], l.iterator().nextLong());
+        }
+
+        ImmutableInts ints = ImmutableInts.builder().add(new int[]{3, 1, 4, 1, 5, 9, 2, 6}).build().toDirect();
+        assertEquals(31, ints.stream().parallel().sum());
+        assertArrayEquals(new int[]{1, 4, 1}, ImmutableInts.slice(ints, 1, 3).stream().toArray());
+        assertEquals(3, ints.iterator().nextInt());
+
+        byte[] raw = new byte[4096];
+        for (int i = 0; i < raw.length; ++i) {
+            raw[i] = (byte) i;
+        }
+        ImmutableBytes bytes = ImmutableBytes.builder().add(raw).build();
+        assertEquals(-2048, bytes.stream().parallel().sum());
+        assertEquals(-1, ImmutableBytes.slice(bytes, 255, 2).stream().min().getAsInt());
+        assertEquals(4096, bytes.intSpliterator().getExactSizeIfKnown());
+        int[] count = new int[1];
+        bytes.forEachByte(b -> count[0] += b == 0 ? 1 : 0);
+        assertEquals(16, count[0]);
+        assertEquals(-128, ImmutableBytes.slice(bytes, 128, 1).intIterator().nextInt());
+    }
+
+    @Test
+    public void testConcat() {
+        ImmutableLongs longs = ImmutableLongs.empty();
+        ImmutableInts ints = ImmutableInts.empty();
+        ImmutableBytes bytes = ImmutableBytes.empty();
+        int count = 200000;
+        for (int i = 0; i < count; ++i) {
+            longs = longs.toBuilder().add((long) i << 20).build();
+            ints = i % 1000 == 0 ? ints.concat(ImmutableInts.builder().add(new int[100]).build()) : ints.toBuilder().add(i).build();
+            bytes = bytes.concat(ImmutableBytes.builder().add((byte) i).build());
+        }
+        assertEquals(count, longs.size());
+        assertEquals(3L << 20, longs.get(3));
+        assertEquals((long) (count - 1) << 20, longs.get(count - 1));
+        long[] expected = new long[count];
+        for (int i = 0; i < count; ++i) {
+            expected[i] = (long) i << 20;
+        }
+        assertArrayEquals(expected, longs.toLongArray());
+        assertEquals(ImmutableLongs.builder().add(expected).build(), longs);
+        assertEquals(ImmutableLongs.builder().add(expected).build().hashCode(), longs.hashCode());
+        assertEquals(count - 200 + 200 * 100, ints.size());
+        assertEquals(999, ints.get(1098));
+        assertEquals(1001, ints.get(1199));
+        assertEquals((byte) 1234, bytes.get(1234));
+        assertEquals(ImmutableBytes.slice(bytes, 256, 256), ImmutableBytes.slice(bytes, 0, 256));
+
+        ImmutableLongs left = ImmutableLongs.builder().add(new long[100]).build();
+        ImmutableLongs joined = left.concat(ImmutableLongs.builder().add(new long[]{1, 2, 3}).build()).concat(left);
+        assertEquals(203, joined.size());
+        assertEquals(3, joined.get(102));
+        assertArrayEquals(new long[]{2, 3, 0}, ImmutableLongs.slice(joined, 101, 3).toLongArray());
+        assertEquals(6, joined.stream().parallel().sum());
+        assertEquals(joined, joined.toDirect());
+    }
 }
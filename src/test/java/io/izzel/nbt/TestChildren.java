@@ -115,4 +115,196 @@ public class TestChildren {
         CompoundTag tag = TestIO.DUMMY_TAG_DATA;
         assertEquals(tag.get("Boolean", TagType.END, TestNumber.DUMMY_TRUE_TAG), TestNumber.DUMMY_TRUE_TAG);
     }
+
+    @Test
+    public void testLargeCompoundEdit() {
+        CompoundTag.Builder builder = CompoundTag.builder();
+        for (int i = 0; i < 1000; ++i) {
+            builder.add("Key" + i, i);
+        }
+        CompoundTag tag = builder.build();
+        CompoundTag edited = tag.toBuilder().set("Key42", -42).remove("Key7").add("Unknown", 1000).build();
+        assertEquals(tag.size(), 1000);
+        assertEquals(tag.getIntOrDefault("Key42"), 42);
+        assertEquals(tag.getIntOrDefault("Key7"), 7);
+        assertEquals(edited.size(), 1000);
+        assertEquals(edited.getIntOrDefault("Key42"), -42);
+        assertEquals(edited.getOrDefault("Key7"), TestEnd.DUMMY_END_TAG);
+        assertEquals(edited.dump().get(7).getKey(), "Key8");
+        assertEquals(edited.dump().get(999).getKey(), "Unknown");
+        assertNotEquals(edited, tag);
+        assertEquals(edited.toBuilder().set("Key42", 42).remove("Unknown").build().size(), 999);
+    }
+
+    @Test
+    public void testLargeListAppend() {
+        ListTag ints = ListTag.empty(), strings = ListTag.empty();
+        for (int i = 0; i < 10000; ++i) {
+            ints = ints.toBuilder().add(i).build();
+            strings = strings.toBuilder().add(Integer.toString(i)).build();
+        }
+        ListTag forkedInts = ints.toBuilder().remove(-1).add(-1).build();
+        ListTag forkedStrings = strings.toBuilder().remove(0).add("Unknown").build();
+        assertEquals(ints.size(), 10000);
+        assertEquals(ints.getIntOrDefault(9999), 9999);
+        assertEquals(forkedInts.getIntOrDefault(9999), -1);
+        assertEquals(strings.getStringOrDefault(0), "0");
+        assertEquals(forkedStrings.getStringOrDefault(0), "1");
+        assertEquals(forkedStrings.getStringOrDefault(9999), "Unknown");
+        assertEquals(ints.toBuilder().add(10000).build().getIntOrDefault(10000), 10000);
+    }
+
+    @Test
+    public void testDigest() {
+        CompoundTag tag = TestIO.DUMMY_TAG_DATA;
+        CompoundTag.Builder builder = CompoundTag.builder();
+        for (int i = tag.size() - 1; i >= 0; --i) {
+            builder.add(tag.dump().get(i).getKey(), tag.dump().get(i).getValue());
+        }
+        CompoundTag reversed = builder.build();
+        CompoundTag edited = tag.toBuilder(true).set("ListInt", ListTag.builder().add(-1).build()).build();
+        assertEquals(reversed.digest(), tag.digest());
+        assertNotEquals(edited.digest(), tag.digest());
+        assertEquals(edited.toBuilder(true).set("ListInt", tag.getOrDefault("ListInt")).build().digest(), tag.digest());
+        assertEquals(ListTag.empty(TagType.INT).digest(), ListTag.empty(TagType.STRING).digest());
+        assertNotEquals(ListTag.builder().add((byte) 1).build().digest(), ListTag.builder().add(1).build().digest());
+        assertSame(tag.digest(), tag.digest());
+        assertEquals(StringTag.of("a").digest(), StringTag.of("a").digest());
+        assertNotEquals(ListTag.builder().add("a").build().digest(), ListTag.builder().add(ListTag.builder().add("a").build()).build().digest());
+        assertNotEquals(CompoundTag.builder().add("a", "b").build().digest(), CompoundTag.builder().add("ab", "").build().digest());
+    }
+
+    @Test
+    public void testMutable() {
+        CompoundTag tag = TestIO.DUMMY_TAG_DATA;
+        MutableCompoundTag mutable = tag.toMutable();
+        assertFalse(mutable.isDirty());
+        assertSame(mutable.freeze(), tag);
+
+        mutable.getCompound("Compound").set("Known", 0);
+        mutable.getList("ListCompound").getCompound(0).remove("Unknown");
+        mutable.getList("ListInt").add(-1);
+        mutable.remove("Int");
+        assertTrue(mutable.isDirty());
+        assertEquals(mutable.size(), tag.size() - 1);
+        assertEquals(mutable.getCompound("Compound").getOrDefault("Known"), IntTag.of(0));
+
+        CompoundTag frozen = mutable.freeze();
+        assertFalse(mutable.isDirty());
+        assertSame(mutable.freeze(), frozen);
+        assertSame(frozen.getOrDefault("ListString"), tag.getOrDefault("ListString"));
+        assertEquals(frozen.getCompoundOrDefault("Compound").size(), 2);
+        assertEquals(frozen.getListOrDefault("ListCompound").getCompoundOrDefault(0).size(), 0);
+        assertEquals(frozen.getListOrDefault("ListInt").getIntOrDefault(1), -1);
+        assertEquals(frozen.getOrDefault("Int"), TestEnd.DUMMY_END_TAG);
+
+        mutable.getCompound("Compound").set("Known", 1);
+        assertEquals(mutable.freeze().getCompoundOrDefault("Compound").getIntOrDefault("Known"), 1);
+        assertSame(mutable.freeze().getOrDefault("ListInt"), frozen.getOrDefault("ListInt"));
+
+        MutableCompoundTag kept = mutable.getCompound("Compound");
+        mutable.freeze();
+        kept.set("Known", 2);
+        assertTrue(mutable.isDirty());
+        assertEquals(mutable.freeze().getCompoundOrDefault("Compound").getIntOrDefault("Known"), 2);
+        mutable.set("Compound", CompoundTag.empty());
+        mutable.freeze();
+        kept.set("Known", 3);
+        assertFalse(mutable.isDirty());
+        assertEquals(mutable.freeze().getCompoundOrDefault("Compound").size(), 0);
+    }
+
+    @Test
+    public void testCompoundEntries() {
+        CompoundTag tag = TestIO.DUMMY_TAG_DATA;
+        int hash = 0;
+        for (CompoundTag.Entry<?> entry : tag.dump()) {
+            hash += entry.getKey().hashCode() ^ entry.getValue().hashCode(); // the same as for maps
+        }
+        assertEquals(tag.hashCode(), hash);
+        CompoundTag.Builder builder = CompoundTag.builder();
+        for (int i = tag.size() - 1; i >= 0; --i) {
+            builder.add(tag.dump().get(i).getKey(), tag.dump().get(i).getValue());
+        }
+        assertEquals(builder.build().hashCode(), tag.hashCode());
+        assertEquals(tag.toBuilder().remove("Int").add("Int", 1).build().hashCode(), tag.toBuilder(true).set("Int", 1).build().hashCode());
+
+        CompoundTag replaced = CompoundTag.builder(true).add("a", 1).add("b", 2).add("a", 3).build();
+        assertEquals(replaced.size(), 2);
+        assertEquals(replaced.dump().get(0).getKey(), "a");
+        assertEquals(replaced.getIntOrDefault("a"), 3);
+        assertEquals(replaced, CompoundTag.builder().add("a", 3).add("b", 2).build());
+        assertEquals(replaced.hashCode(), CompoundTag.builder().add("b", 2).add("a", 3).build().hashCode());
+        try {
+            CompoundTag.builder().add("a", 1).add("a", 3);
+            fail("Expect a duplicate name");
+        } catch (IllegalArgumentException e) {
+            assertEquals(e.getMessage(), "Duplicate tag names: a");
+        }
+    }
+
+    @Test
+    public void testShapes() {
+        // names get a shared shape one at a time, each once it is added the second time along the same path
+        CompoundTag[] tags = new CompoundTag[5];
+        for (int i = 0; i < tags.length; ++i) {
+            tags[i] = CompoundTag.builder().add("shape.x", i).add("shape.y", "a").add("shape.z", 0.5).build();
+        }
+        assertNotSame(tags[2].names(), tags[3].names());
+        assertSame(tags[3].names(), tags[4].names()); // sorted names are cached on the shared shape
+        assertNotSame(CompoundTag.builder().add("shape.y", 2).add("shape.x", 1).add("shape.z", 3).build().names(), tags[4].names());
+        CompoundTag removed = tags[4].toBuilder().remove("shape.y").build();
+        assertEquals(removed, CompoundTag.builder().add("shape.x", 4).add("shape.z", 0.5).build());
+        assertEquals(removed.dump().get(1).getKey(), "shape.z");
+        assertEquals(tags[4].names().size(), 3);
+        assertSame(CompoundShape.EMPTY.with("shape.w"), null);
+        assertSame(CompoundShape.EMPTY.with("shape.w").with("shape.v"), null);
+        assertSame(CompoundShape.EMPTY.with("shape.w"), CompoundShape.EMPTY.with("shape.w"));
+
+        CompoundTag.Builder builder = CompoundTag.builder();
+        for (int i = 0; i < CompoundShape.MAX_SHARED_SIZE; ++i) {
+            builder.add("key" + i, i);
+        }
+        CompoundTag shaped = builder.build();
+        CompoundTag large = shaped.toBuilder().add("extra", -1).build();
+        assertEquals(large.size(), CompoundShape.MAX_SHARED_SIZE + 1);
+        for (int i = 0; i < CompoundShape.MAX_SHARED_SIZE; ++i) {
+            assertEquals(shaped.getIntOrDefault("key" + i), i);
+            assertEquals(large.getIntOrDefault("key" + i), i);
+        }
+        assertEquals(large.getIntOrDefault("extra"), -1);
+        CompoundTag shrunk = large.toBuilder().remove("extra").build();
+        assertEquals(shrunk.names(), shaped.names());
+        assertEquals(shrunk, shaped);
+        assertEquals(large.toBuilder().remove("key0").build().dump().get(0).getKey(), "key1");
+    }
+
+    @Test
+    public void testNarrowing() {
+        CompoundTag tag = CompoundTag.builder()
+                .add("Long", 0x1_0000_0101L)
+                .add("Double", 300.7)
+                .add("NaN", Float.NaN)
+                .add("String", "1")
+                .build();
+        assertEquals(tag.getInt("Long", -1), 257);
+        assertEquals(tag.getShort("Long", (short) -1), 257);
+        assertEquals(tag.getByte("Long", (byte) -1), 1);
+        assertEquals(tag.getFloat("Long", -1), 0x1_0000_0101L, 0.0F);
+        assertEquals(tag.getLong("Double", -1), 300);
+        assertEquals(tag.getInt("Double", -1), 300);
+        assertEquals(tag.getByte("Double", (byte) -1), (byte) 300);
+        assertEquals(tag.getFloat("Double", -1), 300.7F, 0.0F);
+        assertEquals(tag.getInt("NaN", -1), 0);
+        assertEquals(tag.getInt("String", -1), -1);
+        assertEquals(tag.getDouble("Unknown", -1), -1, 0.0D);
+        assertEquals(tag.getString("Long", "fallback"), "fallback");
+
+        ListTag longs = ListTag.builder().add(0x1_0000_0101L).build();
+        assertEquals(longs.getInt(0, -1), 257);
+        assertEquals(longs.getByte(0, (byte) -1), 1);
+        assertEquals(longs.getInt(1, -1), -1);
+        assertEquals(ListTag.builder().add(300.7).build().getShort(0, (short) -1), 300);
+        assertEquals(ListTag.builder().add("1").build().getLong(0, -1), -1);
+    }
 }
@@ -2,7 +2,9 @@ package io.izzel.nbt;
 
 import io.izzel.nbt.util.CompressedNbtReader;
 import io.izzel.nbt.util.NbtReader;
+import io.izzel.nbt.util.TagInterner;
 import io.izzel.nbt.util.TagReader;
+import io.izzel.nbt.util.TagWriter;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -18,6 +20,7 @@ import java.util.Random;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 public class TestIO {
 
@@ -156,6 +159,57 @@ public class TestIO {
         assertEquals(new NbtReader(this.tmpFile).toCompoundTag(), compoundTag);
     }
 
+    @Test
+    public void testInterned() throws IOException {
+        TagInterner interner = new TagInterner();
+        TagWriter firstWriter = new TagWriter(interner), secondWriter = new TagWriter(interner);
+        new NbtReader(DUMMY_DATA).accept(firstWriter);
+        new NbtReader(DUMMY_DATA).accept(secondWriter);
+        CompoundTag first = (CompoundTag) firstWriter.getTag(), second = (CompoundTag) secondWriter.getTag();
+        assertSame(first, second);
+        assertSame(first.getListOrDefault("ListCompound").getCompoundOrDefault(0), first.getCompoundOrDefault("Compound"));
+        assertSame(interner.intern(DUMMY_TAG_DATA), first);
+        assertEquals(first, DUMMY_TAG_DATA);
+
+        ListTag strings = interner.intern(ListTag.empty(TagType.STRING));
+        assertSame(interner.intern(ListTag.empty(TagType.INT)).getElemType(), TagType.INT);
+        assertSame(interner.intern(ListTag.empty(TagType.STRING)), strings);
+        CompoundTag nested = interner.intern(CompoundTag.builder().add("List", ListTag.empty(TagType.INT)).build());
+        assertSame(nested.getListOrDefault("List").getElemType(), TagType.INT);
+
+        CompoundTag ab = interner.intern(CompoundTag.builder().add("a", 1).add("b", 2).build());
+        CompoundTag ba = interner.intern(CompoundTag.builder().add("b", 2).add("a", 1).build());
+        assertEquals(ba.dump().get(0).getKey(), "b");
+        assertSame(interner.intern(CompoundTag.builder().add("a", 1).add("b", 2).build()), ab);
+
+        CompoundTag edited = interner.intern(DUMMY_TAG_DATA.toBuilder(true).set("Int", -1).build());
+        assertSame(edited.getOrDefault("ListCompound"), first.getOrDefault("ListCompound"));
+        assertSame(edited.getOrDefault("String"), first.getOrDefault("String"));
+        CompoundTag unseen = CompoundTag.builder().add("Unseen", ListTag.builder().add("unseen").build()).build();
+        assertSame(interner.intern(unseen), unseen); // nothing is copied when no child has a pooled twin
+    }
+
+    @Test
+    public void testLargeNumericLists() throws IOException {
+        byte[] bytes = new byte[0x7FF7];
+        new Random(TestNumber.DUMMY_LONG).nextBytes(bytes);
+        short[] shorts = new short[bytes.length / 2];
+        ByteBuffer.wrap(bytes).asShortBuffer().get(shorts);
+        double[] doubles = new double[bytes.length / 8];
+        ByteBuffer.wrap(bytes).asDoubleBuffer().get(doubles);
+        CompoundTag compoundTag = CompoundTag.builder()
+                .add("Bytes", ListTag.builder().addAll(bytes, 0, bytes.length).build())
+                .add("Shorts", ListTag.builder().addAll(shorts, 0, shorts.length).build())
+                .add("Doubles", ListTag.builder().addAll(doubles, 0, doubles.length).build()).build();
+
+        new TagReader(compoundTag).toBinaryFile(this.tmpFile);
+        CompoundTag result = new NbtReader(this.tmpFile).toCompoundTag();
+        assertEquals(result, compoundTag);
+        assertArrayEquals(result.getListOrDefault("Bytes").toByteArray(), bytes);
+        assertArrayEquals(result.getListOrDefault("Shorts").toShortArray(), shorts);
+        assertArrayEquals(result.getListOrDefault("Doubles").toDoubleArray(), doubles, 0.0D);
+    }
+
     @Test
     public void testHugeByteArray() throws IOException, GeneralSecurityException {
         byte[] oldSHA256 = oldBytesSHA256(), newSHA256 = newBytesSHA256();
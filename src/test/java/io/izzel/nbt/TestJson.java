@@ -0,0 +1,136 @@
+package io.izzel.nbt;
+
+import io.izzel.nbt.util.JsonNbtReader;
+import io.izzel.nbt.util.JsonNbtWriter;
+import io.izzel.nbt.util.JsonTypeHints;
+import io.izzel.nbt.util.NbtReader;
+import io.izzel.nbt.util.TagReader;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TestJson {
+
+    private static final CompoundTag DUMMY_TAG = CompoundTag.builder()
+            .add("Int", 42)
+            .add("Byte", (byte) -7)
+            .add("Short", (short) 1234)
+            .add("Long", Long.MIN_VALUE)
+            .add("Float", 0.1f)
+            .add("Double", 0.1)
+            .add("Whole", 42.0)
+            .add("NaN", Float.NaN)
+            .add("Infinity", Double.NEGATIVE_INFINITY)
+            .add("String", "\"quoted\"\n\t\u0001\u00e9\ud83d\ude00")
+            .add("Bytes", new byte[]{-128, 0, 127})
+            .add("Ints", new int[]{Integer.MIN_VALUE, 0})
+            .add("Longs", new long[0])
+            .add("Booleans", ListTag.builder().add(true).add(false).build())
+            .add("Empty", ListTag.builder().build())
+            .add("Nested", ListTag.builder().add(CompoundTag.empty()).add(CompoundTag.builder().add("@type", "fake").add("x", 1).build()).build())
+            .add("Lists", ListTag.builder().add(ListTag.builder().add(1L).build()).add(ListTag.builder().add("s").build()).build())
+            .build();
+
+    @Test
+    public void testMarked() throws IOException {
+        StringWriter writer = new StringWriter();
+        new TagReader(DUMMY_TAG).accept(new JsonNbtWriter(writer));
+        String json = writer.toString();
+        assertEquals(new JsonNbtReader(json).toTag(), DUMMY_TAG);
+        assertEquals(new JsonNbtReader(new StringReader(json)).toTag(), DUMMY_TAG);
+
+        StringBuilder builder = new StringBuilder();
+        new TagReader(LongTag.of(5)).accept(new JsonNbtWriter(builder));
+        assertEquals(builder.toString(), "{\"@type\":\"long\",\"@value\":5}");
+        builder.setLength(0);
+        new TagReader(CompoundTag.builder().add("@type", 1).build()).accept(new JsonNbtWriter(builder));
+        assertEquals(builder.toString(), "{\"@type\":\"compound\",\"@value\":{\"@type\":1}}");
+
+        JsonTypeHints hints = JsonTypeHints.marked("$t", "$v");
+        builder.setLength(0);
+        new TagReader(DUMMY_TAG).accept(new JsonNbtWriter(builder, hints));
+        assertEquals(new JsonNbtReader(builder.toString(), hints).toTag(), DUMMY_TAG);
+    }
+
+    @Test
+    public void testNone() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        CompoundTag tag = CompoundTag.builder().add("b", (byte) 1).add("l", 5L).add("d", 2.5).add("s", "x").build();
+        new TagReader(tag).accept(new JsonNbtWriter(builder, JsonTypeHints.none()));
+        assertEquals(builder.toString(), "{\"b\":1,\"l\":5,\"d\":2.5,\"s\":\"x\"}");
+
+        String json = " { \"a\" : [1.5, 2, 3] , \"b\": [4294967296, 1], \"c\": true, \"d\": {\"@type\": \"long\"}, \"e\": \"\\u0041\\/\" } ";
+        CompoundTag expected = CompoundTag.builder()
+                .add("a", ListTag.builder().add(1.5).add(2.0).add(3.0).build())
+                .add("b", ListTag.builder().add(4294967296L).add(1L).build())
+                .add("c", true)
+                .add("d", CompoundTag.builder().add("@type", "long").build())
+                .add("e", "A/")
+                .build();
+        assertEquals(new JsonNbtReader(json, JsonTypeHints.none()).toCompoundTag(), expected);
+        assertEquals(new JsonNbtReader("[1, 2.5]", JsonTypeHints.none()).toTag(), ListTag.builder().add(1.0).add(2.5).build());
+        assertEquals(new JsonNbtReader("[[1, 2], [1, 5000000000]]", JsonTypeHints.none()).toTag(), ListTag.builder()
+                .add(ListTag.builder().add(1).add(2).build())
+                .add(ListTag.builder().add(1L).add(5000000000L).build())
+                .build());
+
+        builder.setLength(0);
+        ListTag longs = ListTag.builder().add(1L).add(5000000000L).build();
+        new TagReader(longs).accept(new JsonNbtWriter(builder, JsonTypeHints.none()));
+        assertEquals(builder.toString(), "[1,5000000000]");
+        assertEquals(new JsonNbtReader(builder.toString(), JsonTypeHints.none()).toTag(), longs);
+        assertEquals(new JsonNbtReader("null").toTag(), EndTag.of());
+    }
+
+    @Test
+    public void testStreaming() throws IOException {
+        byte[] nbt = new TagReader(TestIO.DUMMY_TAG_DATA).toBinaryNbt();
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (JsonNbtWriter writer = JsonNbtWriter.utf8(stream)) {
+            new NbtReader(new ByteArrayInputStream(nbt)).accept(writer);
+        }
+        StringWriter writer = new StringWriter();
+        new NbtReader(new ByteArrayInputStream(nbt)).accept(new JsonNbtWriter(writer));
+        assertEquals(new String(stream.toByteArray(), StandardCharsets.UTF_8), writer.toString());
+
+        assertArrayEquals(new JsonNbtReader(new ByteArrayInputStream(stream.toByteArray())).toBinaryNbt(), nbt);
+    }
+
+    @Test
+    public void testParseFailure() throws IOException {
+        assertFailure("{\"a\":1", JsonNbtReader.ParseFailureException.Type.UNEXPECTED_EOF);
+        assertFailure("{\"a\" 1}", JsonNbtReader.ParseFailureException.Type.UNEXPECTED_CHARACTER);
+        assertFailure("[1,\"a\"]", JsonNbtReader.ParseFailureException.Type.MIXED_TAG_TYPES_IN_LIST);
+        assertFailure("[1,2.5,\"a\"]", JsonNbtReader.ParseFailureException.Type.MIXED_TAG_TYPES_IN_LIST);
+        assertFailure("[1,2.5]", JsonNbtReader.ParseFailureException.Type.MIXED_TAG_TYPES_IN_LIST);
+        assertFailure("[1,{\"@type\":\"long\",\"@value\":5}]", JsonNbtReader.ParseFailureException.Type.MIXED_TAG_TYPES_IN_LIST);
+        assertFailure("{\"a\":01}", JsonNbtReader.ParseFailureException.Type.INVALID_NUMBER);
+        assertFailure("[1.]", JsonNbtReader.ParseFailureException.Type.INVALID_NUMBER);
+        assertFailure("+1", JsonNbtReader.ParseFailureException.Type.INVALID_NUMBER);
+        assertFailure("[1,null]", JsonNbtReader.ParseFailureException.Type.UNEXPECTED_NULL);
+        assertFailure("\"\\x\"", JsonNbtReader.ParseFailureException.Type.INVALID_ESCAPE);
+        assertFailure("1-2", JsonNbtReader.ParseFailureException.Type.INVALID_NUMBER);
+        assertFailure("{\"@type\":\"byte\",\"@value\":300}", JsonNbtReader.ParseFailureException.Type.INVALID_NUMBER);
+        assertFailure("{\"@type\":\"list\",\"@value\":[]}", JsonNbtReader.ParseFailureException.Type.INVALID_TYPE_HINT);
+        assertFailure("{} {}", JsonNbtReader.ParseFailureException.Type.TRAILING_CHARACTERS);
+    }
+
+    private static void assertFailure(String json, JsonNbtReader.ParseFailureException.Type type) throws IOException {
+        try {
+            new JsonNbtReader(json).toTag();
+            fail("Expect a parse failure");
+        } catch (JsonNbtReader.ParseFailureException e) {
+            assertEquals(e.getType(), type);
+        }
+    }
+}
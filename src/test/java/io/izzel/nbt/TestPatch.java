@@ -0,0 +1,76 @@
+package io.izzel.nbt;
+
+import io.izzel.nbt.util.TagPatch;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestPatch {
+
+    @Test
+    public void testDiffApply() throws IOException {
+        CompoundTag tag = TestIO.DUMMY_TAG_DATA;
+        CompoundTag edited = tag.toBuilder(true)
+                .set("Int", -1)
+                .set("Ints1", new int[]{1, 5, 3, 4})
+                .set("ListInt", ListTag.builder().add(1).add(TestNumber.DUMMY_INT).build())
+                .set("ListCompound", ListTag.builder().add(TestChildren.DUMMY_COMPOUND_TAG.toBuilder().add("Known", 0).build()).build())
+                .set("Added", "Unknown")
+                .remove("Longs2")
+                .build();
+
+        TagPatch patch = TagPatch.diff(tag, edited);
+        assertEquals(patch.size(), 6);
+        assertEquals(patch.apply(tag), edited);
+        assertEquals(TagPatch.diff(edited, tag).apply(edited), tag);
+        assertTrue(TagPatch.diff(tag, tag).isEmpty());
+
+        TagPatch decoded = TagPatch.fromByteArray(patch.toByteArray());
+        assertEquals(decoded, patch);
+        assertEquals(decoded.apply(tag), edited);
+        assertEquals(TagPatch.diff(tag, ListTag.empty()).apply(tag), ListTag.empty());
+    }
+
+    @Test
+    public void testCorruptLengths() {
+        byte[][] corrupt = {
+                {1, 0, -1, -1, -1, -1, 7}, // path length
+                {1, 0, 1, -2, -1, -1, -1, 7}, // name length
+                {1, 0, 0, -1, -1, -1, -1, 7}, // tag length
+                {1, 3, 0, 0, 0, 12, -128, -128, -128, -128, 1, 0, 0, 0, 0} // long array length
+        };
+        for (byte[] bytes : corrupt) {
+            try {
+                TagPatch.fromByteArray(bytes);
+                fail("Expect a corrupt length");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().startsWith("Length "));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testApplyMismatch() {
+        CompoundTag tag = TestIO.DUMMY_TAG_DATA;
+        TagPatch patch = TagPatch.diff(tag, tag.toBuilder(true).set("Compound", CompoundTag.empty()).build());
+        patch.apply(tag.toBuilder().remove("Compound").build());
+    }
+
+    @Test
+    public void testDeepRecursiveDiff() throws IOException {
+        Tag subtag = TestRecursive.DUMMY_RECURSIVE_COMPOUND_TAG.getOrDefault("DeepRecursiveCompound");
+
+        CompoundTag tag = CompoundTag.builder().add("Unknown", 42).build();
+        for (int i = 0; i < 0x7FF7; ++i) {
+            tag = CompoundTag.builder().add("", tag).build();
+        }
+
+        TagPatch patch = TagPatch.fromByteArray(TagPatch.diff(subtag, tag).toByteArray());
+        assertEquals(patch.size(), 1);
+        assertEquals(patch.apply(subtag), tag);
+    }
+}
@@ -0,0 +1,85 @@
+package io.izzel.nbt;
+
+import io.izzel.nbt.util.NbtPath;
+import io.izzel.nbt.util.NbtReader;
+import io.izzel.nbt.util.TagReader;
+import io.izzel.nbt.util.TagWriter;
+import io.izzel.nbt.visitor.TagValueVisitor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TestPath {
+
+    public static final CompoundTag DUMMY_ITEMS = CompoundTag.builder()
+            .add("Items", ListTag.builder()
+                    .add(CompoundTag.builder().add("id", "stone").add("Count", 1).build())
+                    .add(CompoundTag.builder().add("id", "dirt").add("Count", 2).add("tag", TestIO.DUMMY_TAG_DATA).build())
+                    .add(CompoundTag.builder().add("id", "stone").add("Count", 3).build())
+                    .build())
+            .add("Owner name", TestString.DUMMY_STRING)
+            .build();
+
+    @Test
+    public void testGet() {
+        assertEquals(NbtPath.compile("Items[0].id").getOrDefault(DUMMY_ITEMS), StringTag.of("stone"));
+        assertEquals(NbtPath.compile("Items[-1].Count").getOrDefault(DUMMY_ITEMS), IntTag.of(3));
+        assertEquals(NbtPath.compile("Items[1].tag.ListInt[0]").getOrDefault(DUMMY_ITEMS), IntTag.of(TestNumber.DUMMY_INT));
+        assertEquals(NbtPath.compile("\"Owner name\"").getOrDefault(DUMMY_ITEMS), StringTag.of(TestString.DUMMY_STRING));
+        assertEquals(NbtPath.compile("Items[{id:\"dirt\"}].Count").getOrDefault(DUMMY_ITEMS), IntTag.of(2));
+        assertEquals(NbtPath.compile("{Items:[{id:\"dirt\"}]}.Items[{Count:3}].id").getOrDefault(DUMMY_ITEMS), StringTag.of("stone"));
+        assertEquals(NbtPath.compile("Items[3].id").getOrDefault(DUMMY_ITEMS), TestEnd.DUMMY_END_TAG);
+        assertEquals(NbtPath.compile("Items.id").getOrDefault(DUMMY_ITEMS), TestEnd.DUMMY_END_TAG);
+        assertEquals(NbtPath.compile("Items[{id:\"stone\"}]").getAll(DUMMY_ITEMS).size(), 2);
+        assertEquals(NbtPath.compile("Items[].Count").count(DUMMY_ITEMS), 3);
+    }
+
+    @Test
+    public void testUpdate() {
+        CompoundTag tag = (CompoundTag) NbtPath.compile("Items[1].tag.Compound.Unknown").update(DUMMY_ITEMS, it -> IntTag.of(-1));
+        ListTag items = tag.getListOrDefault("Items");
+        assertEquals(NbtPath.compile("Items[1].tag.Compound.Unknown").getOrDefault(tag), IntTag.of(-1));
+        assertSame(items.getOrDefault(0), DUMMY_ITEMS.getListOrDefault("Items").getOrDefault(0));
+        assertSame(items.getCompoundOrDefault(1).getCompoundOrDefault("tag").getOrDefault("ListCompound"),
+                TestIO.DUMMY_TAG_DATA.getOrDefault("ListCompound"));
+        assertSame(tag.getOrDefault("Owner name"), DUMMY_ITEMS.getOrDefault("Owner name"));
+
+        NbtPath count = NbtPath.compile("Items[{id:\"stone\"}].Count");
+        tag = (CompoundTag) count.updateAll(DUMMY_ITEMS, it -> IntTag.of(((IntTag) it).getInt() * 10));
+        assertEquals(NbtPath.compile("Items[].Count").getAll(tag), Arrays.asList(IntTag.of(10), IntTag.of(2), IntTag.of(30)));
+        tag = (CompoundTag) count.update(DUMMY_ITEMS, it -> EndTag.of());
+        assertEquals(NbtPath.compile("Items[].Count").getAll(tag), Arrays.asList(IntTag.of(2), IntTag.of(3)));
+        tag = (CompoundTag) NbtPath.compile("Items[{id:\"dirt\"}]").update(DUMMY_ITEMS, it -> EndTag.of());
+        assertEquals(tag.getListOrDefault("Items").size(), 2);
+        assertSame(NbtPath.compile("Missing.Count").update(DUMMY_ITEMS, it -> IntTag.of(0)), DUMMY_ITEMS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformed() {
+        NbtPath.compile("Items[{id:\"dirt\"}.Count");
+    }
+
+    @Test
+    public void testFilter() throws IOException {
+        byte[] bytes = new TagReader(DUMMY_ITEMS).toBinaryNbt();
+
+        TagWriter writer = new TagWriter();
+        new NbtReader(bytes).accept(NbtPath.compile("Items[{id:\"dirt\"}].tag.Compound").filter(writer));
+        assertEquals(writer.getTag(), TestChildren.DUMMY_COMPOUND_TAG);
+
+        List<Integer> counts = new ArrayList<>();
+        new NbtReader(bytes).accept(NbtPath.compile("Items[].Count").filter(new TagValueVisitor(null) {
+            @Override
+            public void visitInt(int i) {
+                counts.add(i);
+            }
+        }));
+        assertEquals(counts, Arrays.asList(1, 2, 3));
+    }
+}
@@ -12,6 +12,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 
 public class TestRecursive {
     public static final CompoundTag DUMMY_RECURSIVE_LIST_TAG;
@@ -148,4 +149,23 @@ public class TestRecursive {
         assertEquals(tag.getType(), TagType.LIST);
         assertEquals(((ListTag) tag).size(), 0);
     }
+
+    @Test
+    public void testDeepRecursiveHash() {
+        Tag subtag = DUMMY_RECURSIVE_COMPOUND_LIST_TAG.getOrDefault("DeepRecursiveCompoundList");
+
+        ListTag tag = ListTag.builder(TagType.INT).add(0).build();
+        ListTag same = ListTag.empty();
+        for (int i = 0; i < 0x7FF7; ++i) {
+            tag = ListTag.builder(TagType.COMPOUND).add(CompoundTag.builder().add("", tag).build()).build();
+            same = ListTag.builder(TagType.COMPOUND).add(CompoundTag.builder().add("", same).build()).build();
+        }
+
+        assertEquals(same.hashCode(), subtag.hashCode());
+        assertEquals(same, subtag);
+        assertNotEquals(tag.hashCode(), subtag.hashCode());
+        assertNotEquals(tag, subtag);
+        assertEquals(same.digest(), subtag.digest());
+        assertNotEquals(tag.digest(), subtag.digest());
+    }
 }
@@ -1,11 +1,27 @@
 package io.izzel.nbt;
 
+import io.izzel.nbt.util.ImmutableLongs;
+import io.izzel.nbt.util.StringNbtCache;
 import io.izzel.nbt.util.StringNbtReader;
+import io.izzel.nbt.util.StringNbtTemplate;
+import io.izzel.nbt.util.TagWriter;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TestString {
     public static final String DUMMY_STRING = "42";
@@ -48,4 +64,189 @@ public class TestString {
         assertEquals(TestIO.DUMMY_TAG_DATA, new StringNbtReader(TestIO.DUMMY_STRING_FORMAT_DATA_AFTER_FORMATTER).toCompoundTag());
         assertEquals(TestIO.DUMMY_TAG_DATA, new StringNbtReader(TestIO.DUMMY_STRING_FORMAT_DATA_WITHOUT_SPACE_CHARACTER).toCompoundTag());
     }
+
+    @Test
+    public void testNumberParser() throws IOException {
+        assertEquals(ByteTag.of(true), new StringNbtReader("true").toTag());
+        assertEquals(StringTag.of("True"), new StringNbtReader("True").toTag());
+        assertEquals(ByteTag.of((byte) -128), new StringNbtReader("-128b").toTag());
+        assertEquals(StringTag.of("128b"), new StringNbtReader("128b").toTag());
+        assertEquals(ShortTag.of((short) 32767), new StringNbtReader("+32767S").toTag());
+        assertEquals(IntTag.of(Integer.MIN_VALUE), new StringNbtReader("-2147483648").toTag());
+        assertEquals(StringTag.of("2147483648"), new StringNbtReader("2147483648").toTag());
+        assertEquals(StringTag.of("01"), new StringNbtReader("01").toTag());
+        assertEquals(LongTag.of(Long.MIN_VALUE), new StringNbtReader("-9223372036854775808L").toTag());
+        assertEquals(DoubleTag.of(0.1), new StringNbtReader("0.1").toTag());
+        assertEquals(DoubleTag.of(-0.0), new StringNbtReader("-0.").toTag());
+        assertEquals(DoubleTag.of(1.5e300), new StringNbtReader("1.5e300d").toTag());
+        assertEquals(DoubleTag.of(1.5e-5), new StringNbtReader(".15E-4").toTag());
+        assertEquals(DoubleTag.of(9007199254740993.0), new StringNbtReader("9007199254740993.0").toTag());
+        assertEquals(FloatTag.of(16777217f), new StringNbtReader("16777217f").toTag());
+        assertEquals(FloatTag.of(Float.NEGATIVE_INFINITY), new StringNbtReader("-Infinityf").toTag());
+        assertEquals(DoubleTag.of(Double.NaN), new StringNbtReader("NaN").toTag());
+        assertEquals(StringTag.of("1e5"), new StringNbtReader("1e5").toTag());
+        assertEquals(DoubleTag.of(1e23), new StringNbtReader("1.0E23d").toTag());
+        assertEquals(FloatTag.of(1e5f), new StringNbtReader("1E5F").toTag());
+        assertEquals(StringTag.of("1.5b"), new StringNbtReader("1.5b").toTag());
+        assertEquals(ImmutableLongs.builder().add(1L).add(-2L).build(), ((LongArrayTag) new StringNbtReader("[L;1,-2l]").toTag()).getLongs());
+    }
+
+    @Test
+    public void testParserInputs() throws IOException {
+        String data = TestIO.DUMMY_STRING_FORMAT_DATA_AFTER_FORMATTER;
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        assertEquals(TestIO.DUMMY_TAG_DATA, new StringNbtReader(data.toCharArray()).toCompoundTag());
+        assertEquals(TestIO.DUMMY_TAG_DATA, new StringNbtReader(new StringBuilder(data)).toCompoundTag());
+        assertEquals(TestIO.DUMMY_TAG_DATA, new StringNbtReader(bytes).toCompoundTag());
+        assertEquals(TestIO.DUMMY_TAG_DATA, new StringNbtReader(ByteBuffer.wrap(bytes)).toCompoundTag());
+        assertEquals(TestIO.DUMMY_TAG_DATA, new StringNbtReader(new ByteArrayInputStream(bytes)).toCompoundTag());
+        char[] padded = ("[" + data + "]").toCharArray();
+        assertEquals(TestIO.DUMMY_TAG_DATA, new StringNbtReader(padded, 1, padded.length - 2).toCompoundTag());
+        // a reader without mark support, which hands out a few characters at a time
+        Reader chunked = new Reader() {
+            private int index;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                if (this.index >= data.length()) {
+                    return -1;
+                }
+                int count = Math.min(Math.min(length, 3), data.length() - this.index);
+                data.getChars(this.index, this.index + count, buffer, offset);
+                this.index += count;
+                return count;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        assertEquals(TestIO.DUMMY_TAG_DATA, new StringNbtReader(chunked).toCompoundTag());
+        try {
+            new StringNbtReader("{a:1,b:'x".getBytes(StandardCharsets.UTF_8)).toTag();
+            fail("Expect a parse failure");
+        } catch (StringNbtReader.ParseFailureException e) {
+            assertEquals(StringNbtReader.ParseFailureException.Type.UNEXPECTED_EOF, e.getType());
+        }
+    }
+
+    @Test
+    public void testParseCache() throws IOException {
+        StringNbtCache cache = new StringNbtCache(2);
+        Tag first = cache.parse("{id:\"minecraft:stone\",Count:1b}");
+        assertEquals(first, new StringNbtReader("{id:\"minecraft:stone\",Count:1b}").toTag());
+        assertSame(cache.parse("{id:\"minecraft:stone\",Count:1b}"), first);
+        assertEquals(cache.parseCompound("{a:1}").getIntOrDefault("a"), 1);
+        cache.parse("{id:\"minecraft:stone\",Count:1b}");
+        cache.parse("[1,2]"); // evicts {a:1}, which was used least recently
+        assertEquals(cache.size(), 2);
+        assertSame(cache.parse("{id:\"minecraft:stone\",Count:1b}"), first);
+        assertEquals(cache.getHitCount(), 3L);
+        assertEquals(cache.getMissCount(), 3L);
+        assertEquals(cache.getEvictionCount(), 1L);
+        try {
+            cache.parseCompound("[1,2]");
+            fail("Expect a type mismatch");
+        } catch (IOException ignored) {
+        }
+        try {
+            cache.parse("{a:");
+            fail("Expect a parse failure");
+        } catch (StringNbtReader.ParseFailureException ignored) {
+        }
+        assertEquals(cache.size(), 2);
+
+        StringNbtCache large = new StringNbtCache(1000);
+        for (int i = 0; i < 5000; ++i) {
+            large.parse("{i:" + i % 1500 + "}");
+        }
+        assertTrue(large.size() <= 1000);
+        assertEquals(large.getHitCount() + large.getMissCount(), 5000L);
+    }
+
+    @Test
+    public void testTemplate() throws IOException {
+        StringNbtTemplate template = StringNbtTemplate.compile("{id:\"minecraft:diamond_sword\",Count:$count,tag:{Damage:$dmg,display:{Name:'$name'}},Pos:[$x,$y,$x]}");
+        assertEquals(template.getSlots(), new LinkedHashSet<>(Arrays.asList("count", "dmg", "x", "y")));
+
+        Map<String, Tag> values = new HashMap<>();
+        values.put("count", ByteTag.of((byte) 3));
+        values.put("dmg", IntTag.of(12));
+        values.put("x", DoubleTag.of(0.5));
+        values.put("y", DoubleTag.of(64));
+        CompoundTag first = template.toCompoundTag(values);
+        assertEquals(first, new StringNbtReader("{id:\"minecraft:diamond_sword\",Count:3b,tag:{Damage:12,display:{Name:'$name'}},Pos:[0.5d,64d,0.5d]}").toTag());
+
+        values.put("dmg", IntTag.of(13));
+        CompoundTag second = template.toCompoundTag(values);
+        assertEquals(second.getCompoundOrDefault("tag").getIntOrDefault("Damage"), 13);
+        assertSame(first.getCompoundOrDefault("tag").getCompoundOrDefault("display"), second.getCompoundOrDefault("tag").getCompoundOrDefault("display"));
+
+        TagWriter writer = new TagWriter();
+        template.accept(writer, values);
+        assertEquals(writer.getTag(), second);
+
+        values.remove("y");
+        try {
+            template.toTag(values);
+            fail("Expect a missing slot");
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            StringNbtTemplate.compile("{a:$x,b:}");
+            fail("Expect a parse failure");
+        } catch (StringNbtReader.ParseFailureException e) {
+            try {
+                new StringNbtReader("{a:xx,b:}").toTag();
+                fail("Expect a parse failure");
+            } catch (StringNbtReader.ParseFailureException expected) {
+                assertEquals(e.getPosition(), expected.getPosition());
+            }
+        }
+        try {
+            StringNbtTemplate.compile("{a:1,$x:2}");
+            fail("Expect a parse failure");
+        } catch (StringNbtReader.ParseFailureException e) {
+            assertEquals(e.getType(), StringNbtReader.ParseFailureException.Type.UNEXPECTED_SLOT);
+            assertEquals(e.getPosition(), 5);
+        }
+        assertEquals(StringNbtTemplate.compile("[1,2]").toTag(new HashMap<>()), new StringNbtReader("[1,2]").toTag());
+
+        values.put("y", DoubleTag.of(64));
+        assertEquals(StringNbtTemplate.compile("{Pos:[$x,2.0d]}").toTag(values), new StringNbtReader("{Pos:[0.5d,2.0d]}").toTag());
+        assertEquals(StringNbtTemplate.compile("{Pos:[1.0d,$x,$y]}").toTag(values), new StringNbtReader("{Pos:[1.0d,0.5d,64d]}").toTag());
+        assertEquals(StringNbtTemplate.compile("[[$x],[1,2],$x]").getSlots(), Collections.singleton("x"));
+        try {
+            StringNbtTemplate.compile("[$x,1,2.0d]");
+            fail("Expect a parse failure");
+        } catch (StringNbtReader.ParseFailureException e) {
+            assertEquals(e.getType(), StringNbtReader.ParseFailureException.Type.MIXED_TAG_TYPES_IN_LIST);
+        }
+        try {
+            StringNbtTemplate.compile("{Pos:[$x,2]}").toTag(values);
+            fail("Expect a type mismatch");
+        } catch (IllegalArgumentException ignored) {
+        }
+
+        values.put("count", IntTag.of(7));
+        StringNbtTemplate array = StringNbtTemplate.compile("{a:[I;$count,1],b:[B;1b,$c],c:[L;$l]}");
+        values.put("c", ByteTag.of((byte) 2));
+        values.put("l", LongTag.of(3));
+        assertEquals(array.toTag(values), new StringNbtReader("{a:[I;7,1],b:[B;1b,2b],c:[L;3l]}").toTag());
+        writer = new TagWriter();
+        array.accept(writer, values);
+        assertEquals(writer.getTag(), array.toTag(values));
+        values.put("l", IntTag.of(3));
+        try {
+            array.toTag(values);
+            fail("Expect a type mismatch");
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            StringNbtTemplate.compile("[I;$x,1b]");
+            fail("Expect a parse failure");
+        } catch (StringNbtReader.ParseFailureException e) {
+            assertEquals(e.getType(), StringNbtReader.ParseFailureException.Type.INVALID_NUMBER_TYPE_IN_INT_ARRAY);
+        }
+    }
 }
@@ -1,7 +1,17 @@
 package io.izzel.nbt;
 
+import io.izzel.nbt.util.StringNbtReader;
+import io.izzel.nbt.util.StringNbtWriter;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 public class TestToString {
@@ -20,6 +30,28 @@ public class TestToString {
         assertEquals(TestNumber.DUMMY_DOUBLE_TAG.toString(), "42.0d");
     }
 
+    @Test
+    public void testShortestFloating() throws IOException {
+        assertEquals(DoubleTag.of(1e23).toString(), "1.0E23d");
+        assertEquals(DoubleTag.of(2e-3).toString(), "0.002d");
+        assertEquals(DoubleTag.of(Double.MIN_VALUE).toString(), "4.9E-324d");
+        assertEquals(DoubleTag.of(2 * Double.MIN_VALUE).toString(), "9.9E-324d");
+        assertEquals(DoubleTag.of(0.1 + 0.2).toString(), "0.30000000000000004d");
+        assertEquals(DoubleTag.of(-0.0).toString(), "-0.0d");
+        assertEquals(DoubleTag.of(Double.NEGATIVE_INFINITY).toString(), "-Infinityd");
+        assertEquals(FloatTag.of(Float.MIN_NORMAL).toString(), "1.1754944E-38f");
+        assertEquals(FloatTag.of(1e10f).toString(), "1.0E10f");
+        assertEquals(FloatTag.of(1234567.5f).toString(), "1234567.5f");
+
+        Random random = new Random(47);
+        for (int i = 0; i < 10000; ++i) {
+            DoubleTag d = DoubleTag.of(Double.longBitsToDouble(random.nextLong()));
+            FloatTag f = FloatTag.of(Float.intBitsToFloat(random.nextInt()));
+            assertEquals(new StringNbtReader(d.toString()).toTag(), d);
+            assertEquals(new StringNbtReader(f.toString()).toTag(), f);
+        }
+    }
+
     @Test
     public void testArray() {
         assertEquals(TestArray.DUMMY_INTS_TAG.toString(), "[I;7,8,9]");
@@ -32,4 +64,39 @@ public class TestToString {
         assertEquals(TestChildren.DUMMY_LIST_TAG.toString(), "[42]");
         assertEquals(TestChildren.DUMMY_COMPOUND_TAG.toString(), "{Unknown:42}");
     }
+
+    @Test
+    public void testWriterOutputs() throws IOException {
+        assertEquals(LongTag.of(Long.MIN_VALUE).toString(), "-9223372036854775808l");
+        assertEquals(IntTag.of(Integer.MIN_VALUE).toString(), "-2147483648");
+        assertEquals(ByteTag.of((byte) -128).toString(), "-128b");
+        assertEquals(ShortTag.of((short) 0).toString(), "0s");
+        assertEquals(CompoundTag.builder().add("a.b-c_d+1", 1).add("", 2).add("x y", 3).add("\u00e9", 4).build().toString(), "{a.b-c_d+1:1,\"\":2,\"x y\":3,\"\u00e9\":4}");
+        assertEquals(StringTag.of("it's \\ \"q\"").toString(), StringTag.escape("it's \\ \"q\""));
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10000; ++i) {
+            builder.append("\ud83d\ude00'\\");
+        }
+        String s = builder.toString();
+        CompoundTag tag = CompoundTag.builder().add("s", s).add("i", IntArrayTag.of(new int[]{-1, 0, Integer.MAX_VALUE})).build();
+        String expected = "{s:" + StringTag.escape(s) + ",i:[I;-1,0,2147483647]}";
+        assertEquals(tag.toString(), expected);
+
+        StringWriter writer = new StringWriter();
+        tag.accept(new StringNbtWriter(writer)); // handed over once the value is complete
+        assertEquals(writer.toString(), expected);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (StringNbtWriter stringNbtWriter = StringNbtWriter.utf8(stream)) {
+            tag.accept(stringNbtWriter);
+        }
+        assertArrayEquals(stream.toByteArray(), expected.getBytes(StandardCharsets.UTF_8));
+
+        PrintStream printStream = new PrintStream(stream = new ByteArrayOutputStream(), false, "UTF-8");
+        try (StringNbtWriter stringNbtWriter = new StringNbtWriter(printStream)) {
+            tag.accept(stringNbtWriter);
+        }
+        assertEquals(new String(stream.toByteArray(), StandardCharsets.UTF_8), expected);
+    }
 }